@@ -16,20 +16,26 @@ package org.mvelx;
 
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import org.mvelx.compiler.ColumnarExpression;
 import org.mvelx.compiler.CompiledAccExpression;
 import org.mvelx.compiler.CompiledExpression;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.compiler.PreparedExpression;
+import org.mvelx.compiler.RuleSet;
 import org.mvelx.integration.Interceptor;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.CachingMapVariableResolverFactory;
 import org.mvelx.integration.impl.ClassImportResolverFactory;
 import org.mvelx.integration.impl.ImmutableDefaultFactory;
+import org.mvelx.integration.impl.MapBindingResolverFactory;
 import org.mvelx.optimizers.impl.refl.nodes.GetterAccessor;
+import org.mvelx.util.PrimitiveTools;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import static java.lang.Boolean.getBoolean;
@@ -206,6 +212,68 @@ public class MVEL {
         return compileExpression(expression, imports, null);
     }
 
+    /**
+     * 按声明的上下文类型以及入参类型编译表达式,相应的属性访问在编译期即生成访问器,执行时的上下文对象以及入参需要与声明的类型相符
+     *
+     * @param contextType 上下文对象的类型,可以为null
+     * @param inputs      入参名及相应的类型,可以为null
+     */
+    public static Serializable compileSchemaBound(String expression, Class contextType, Map<String, Class> inputs) {
+        ParserContext ctx = new ParserContext();
+        if(contextType != null) {
+            ctx.addInput("this", contextType);
+        }
+        ctx.addInputs(inputs);
+        ctx.setSchemaBinding(true);
+
+        return compileExpression(expression, ctx);
+    }
+
+    /** 将字符串编译为按位置传参的预编译表达式,参数均不声明类型 */
+    public static PreparedExpression prepare(String expression, String[] paramNames) {
+        return prepare(expression, paramNames, null);
+    }
+
+    /**
+     * 将字符串编译为按位置传参的预编译表达式
+     * 参数按顺序分配最前面的变量下标,执行时直接传入按顺序的参数值,不再需要通过map或变量工厂按名称查找
+     *
+     * @param paramNames 按顺序的参数名
+     * @param paramTypes 按顺序的参数类型,可以为null
+     */
+    public static PreparedExpression prepare(String expression, String[] paramNames, Class[] paramTypes) {
+        if(paramTypes != null && paramTypes.length != paramNames.length) {
+            throw new IllegalArgumentException("parameter names and types do not match: " + paramNames.length + " != " + paramTypes.length);
+        }
+
+        ParserContext ctx = new ParserContext();
+        for(int i = 0; i < paramNames.length; i++) {
+            ctx.addInput(paramNames[i], paramTypes != null ? paramTypes[i] : null);
+            ctx.addIndexedInput(paramNames[i]);
+        }
+        ctx.setSlotResolution(true);
+
+        return new PreparedExpression(paramNames, paramTypes, new ExpressionCompiler(expression, ctx).compile());
+    }
+
+    /**
+     * 将字符串编译为按列计算的表达式,用于对以原始类型数组存储的列数据进行批量的算术以及比较运算
+     *
+     * @throws IllegalArgumentException 表达式中有不支持按列计算的语句或运算时
+     */
+    public static ColumnarExpression compileColumnar(String expression) {
+        return ColumnarExpression.of(new ExpressionCompiler(expression, new ParserContext()).compile());
+    }
+
+    /**
+     * 将一组boolean规则编译为规则集,各规则之间相同的访问在针对同一事实对象执行时只计算一次
+     *
+     * @param rules 规则id及相应的表达式,规则按map的迭代顺序排列
+     */
+    public static RuleSet compileRuleSet(Map<String, String> rules) {
+        return new RuleSet(rules);
+    }
+
     /** 将字符串编译为一个单个获取值的编译表达式 */
     public static Serializable compileGetExpression(String expression) {
         return new CompiledAccExpression(expression.toCharArray(), Object.class, new ParserContext());
@@ -288,12 +356,12 @@ public class MVEL {
      */
     @SuppressWarnings({"unchecked"})
     public static Object executeExpression(final Object compiledExpression, final Object ctx, final Map vars) {
-        CachingMapVariableResolverFactory factory = vars != null ? new CachingMapVariableResolverFactory(vars) : null;
+        MapBindingResolverFactory factory = vars != null ? MapBindingResolverFactory.acquire(vars) : null;
         try{
             return ((ExecutableStatement) compiledExpression).getValue(ctx, factory);
         } finally {
             if(factory != null) {
-                factory.externalize();
+                factory.release();
             }
         }
     }
@@ -340,11 +408,12 @@ public class MVEL {
      */
     @SuppressWarnings({"unchecked"})
     public static Object executeExpression(final Object compiledExpression, final Map vars) {
-        CachingMapVariableResolverFactory factory = new CachingMapVariableResolverFactory(vars);
+        //直接绑定外部map,并复用当前线程的变量工厂,以避免每次执行都创建工厂以及各个变量的解析器
+        MapBindingResolverFactory factory = MapBindingResolverFactory.acquire(vars);
         try{
             return ((ExecutableStatement) compiledExpression).getValue(null, factory);
         } finally {
-            factory.externalize();
+            factory.release();
         }
     }
 
@@ -411,16 +480,22 @@ public class MVEL {
 
     /** 使用同一个初始map变量工厂执行多个编译表达式 */
     public static void executeExpression(Iterable<CompiledExpression> compiledExpression, Map vars) {
-        CachingMapVariableResolverFactory factory = new CachingMapVariableResolverFactory(vars);
-        executeExpression(compiledExpression, null, factory);
-        factory.externalize();
+        MapBindingResolverFactory factory = MapBindingResolverFactory.acquire(vars);
+        try{
+            executeExpression(compiledExpression, null, factory);
+        } finally {
+            factory.release();
+        }
     }
 
     /** 使用初始上下文+初始map变量工厂批量执行多个编译表达式,上下文+变量共享 */
     public static void executeExpression(Iterable<CompiledExpression> compiledExpression, Object ctx, Map vars) {
-        CachingMapVariableResolverFactory factory = new CachingMapVariableResolverFactory(vars);
-        executeExpression(compiledExpression, ctx, factory);
-        factory.externalize();
+        MapBindingResolverFactory factory = MapBindingResolverFactory.acquire(vars);
+        try{
+            executeExpression(compiledExpression, ctx, factory);
+        } finally {
+            factory.release();
+        }
     }
 
     /** 使用初始上下文+变量工厂批量执行多个编译表达式 */
@@ -442,6 +517,48 @@ public class MVEL {
         return o;
     }
 
+    /**
+     * 使用同一个编译表达式对多个上下文对象批量执行,结果按顺序写入results中
+     * 整批执行共享同一个变量工厂,编译表达式的执行帧在整批执行中复用
+     *
+     * @param shared 整批执行共享的变量工厂,可以为null
+     */
+    public static void evaluateBatch(Object compiledExpression, List<?> contexts, VariableResolverFactory shared, Object[] results) {
+        if(results.length < contexts.size()) {
+            throw new IllegalArgumentException("results is too small: " + results.length + " < " + contexts.size());
+        }
+        if(shared == null) {
+            shared = new ImmutableDefaultFactory();
+        }
+        if(compiledExpression instanceof CompiledExpression) {
+            ((CompiledExpression) compiledExpression).getValues(contexts, shared, results);
+            return;
+        }
+
+        ExecutableStatement stmt = (ExecutableStatement) compiledExpression;
+        for(int i = 0, size = contexts.size(); i < size; i++) {
+            results[i] = stmt.getValue(contexts.get(i), shared);
+        }
+    }
+
+    /** 使用同一个编译表达式对多个上下文对象批量执行,返回结果为true的上下文对象 */
+    public static <T> List<T> filter(Object compiledExpression, List<T> contexts, VariableResolverFactory shared) {
+        if(shared == null) {
+            shared = new ImmutableDefaultFactory();
+        }
+        if(compiledExpression instanceof CompiledExpression) {
+            return ((CompiledExpression) compiledExpression).filter(contexts, shared);
+        }
+
+        ExecutableStatement stmt = (ExecutableStatement) compiledExpression;
+        List<T> matched = new ArrayList<>();
+        for(T ctx : contexts) {
+            //与CompiledExpression.filter使用相同的boolean转换
+            if(PrimitiveTools.toBoolean(stmt.getValue(ctx, shared))) matched.add(ctx);
+        }
+        return matched;
+    }
+
     /** 以debug模式使用上下文+变量工厂执行编译表达式 */
     public static Object executeDebugger(CompiledExpression expression, Object ctx, VariableResolverFactory vars) {
         if(expression.isImportInjectionRequired()) {
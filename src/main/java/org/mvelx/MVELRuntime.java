@@ -30,15 +30,15 @@ public class MVELRuntime {
                                  VariableResolverFactory variableFactory) {
 
         Object v1, v2;
-        //保存当前临时的执行栈
-        ExecutionStack stk = new ExecutionStack();
-
         ASTNode tk = expression.getFirstNode();
-        Integer operator;
+        int operator;
 
         //本身就没有可执行节点，则直接返回null
         if(tk == null) return null;
 
+        //保存当前临时的执行栈，使用线程内复用的栈，避免每次执行都重新创建
+        ExecutionStack stk = ExecutionStack.acquire();
+
         try{
             do{
                 //这里表示当前节点为调试节点，因此尝试设置相应的调试上下文，fields 为 1 为调试节点
@@ -94,13 +94,13 @@ public class MVELRuntime {
 
                 //这里继续圧入下一个节点值
                 //到这里这里的tk.nextASTNode肯定不为null，因为如果为null,则在上一个switch中已经处理掉，这里只要是支持一些当前还未支持到的处理
-                stk.push(tk.nextASTNode.getReducedValueAccelerated(ctx, ctx, variableFactory), operator);
+                stk.pushOperation(tk.nextASTNode.getReducedValueAccelerated(ctx, ctx, variableFactory), operator);
 
                 try{
                     //这里保证当前栈中只有一个操作数，因为之前的操作数均没有用处
-                    while(stk.isReduceable()) {
-                        if((Integer) stk.peek() == CHOR) {
-                            stk.pop();
+                    while(stk.hasOperator()) {
+                        if(stk.peekOperator() == CHOR) {
+                            stk.popOperator();
                             v1 = stk.pop();
                             v2 = stk.pop();
                             if(!isEmpty(v2) || !isEmpty(v1)) {
@@ -108,7 +108,7 @@ public class MVELRuntime {
                                 stk.push(!isEmpty(v2) ? v2 : v1);
                             } else stk.push(null);
                         } else {
-                            stk.op();
+                            stk.reduce();
                         }
                     }
                 } catch(ClassCastException e) {
@@ -132,6 +132,7 @@ public class MVELRuntime {
                 throw e;
             }
         } finally {
+            stk.release();
             OptimizerFactory.clearThreadAccessorOptimizer();
         }
     }
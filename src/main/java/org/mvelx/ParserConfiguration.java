@@ -1,5 +1,7 @@
 package org.mvelx;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import lombok.Getter;
 import lombok.Setter;
 import org.mvelx.compiler.AbstractParser;
@@ -10,8 +12,11 @@ import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import static org.mvelx.util.ParseTools.forNameWithInner;
 
@@ -24,6 +29,27 @@ import static org.mvelx.util.ParseTools.forNameWithInner;
 @Setter
 @Getter
 public class ParserConfiguration implements Serializable {
+    /**
+     * 默认认为没有副作用的类,这些类均为不可变类,其方法的结果只与参数有关,可以在编译期直接计算
+     * key为相应的类,value为类中不满足此要求的方法名(如随机数,读取系统属性,与默认语言环境相关等)
+     */
+    private static final Map<Class<?>, Set<String>> defaultPureClasses = ImmutableMap.<Class<?>, Set<String>>builder()
+            .put(Math.class, ImmutableSet.of("random"))
+            .put(StrictMath.class, ImmutableSet.of("random"))
+            .put(String.class, ImmutableSet.of("format", "getBytes", "getChars", "toLowerCase", "toUpperCase"))
+            .put(Integer.class, ImmutableSet.of("getInteger"))
+            .put(Long.class, ImmutableSet.of("getLong"))
+            .put(Boolean.class, ImmutableSet.of("getBoolean"))
+            .put(Short.class, ImmutableSet.of())
+            .put(Byte.class, ImmutableSet.of())
+            .put(Character.class, ImmutableSet.of())
+            .put(Double.class, ImmutableSet.of())
+            .put(Float.class, ImmutableSet.of())
+            .put(BigDecimal.class, ImmutableSet.of())
+            .put(BigInteger.class, ImmutableSet.of("probablePrime"))
+            .put(TimeUnit.class, ImmutableSet.of("sleep", "timedJoin", "timedWait"))
+            .build();
+
     /** 使用到的引用的类名或方法名(不全是类名).也可能为方法句柄，或者是静态字段值等 */
     protected Map<String, Object> imports;
     /** 使用到的引用的包名 */
@@ -45,6 +71,43 @@ public class ParserConfiguration implements Serializable {
     /** 在当前整个处理当中是否开启nullSafe处理 */
     private boolean nullSafe;
 
+    /**
+     * 是否将整个编译表达式直接编译为字节码类，默认关闭
+     * 开启之后，ExpressionCompiler.compile的结果会整体生成一个新类，运算、逻辑以及if/while/for等代码块均不再通过MVELRuntime逐节点解释执行
+     */
+    private boolean byteCodeCompile;
+
+    /**
+     * 是否开启编译期常量折叠,默认开启
+     * 开启之后,只访问静态常量以及无副作用方法的子表达式会在编译期计算为常量节点,不再在每次执行时重复计算
+     */
+    private boolean constantFolding = true;
+
+    /**
+     * 脚本函数内联的大小上限,即函数体源码的字符数,默认为80,为0时不进行内联
+     * 函数体为单个表达式(没有赋值,语句块以及return),不调用其它脚本函数,函数名没有被重新赋值,并且参数均为常量或变量名时,
+     * 调用处在编译期直接替换为代入参数之后的函数体,
+     * 执行时不再创建函数调用的变量工厂
+     */
+    private int functionInlineThreshold = 80;
+
+    /**
+     * fold投影(如 (name in list if age > 10))并行执行的集合大小下限,默认为0,即不并行执行
+     * 集合大小达到此值时,集合通过Spliterator拆分之后在ForkJoin公共池中并行投影,结果仍保持原集合的顺序
+     * 开启时投影及条件表达式需要没有副作用(如不对外部变量赋值)
+     */
+    private int parallelFoldThreshold;
+
+    /**
+     * fold投影是否返回延迟计算的集合视图,默认关闭
+     * 开启之后投影结果不再预先生成列表,而是在遍历时才对每个元素进行条件判断及投影,contains等操作在找到结果之后即停止,
+     * 多个fold嵌套时按单次遍历执行.视图每次遍历时均会重新计算,因此投影及条件表达式需要没有副作用
+     */
+    private boolean lazyFold;
+
+    /** 额外注册的无副作用方法,在默认的方法之外,这些方法也可以在编译期进行常量折叠 */
+    private transient Set<Method> pureMethods;
+
     public ParserConfiguration() {
     }
 
@@ -229,6 +292,32 @@ public class ParserConfiguration implements Serializable {
         }
     }
 
+    /** 注册一个无副作用的方法,即结果只与参数相关,并且不会修改任何状态,以允许在编译期进行常量折叠 */
+    public void addPureMethod(Method method) {
+        if(pureMethods == null) pureMethods = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        pureMethods.add(method);
+    }
+
+    /** 将指定类中指定名字的公共方法均注册为无副作用的方法 */
+    public void addPureMethods(Class<?> cls, String... methodNames) {
+        Set<String> names = new HashSet<>(Arrays.asList(methodNames));
+        for(Method method : cls.getMethods()) {
+            if(names.contains(method.getName())) addPureMethod(method);
+        }
+    }
+
+    /** 判断指定方法是否是无副作用的方法,即可以在编译期直接计算 */
+    public boolean isPureMethod(Method method) {
+        if(pureMethods != null && pureMethods.contains(method)) return true;
+
+        Class<?> cls = method.getDeclaringClass();
+        //带有方法体的枚举常量,其方法声明在枚举的匿名子类中,如TimeUnit.MINUTES
+        if(cls.isAnonymousClass() && cls.getSuperclass().isEnum()) cls = cls.getSuperclass();
+
+        Set<String> excluded = defaultPureClasses.get(cls);
+        return excluded != null && !excluded.contains(method.getName());
+    }
+
     /** 当前配置中是否有引用信息 */
     public boolean hasImports() {
         return !(imports != null && imports.isEmpty()) || (packageImports != null && packageImports.size() != 0);
@@ -3,7 +3,9 @@ package org.mvelx;
 import org.mvelx.ast.Function;
 import org.mvelx.compiler.AbstractParser;
 import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.LoopInvariantScope;
 import org.mvelx.integration.Interceptor;
+import org.mvelx.util.CompilerTools;
 import org.mvelx.util.MethodStub;
 import org.mvelx.util.ReflectionUtil;
 
@@ -86,6 +88,26 @@ public class ParserContext implements Serializable {
      * 或者是认为在处理过程中,是否允许添加新的变量信息
      */
     private boolean indexAllocation = false;
+    /** 是否进行公共子表达式消除,即同一个编译表达式中重复出现的无副作用访问只计算一次 */
+    private boolean commonSubexpressionElimination = false;
+    /** 是否进行循环不变量外提,即循环中不依赖循环内赋值的无副作用访问在一次循环执行中只计算一次 */
+    private boolean loopInvariantHoisting = false;
+    /**
+     * 是否在编译期为脚本中的全部变量分配下标,执行时通过下标直接访问变量,而不再按变量名逐层查找
+     * 脚本中新建的变量只保存在当次执行的变量帧中,不再写入外部的变量工厂
+     */
+    private boolean slotResolution = false;
+    /**
+     * 是否按声明的入参类型(包括this入参所声明的上下文类型)绑定属性访问,即在编译期直接生成相应的属性访问器
+     * 执行时不再根据第一次执行的值进行优化,入参的实际值需要与声明的类型相符
+     */
+    private boolean schemaBinding = false;
+    /** 当前正在编译的循环的不变量范围,不在循环中时为null */
+    private transient LoopInvariantScope loopInvariantScope;
+    /** 暂停循环不变量外提的层数,编译投影等改变上下文对象的语句时其中的访问不能外提 */
+    private transient int loopInvariantSuspended;
+    /** 编译循环过程中被赋值(或可能被修改)的根变量记录,在子上下文之间共享 */
+    private ArrayList<String> assignedVariables = new ArrayList<>();
     /** 判断在处理中，是否使用了新的变量,或者是相应的变量有作更新操作处理,即从当前上下文中有获取变量的动作 */
     protected boolean variablesEscape = false;
 
@@ -103,6 +125,10 @@ public class ParserContext implements Serializable {
         this(parserConfiguration);
         this.parent = parent;
         this.functionContext = functionContext;
+        if(parent != null) {
+            this.commonSubexpressionElimination = parent.commonSubexpressionElimination;
+            this.loopInvariantHoisting = parent.loopInvariantHoisting;
+        }
     }
 
     /** 使用一个针对对象引入+拦截器构建的解析配置,以及相应的脚本源文构建起解析上下文 */
@@ -132,6 +158,10 @@ public class ParserContext implements Serializable {
         ctx.fatalError = fatalError;
         ctx.blockSymbols = blockSymbols;
         ctx.indexAllocation = indexAllocation;
+        ctx.commonSubexpressionElimination = commonSubexpressionElimination;
+        ctx.loopInvariantHoisting = loopInvariantHoisting;
+        ctx.loopInvariantScope = loopInvariantScope;
+        ctx.assignedVariables = assignedVariables;
 
         return ctx;
     }
@@ -191,6 +221,10 @@ public class ParserContext implements Serializable {
         ctx.fatalError = fatalError;
         ctx.blockSymbols = blockSymbols;
         ctx.indexAllocation = indexAllocation;
+        ctx.commonSubexpressionElimination = commonSubexpressionElimination;
+        ctx.loopInvariantHoisting = loopInvariantHoisting;
+        ctx.loopInvariantScope = loopInvariantScope;
+        ctx.assignedVariables = assignedVariables;
 
         return ctx;
     }
@@ -696,6 +730,130 @@ public class ParserContext implements Serializable {
         this.indexAllocation = indexAllocation;
     }
 
+    public boolean isCommonSubexpressionElimination() {
+        return commonSubexpressionElimination;
+    }
+
+    public void setCommonSubexpressionElimination(boolean commonSubexpressionElimination) {
+        this.commonSubexpressionElimination = commonSubexpressionElimination;
+    }
+
+    public boolean isLoopInvariantHoisting() {
+        return loopInvariantHoisting;
+    }
+
+    public void setLoopInvariantHoisting(boolean loopInvariantHoisting) {
+        this.loopInvariantHoisting = loopInvariantHoisting;
+    }
+
+    public boolean isSlotResolution() {
+        return slotResolution;
+    }
+
+    public void setSlotResolution(boolean slotResolution) {
+        this.slotResolution = slotResolution;
+    }
+
+    public boolean isSchemaBinding() {
+        return schemaBinding;
+    }
+
+    public void setSchemaBinding(boolean schemaBinding) {
+        this.schemaBinding = schemaBinding;
+    }
+
+    /** 当前正在编译的循环的不变量范围 */
+    public LoopInvariantScope getLoopInvariantScope() {
+        return loopInvariantScope;
+    }
+
+    /** 当前编译的语句是否可以进行循环不变量外提,即在循环中并且没有处于改变上下文对象的语句中 */
+    public boolean isLoopInvariantHoistingActive() {
+        return loopInvariantScope != null && loopInvariantSuspended == 0;
+    }
+
+    /** 开始编译改变上下文对象的语句(如投影),其中的访问在每次执行时针对的对象不同,暂停外提,但仍记录其中的赋值 */
+    public void suspendLoopInvariantHoisting() {
+        loopInvariantSuspended++;
+    }
+
+    /** 结束改变上下文对象的语句的编译,与suspendLoopInvariantHoisting成对调用 */
+    public void resumeLoopInvariantHoisting() {
+        loopInvariantSuspended--;
+    }
+
+    /** 开始编译一个循环,未开启循环不变量外提时返回null */
+    public LoopInvariantScope pushLoopInvariantScope() {
+        if(!loopInvariantHoisting) {
+            return null;
+        }
+        return loopInvariantScope = new LoopInvariantScope(loopInvariantScope, assignedVariables.size());
+    }
+
+    /** 结束当前循环的编译,根据循环中被赋值的变量确定最终的不变量,没有不变量时返回null */
+    public LoopInvariantScope popLoopInvariantScope() {
+        LoopInvariantScope scope = loopInvariantScope;
+        if(scope == null) {
+            return null;
+        }
+
+        loopInvariantScope = scope.getParent();
+        boolean shared = scope.resolve(new HashSet<>(assignedVariables.subList(scope.getMark(), assignedVariables.size())));
+        //已没有外层循环,不再需要之前的记录
+        if(loopInvariantScope == null) {
+            assignedVariables.clear();
+        }
+        return shared ? scope : null;
+    }
+
+    /** 在编译循环时记录被赋值的变量,只记录根变量名,属性或下标的写入同时按markPropertyAssigned处理 */
+    public void markAssigned(String name) {
+        if(loopInvariantScope == null) {
+            return;
+        }
+
+        String root = CompilerTools.rootVariable(name);
+        if(root.length() != name.trim().length()) {
+            markPropertyAssigned(root);
+        } else {
+            assignedVariables.add(root);
+        }
+    }
+
+    /**
+     * 在编译循环时记录对变量属性或下标的写入
+     * 其它变量可能引用同一个对象(如 n = m 之后写入n.x),因此全部的属性访问均不再认为是不变的
+     */
+    public void markPropertyAssigned(String name) {
+        if(loopInvariantScope != null) {
+            assignedVariables.add(CompilerTools.rootVariable(name));
+            assignedVariables.add(LoopInvariantScope.ANY_PROPERTY);
+        }
+    }
+
+    /** 在编译循环时记录按下标被赋值的变量,下标的顺序为入参在前,本地变量在后 */
+    public void markAssigned(int register) {
+        if(loopInvariantScope == null) {
+            return;
+        }
+
+        int inputSize = indexedInputs == null ? 0 : indexedInputs.size();
+        if(register < inputSize) {
+            markAssigned(indexedInputs.get(register));
+        } else if(indexedLocals != null && register - inputSize < indexedLocals.size()) {
+            markAssigned(indexedLocals.get(register - inputSize));
+        } else {
+            assignedVariables.add(LoopInvariantScope.ANY_VARIABLE);
+        }
+    }
+
+    /** 在编译循环时记录方法调用,除已注册的无副作用调用之外均认为可能修改任意变量 */
+    public void markInvocation(String name) {
+        if(loopInvariantScope != null && name.indexOf('(') != -1 && !CompilerTools.isSideEffectFreeAccess(name, this)) {
+            assignedVariables.add(LoopInvariantScope.ANY_VARIABLE);
+        }
+    }
+
     /** 返回当前是否是函数上下文中 */
     public boolean isFunctionContext() {
         return functionContext;
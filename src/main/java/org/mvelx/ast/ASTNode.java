@@ -7,6 +7,7 @@ import org.mvelx.compiler.Accessor;
 import org.mvelx.integration.VariableResolverFactory;
 import org.mvelx.optimizers.AccessorOptimizer;
 import org.mvelx.optimizers.OptimizationNotSupported;
+import org.mvelx.util.PrimitiveTools;
 
 import java.io.Serializable;
 
@@ -147,6 +148,45 @@ public class ASTNode implements Cloneable, Serializable {
         }
     }
 
+    /** 以boolean的方式计算当前节点的值,结果必须为boolean.支持原始类型运算的节点可以重写此方法以避免装箱 */
+    public boolean evalBoolean(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        return PrimitiveTools.toBoolean(getReducedValueAccelerated(ctx, thisValue, factory));
+    }
+
+    /** 以long的方式计算当前节点的值,数字结果将转换为long */
+    public long evalLong(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        return PrimitiveTools.toLong(getReducedValueAccelerated(ctx, thisValue, factory));
+    }
+
+    /** 以double的方式计算当前节点的值,数字结果将转换为double */
+    public double evalDouble(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        return PrimitiveTools.toDouble(getReducedValueAccelerated(ctx, thisValue, factory));
+    }
+
+    /**
+     * 精确地以int计算当前节点的值,用于特化运算中父节点直接获取子节点的原始类型结果
+     * 如果实际结果不是Integer,则通过UnexpectedResultException返回实际的结果,由调用方进行通用处理
+     */
+    public int executeInt(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        Object value = getReducedValueAccelerated(ctx, thisValue, factory);
+        if(value instanceof Integer) return (Integer) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    /** 精确地以long计算当前节点的值,实际结果不是Long时通过UnexpectedResultException返回实际的结果 */
+    public long executeLong(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        Object value = getReducedValueAccelerated(ctx, thisValue, factory);
+        if(value instanceof Long) return (Long) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    /** 精确地以double计算当前节点的值,实际结果不是Double时通过UnexpectedResultException返回实际的结果 */
+    public double executeDouble(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        Object value = getReducedValueAccelerated(ctx, thisValue, factory);
+        if(value instanceof Double) return (Double) value;
+        throw new UnexpectedResultException(value);
+    }
+
     /** 反向优化,即声明DEOP标记以及NOJIT,以使用默认的反射访问方式来运行 */
     private Object deop(Object ctx, Object thisValue, VariableResolverFactory factory, RuntimeException e) {
         if((fields & DEOP) == 0) {
@@ -436,6 +476,11 @@ public class ASTNode implements Cloneable, Serializable {
         this.offset = offset;
 
         setName(expr);
+
+        //编译循环时记录方法调用,以判断循环中的不变量
+        if(pCtx != null && pCtx.getLoopInvariantScope() != null && isIdentifier()) {
+            pCtx.markInvocation(new String(expr, start, offset));
+        }
     }
 
     public String toString() {
@@ -112,6 +112,11 @@ public class AssignmentNode extends ASTNode implements Assignment {
         //此变量加入到上下文中,表示已被占用
         if((fields & COMPILE_IMMEDIATE) != 0) {
             pCtx.addVariable(this.varName, egressType);
+            if(col) {
+                pCtx.markPropertyAssigned(this.varName);
+            } else {
+                pCtx.markAssigned(this.varName);
+            }
         }
     }
 
@@ -19,6 +19,7 @@
 package org.mvelx.ast;
 
 import org.mvelx.CompileException;
+import org.mvelx.DataTypes;
 import org.mvelx.Operator;
 import org.mvelx.ParserContext;
 import org.mvelx.ScriptRuntimeException;
@@ -29,18 +30,31 @@ import org.mvelx.util.ParseTools;
 
 import static org.mvelx.DataConversion.canConvert;
 import static org.mvelx.DataConversion.convert;
+import static org.mvelx.math.MathProcessor.doExactIntegralArithmetic;
 import static org.mvelx.math.MathProcessor.doOperations;
 import static org.mvelx.util.CompilerTools.getReturnTypeFromOp;
 import static org.mvelx.util.ParseTools.boxPrimitive;
+import static org.mvelx.util.PrimitiveTools.*;
 
-/** 这里描述一个二元运算操作 */
+/**
+ * 这里描述一个二元运算操作
+ * 运行期会根据第一次执行时观察到的操作数类型将节点特化为int,long,double或字符串的直接运算,
+ * 后续执行时通过类型守卫判断操作数类型是否仍然一致,不一致时退化为通用的MathProcessor运算,并不再特化
+ */
 public class BinaryOperation extends BooleanNode {
+    /** 特化状态:还未执行过,还未观察到运行期类型 */
+    private static final int SPEC_UNINITIALIZED = -2;
+    /** 特化状态:类型不能特化或类型守卫失败,使用通用运算 */
+    private static final int SPEC_GENERIC = -1;
+
     /** 运算符 */
     private final int operation;
     /** 左边类型(内部表示形式,见DataTypes) */
     private int lType = -1;
     /** 右边类型(内部表示形式,见DataTypes) */
     private int rType = -1;
+    /** 运行期特化的操作数类型,为DataTypes中的W_INTEGER,W_LONG,W_DOUBLE,STRING或者特化状态 */
+    private int specializedType = SPEC_UNINITIALIZED;
 
     public BinaryOperation(int operation, ParserContext ctx) {
         super(ctx);
@@ -128,15 +142,582 @@ public class BinaryOperation extends BooleanNode {
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        Object lValue = left.getReducedValueAccelerated(ctx, thisValue, factory);
+        Object rValue = right.getReducedValueAccelerated(ctx, thisValue, factory);
+
+        //通过类型守卫执行特化后的运算,守卫失败时退化为通用运算
+        switch(specializedType) {
+            case SPEC_GENERIC:
+                break;
+            case SPEC_UNINITIALIZED:
+                specializedType = specializeType(lValue, rValue);
+                break;
+            case DataTypes.W_INTEGER:
+                if(lValue instanceof Integer && rValue instanceof Integer) {
+                    return doIntOperation((Integer) lValue, operation, (Integer) rValue);
+                }
+                specializedType = SPEC_GENERIC;
+                break;
+            case DataTypes.W_LONG:
+                if(lValue instanceof Long && rValue instanceof Long) {
+                    return doLongOperation((Long) lValue, operation, (Long) rValue);
+                }
+                specializedType = SPEC_GENERIC;
+                break;
+            case DataTypes.W_DOUBLE:
+                if(lValue instanceof Double && rValue instanceof Double) {
+                    return doDoubleOperation((Double) lValue, operation, (Double) rValue);
+                }
+                specializedType = SPEC_GENERIC;
+                break;
+            case DataTypes.STRING:
+                if(lValue instanceof String && rValue instanceof String) {
+                    return doStringOperation((String) lValue, operation, (String) rValue);
+                }
+                specializedType = SPEC_GENERIC;
+                break;
+        }
+
         //由数学处理器来完成相应的计算
-        return doOperations(lType, left.getReducedValueAccelerated(ctx, thisValue, factory), operation, rType,
-                right.getReducedValueAccelerated(ctx, thisValue, factory));
+        return doOperations(lType, lValue, operation, rType, rValue);
+    }
+
+    /**
+     * 根据第一次执行时的操作数类型决定特化的类型,只有左右类型相同并且操作符支持时才进行特化
+     * 如果编译期已经确定了操作数类型,则要求与运行期类型一致,以保证与通用运算的结果相同
+     */
+    private int specializeType(Object lValue, Object rValue) {
+        if(lValue == null || rValue == null || lValue.getClass() != rValue.getClass()) {
+            return SPEC_GENERIC;
+        }
+
+        int type = ParseTools.__resolveType(lValue.getClass());
+        if((lType != -1 && lType != type) || (rType != -1 && rType != type)) {
+            return SPEC_GENERIC;
+        }
+
+        switch(type) {
+            case DataTypes.W_INTEGER:
+            case DataTypes.W_LONG:
+                return isArithmeticOrComparison(operation) || isBitwiseOperation(operation) ? type : SPEC_GENERIC;
+            case DataTypes.W_DOUBLE:
+                return isArithmeticOrComparison(operation) ? type : SPEC_GENERIC;
+            case DataTypes.STRING:
+                return operation == Operator.ADD || isComparisonOperation(operation) ? type : SPEC_GENERIC;
+            default:
+                return SPEC_GENERIC;
+        }
+    }
+
+    /** 可以特化的数字运算,即四则运算,取模以及比较(乘方的溢出处理比较特殊,仍使用通用运算) */
+    private static boolean isArithmeticOrComparison(int operation) {
+        return operation <= Operator.MOD || isComparisonOperation(operation);
+    }
+
+    /** 是否是可以特化的位运算 */
+    private static boolean isBitwiseOperation(int operation) {
+        switch(operation) {
+            case Operator.BW_AND:
+            case Operator.BW_OR:
+            case Operator.BW_XOR:
+            case Operator.BW_SHIFT_LEFT:
+            case Operator.BW_SHIFT_RIGHT:
+            case Operator.BW_USHIFT_RIGHT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** 是否是比较运算,即 == != > >= < <= */
+    private static boolean isComparisonOperation(int operation) {
+        switch(operation) {
+            case Operator.EQUAL:
+            case Operator.NEQUAL:
+            case Operator.GTHAN:
+            case Operator.GETHAN:
+            case Operator.LTHAN:
+            case Operator.LETHAN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** 特化运算的结果类型,为DataTypes中的W_INTEGER,W_LONG,W_DOUBLE,W_BOOLEAN,或者SPEC_GENERIC表示不能以原始类型计算 */
+    protected int specializedResultType() {
+        switch(specializedType) {
+            case DataTypes.W_INTEGER:
+            case DataTypes.W_LONG:
+                if(isComparisonOperation(operation)) return DataTypes.W_BOOLEAN;
+                return operation == Operator.DIV ? DataTypes.W_DOUBLE : specializedType;
+            case DataTypes.W_DOUBLE:
+                return isComparisonOperation(operation) ? DataTypes.W_BOOLEAN : DataTypes.W_DOUBLE;
+            case DataTypes.STRING:
+                return isComparisonOperation(operation) ? DataTypes.W_BOOLEAN : SPEC_GENERIC;
+            default:
+                return SPEC_GENERIC;
+        }
+    }
+
+    /** 类型守卫失败,取消特化并使用通用运算处理已经计算出的操作数 */
+    private Object despecialize(Object lValue, Object rValue) {
+        specializedType = SPEC_GENERIC;
+        return doOperations(lType, lValue, operation, rType, rValue);
+    }
+
+    /** 以int精确计算,子节点同样以int计算,从而整个运算过程中不产生装箱 */
+    @Override
+    public int executeInt(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        if(specializedResultType() != DataTypes.W_INTEGER) {
+            return super.executeInt(ctx, thisValue, factory);
+        }
+
+        int l;
+        try{
+            l = left.executeInt(ctx, thisValue, factory);
+        } catch(UnexpectedResultException e) {
+            return expectInt(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+        }
+        int r;
+        try{
+            r = right.executeInt(ctx, thisValue, factory);
+        } catch(UnexpectedResultException e) {
+            return expectInt(despecialize(l, e.getResult()));
+        }
+        return exactIntArithmetic(l, operation, r);
+    }
+
+    /** 以long精确计算,子节点同样以long计算 */
+    @Override
+    public long executeLong(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        if(specializedResultType() != DataTypes.W_LONG) {
+            return super.executeLong(ctx, thisValue, factory);
+        }
+
+        long l;
+        try{
+            l = left.executeLong(ctx, thisValue, factory);
+        } catch(UnexpectedResultException e) {
+            return expectLong(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+        }
+        long r;
+        try{
+            r = right.executeLong(ctx, thisValue, factory);
+        } catch(UnexpectedResultException e) {
+            return expectLong(despecialize(l, e.getResult()));
+        }
+        return exactLongArithmetic(l, operation, r);
+    }
+
+    /** 以double精确计算,包括double的四则运算以及int,long的除法 */
+    @Override
+    public double executeDouble(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        if(specializedResultType() != DataTypes.W_DOUBLE) {
+            return super.executeDouble(ctx, thisValue, factory);
+        }
+
+        switch(specializedType) {
+            case DataTypes.W_INTEGER: {
+                int l;
+                try{
+                    l = left.executeInt(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return expectDouble(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+                }
+                try{
+                    return (double) l / (double) right.executeInt(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return expectDouble(despecialize(l, e.getResult()));
+                }
+            }
+            case DataTypes.W_LONG: {
+                long l;
+                try{
+                    l = left.executeLong(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return expectDouble(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+                }
+                try{
+                    return (double) l / (double) right.executeLong(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return expectDouble(despecialize(l, e.getResult()));
+                }
+            }
+            default: {
+                double l;
+                try{
+                    l = left.executeDouble(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return expectDouble(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+                }
+                try{
+                    return doubleArithmetic(l, operation, right.executeDouble(ctx, thisValue, factory));
+                } catch(UnexpectedResultException e) {
+                    return expectDouble(despecialize(l, e.getResult()));
+                }
+            }
+        }
+    }
+
+    /** 以boolean计算,比较运算时子节点以原始类型计算,比较结果也不再装箱 */
+    @Override
+    public boolean evalBoolean(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        if(specializedResultType() != DataTypes.W_BOOLEAN) {
+            return super.evalBoolean(ctx, thisValue, factory);
+        }
+
+        switch(specializedType) {
+            case DataTypes.W_INTEGER: {
+                int l;
+                try{
+                    l = left.executeInt(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return toBoolean(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+                }
+                try{
+                    return intComparison(l, operation, right.executeInt(ctx, thisValue, factory));
+                } catch(UnexpectedResultException e) {
+                    return toBoolean(despecialize(l, e.getResult()));
+                }
+            }
+            case DataTypes.W_LONG: {
+                long l;
+                try{
+                    l = left.executeLong(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return toBoolean(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+                }
+                try{
+                    return longComparison(l, operation, right.executeLong(ctx, thisValue, factory));
+                } catch(UnexpectedResultException e) {
+                    return toBoolean(despecialize(l, e.getResult()));
+                }
+            }
+            case DataTypes.W_DOUBLE: {
+                double l;
+                try{
+                    l = left.executeDouble(ctx, thisValue, factory);
+                } catch(UnexpectedResultException e) {
+                    return toBoolean(despecialize(e.getResult(), right.getReducedValueAccelerated(ctx, thisValue, factory)));
+                }
+                try{
+                    return doubleComparison(l, operation, right.executeDouble(ctx, thisValue, factory));
+                } catch(UnexpectedResultException e) {
+                    return toBoolean(despecialize(l, e.getResult()));
+                }
+            }
+            default:
+                return super.evalBoolean(ctx, thisValue, factory);
+        }
+    }
+
+    /** 以long计算,特化的数字运算直接以原始类型计算之后再转换 */
+    @Override
+    public long evalLong(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        try{
+            switch(specializedResultType()) {
+                case DataTypes.W_INTEGER:
+                    return executeInt(ctx, thisValue, factory);
+                case DataTypes.W_LONG:
+                    return executeLong(ctx, thisValue, factory);
+                case DataTypes.W_DOUBLE:
+                    return (long) executeDouble(ctx, thisValue, factory);
+            }
+        } catch(UnexpectedResultException e) {
+            return toLong(e.getResult());
+        }
+
+        return super.evalLong(ctx, thisValue, factory);
+    }
+
+    /** 以double计算,特化的数字运算直接以原始类型计算之后再转换 */
+    @Override
+    public double evalDouble(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        try{
+            switch(specializedResultType()) {
+                case DataTypes.W_INTEGER:
+                    return executeInt(ctx, thisValue, factory);
+                case DataTypes.W_LONG:
+                    return executeLong(ctx, thisValue, factory);
+                case DataTypes.W_DOUBLE:
+                    return executeDouble(ctx, thisValue, factory);
+            }
+        } catch(UnexpectedResultException e) {
+            return toDouble(e.getResult());
+        }
+
+        return super.evalDouble(ctx, thisValue, factory);
+    }
+
+    /** 整数优化节点(如IntAdd)的计算,溢出或者操作数不是int(如子节点溢出之后的long)时按通用运算处理 */
+    protected Object intOptimizedValue(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        Object lValue = left.getReducedValueAccelerated(ctx, thisValue, factory);
+        Object rValue = right.getReducedValueAccelerated(ctx, thisValue, factory);
+        return doIntOptimizedOperation(lValue, operation, rValue);
+    }
+
+    /**
+     * 整数优化节点(IntAdd,IntSub,IntMult,IntDiv)的运算,同时由字节码编译调用
+     * 两边均为int时直接以int计算,加减乘溢出时提升为long,除法为整数相除;否则按通用运算处理
+     */
+    public static Object doIntOptimizedOperation(Object lValue, int operation, Object rValue) {
+        if(lValue instanceof Integer && rValue instanceof Integer) {
+            if(operation == Operator.DIV) {
+                return intQuotient((Integer) lValue, (Integer) rValue);
+            }
+            return doIntOperation((Integer) lValue, operation, (Integer) rValue);
+        }
+        return doOperations(lValue, operation, rValue);
+    }
+
+    /** int整数相除,只有 MIN_VALUE / -1 会溢出,此时提升为long */
+    private static Object intQuotient(int l, int r) {
+        if(l == Integer.MIN_VALUE && r == -1) {
+            return -(long) l;
+        }
+        return l / r;
+    }
+
+    /** 通用运算的结果仍为int时直接返回,否则将结果交由调用方处理 */
+    private static int expectInt(Object value) throws UnexpectedResultException {
+        if(value instanceof Integer) return (Integer) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    private static long expectLong(Object value) throws UnexpectedResultException {
+        if(value instanceof Long) return (Long) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    private static double expectDouble(Object value) throws UnexpectedResultException {
+        if(value instanceof Double) return (Double) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    /** 加减乘运算需要检查溢出 */
+    private static boolean isExactArithmetic(int operation) {
+        return operation == Operator.ADD || operation == Operator.SUB || operation == Operator.MULT;
+    }
+
+    /** int特化运算,与MathProcessor中同类型int的运算结果一致(除法结果为double) */
+    private static Object doIntOperation(int l, int operation, int r) {
+        if(isComparisonOperation(operation)) {
+            return intComparison(l, operation, r);
+        }
+        if(operation == Operator.DIV) {
+            return (double) l / (double) r;
+        }
+        try{
+            return exactIntArithmetic(l, operation, r);
+        } catch(UnexpectedResultException e) {
+            return e.getResult();
+        }
+    }
+
+    /** long特化运算,与MathProcessor中同类型long的运算结果一致(除法结果为double) */
+    private static Object doLongOperation(long l, int operation, long r) {
+        if(isComparisonOperation(operation)) {
+            return longComparison(l, operation, r);
+        }
+        if(operation == Operator.DIV) {
+            return (double) l / (double) r;
+        }
+        try{
+            return exactLongArithmetic(l, operation, r);
+        } catch(UnexpectedResultException e) {
+            return e.getResult();
+        }
+    }
+
+    /** double特化运算,与MathProcessor中同类型double的运算结果一致 */
+    private static Object doDoubleOperation(double l, int operation, double r) {
+        if(isComparisonOperation(operation)) {
+            return doubleComparison(l, operation, r);
+        }
+        return doubleArithmetic(l, operation, r);
+    }
+
+    /** int的四则运算(不包括除法),取模以及位运算,加减乘溢出时通过UnexpectedResultException返回与MathProcessor一致的结果(即提升为long) */
+    private static int exactIntArithmetic(int l, int operation, int r) throws UnexpectedResultException {
+        try{
+            return intArithmetic(l, operation, r);
+        } catch(ArithmeticException e) {
+            if(!isExactArithmetic(operation)) throw e;
+            throw new UnexpectedResultException(doExactIntegralArithmetic(l, operation, r, DataTypes.W_INTEGER));
+        }
+    }
+
+    /** int的四则运算(不包括除法),取模以及位运算,加减乘溢出时抛出ArithmeticException */
+    private static int intArithmetic(int l, int operation, int r) {
+        switch(operation) {
+            case Operator.ADD:
+                return Math.addExact(l, r);
+            case Operator.SUB:
+                return Math.subtractExact(l, r);
+            case Operator.MULT:
+                return Math.multiplyExact(l, r);
+            case Operator.MOD:
+                return l % r;
+            case Operator.BW_AND:
+                return l & r;
+            case Operator.BW_OR:
+                return l | r;
+            case Operator.BW_XOR:
+                return l ^ r;
+            case Operator.BW_SHIFT_LEFT:
+                return l << r;
+            case Operator.BW_SHIFT_RIGHT:
+                return l >> r;
+            case Operator.BW_USHIFT_RIGHT:
+                return l >>> r;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
+    }
+
+    /** long的四则运算(不包括除法),取模以及位运算,加减乘溢出时通过UnexpectedResultException返回与MathProcessor一致的结果(即提升为BigInteger) */
+    private static long exactLongArithmetic(long l, int operation, long r) throws UnexpectedResultException {
+        try{
+            return longArithmetic(l, operation, r);
+        } catch(ArithmeticException e) {
+            if(!isExactArithmetic(operation)) throw e;
+            throw new UnexpectedResultException(doExactIntegralArithmetic(l, operation, r, DataTypes.W_LONG));
+        }
+    }
+
+    /** long的四则运算(不包括除法),取模以及位运算,加减乘溢出时抛出ArithmeticException */
+    private static long longArithmetic(long l, int operation, long r) {
+        switch(operation) {
+            case Operator.ADD:
+                return Math.addExact(l, r);
+            case Operator.SUB:
+                return Math.subtractExact(l, r);
+            case Operator.MULT:
+                return Math.multiplyExact(l, r);
+            case Operator.MOD:
+                return l % r;
+            case Operator.BW_AND:
+                return l & r;
+            case Operator.BW_OR:
+                return l | r;
+            case Operator.BW_XOR:
+                return l ^ r;
+            case Operator.BW_SHIFT_LEFT:
+                return l << r;
+            case Operator.BW_SHIFT_RIGHT:
+                return l >> r;
+            case Operator.BW_USHIFT_RIGHT:
+                return l >>> r;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
+    }
+
+    /** double的四则运算以及取模 */
+    private static strictfp double doubleArithmetic(double l, int operation, double r) {
+        switch(operation) {
+            case Operator.ADD:
+                return l + r;
+            case Operator.SUB:
+                return l - r;
+            case Operator.MULT:
+                return l * r;
+            case Operator.DIV:
+                return l / r;
+            case Operator.MOD:
+                return l % r;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
+    }
+
+    private static boolean intComparison(int l, int operation, int r) {
+        switch(operation) {
+            case Operator.EQUAL:
+                return l == r;
+            case Operator.NEQUAL:
+                return l != r;
+            case Operator.GTHAN:
+                return l > r;
+            case Operator.GETHAN:
+                return l >= r;
+            case Operator.LTHAN:
+                return l < r;
+            case Operator.LETHAN:
+                return l <= r;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
+    }
+
+    private static boolean longComparison(long l, int operation, long r) {
+        switch(operation) {
+            case Operator.EQUAL:
+                return l == r;
+            case Operator.NEQUAL:
+                return l != r;
+            case Operator.GTHAN:
+                return l > r;
+            case Operator.GETHAN:
+                return l >= r;
+            case Operator.LTHAN:
+                return l < r;
+            case Operator.LETHAN:
+                return l <= r;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
+    }
+
+    private static boolean doubleComparison(double l, int operation, double r) {
+        switch(operation) {
+            case Operator.EQUAL:
+                return l == r;
+            case Operator.NEQUAL:
+                return l != r;
+            case Operator.GTHAN:
+                return l > r;
+            case Operator.GETHAN:
+                return l >= r;
+            case Operator.LTHAN:
+                return l < r;
+            case Operator.LETHAN:
+                return l <= r;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
+    }
+
+    /** 字符串特化运算,即字符串拼接以及比较,与MathProcessor中的非数字运算结果一致 */
+    private static Object doStringOperation(String l, int operation, String r) {
+        switch(operation) {
+            case Operator.ADD:
+                return l.concat(r);
+            case Operator.EQUAL:
+                return l.equals(r);
+            case Operator.NEQUAL:
+                return !l.equals(r);
+            case Operator.GTHAN:
+                return l.compareTo(r) > 0;
+            case Operator.GETHAN:
+                return l.compareTo(r) >= 0;
+            case Operator.LTHAN:
+                return l.compareTo(r) < 0;
+            case Operator.LETHAN:
+                return l.compareTo(r) <= 0;
+        }
+        throw new IllegalStateException("unsupported specialized operation: " + operation);
     }
 
     public int getOperation() {
         return operation;
     }
 
+    /** 左边节点的类型(内部表示形式,见DataTypes),-1表示未知 */
+    public int getLeftType() {
+        return lType;
+    }
+
+    /** 右边节点的类型(内部表示形式,见DataTypes),-1表示未知 */
+    public int getRightType() {
+        return rType;
+    }
+
     /** 替换掉最右边的节点 如 a + b - c 增加一个 * d时，就把c替换为(c*d) */
     public void setRightMost(ASTNode right) {
         BinaryOperation n = this;
@@ -20,6 +20,10 @@ package org.mvelx.ast;
 
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
+import org.mvelx.compiler.SharedValueScope;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
+import org.mvelx.integration.impl.SharedValueResolverFactory;
 
 /**
  * 用于描述抽象的语法块节点,即内部会有一个单独的代码块内容,如if for等
@@ -35,12 +39,45 @@ public class BlockNode extends ASTNode {
     /** 表示当前的执行块 */
     protected ExecutableStatement compiledBlock;
 
+    /** 循环中的不变量范围,不是循环或者没有不变量时为null */
+    protected SharedValueScope invariantScope;
+
+    /** 代码块中声明的变量个数,即执行时作用域帧的初始大小 */
+    protected int frameSize;
+
     public BlockNode(ParserContext pCtx) {
         super(pCtx);
     }
 
+    /** 为一次循环执行准备不变量的存储,不变量在循环中第一次使用时计算,没有不变量时直接返回原工厂 */
+    protected VariableResolverFactory invariantFactory(VariableResolverFactory factory) {
+        return invariantScope == null ? factory : new SharedValueResolverFactory(invariantScope, factory);
+    }
+
+    /** 记录当前编译作用域中声明的变量个数,在弹出编译作用域之前调用 */
+    protected void recordFrameSize(ParserContext pCtx) {
+        if(pCtx != null) {
+            frameSize = pCtx.getVariableScope().size();
+        }
+    }
+
+    /** 为代码块的一次执行获取可复用的作用域帧,执行完之后需要通过release进行释放 */
+    protected ScopeFrameResolverFactory acquireFrame(VariableResolverFactory factory) {
+        return ScopeFrameResolverFactory.acquire(factory, frameSize);
+    }
+
     public int getBlockStart() {
         return blockStart;
     }
+
+    /** 返回当前的执行块 */
+    public ExecutableStatement getCompiledBlock() {
+        return compiledBlock;
+    }
+
+    /** 循环中的不变量范围 */
+    public SharedValueScope getInvariantScope() {
+        return invariantScope;
+    }
 }
 
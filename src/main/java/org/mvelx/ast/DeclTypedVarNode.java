@@ -46,6 +46,7 @@ public class DeclTypedVarNode extends ASTNode implements Assignment {
         //因为是已经声明了,因此加入解析变量域中
         if((fields & COMPILE_IMMEDIATE) != 0) {
             pCtx.addVariable(name, egressType, true);
+            pCtx.markAssigned(name);
         }
     }
 
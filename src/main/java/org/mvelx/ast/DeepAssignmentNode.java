@@ -83,6 +83,7 @@ public class DeepAssignmentNode extends ASTNode implements Assignment {
         //对当前属性进行解析并处理
         if((fields & COMPILE_IMMEDIATE) != 0) {
             acc = (CompiledAccExpression) compileSetExpression(property.toCharArray(), start, offset, pCtx);
+            pCtx.markAssigned(property);
         }
     }
 
@@ -21,9 +21,7 @@ package org.mvelx.ast;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.MapVariableResolverFactory;
-
-import java.util.HashMap;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.subCompileExpression;
@@ -60,6 +58,7 @@ public class DoNode extends BlockNode {
 
         this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
+        recordFrameSize(pCtx);
         if(pCtx != null) {
             pCtx.popVariableScope();
         }
@@ -67,14 +66,18 @@ public class DoNode extends BlockNode {
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //接下来的while循环,如果有相应的变量,则表示在整个循环中变量都是重用的,因此这里采用mapVarFactory以重用相应的处理
-        VariableResolverFactory ctxFactory = new MapVariableResolverFactory(new HashMap<>(0), factory);
+        ScopeFrameResolverFactory ctxFactory = acquireFrame(factory);
 
-        //整个过程即采用标准的do while循环处理
-        do{
-            compiledBlock.getValue(ctx, thisValue, ctxFactory);
+        try{
+            //整个过程即采用标准的do while循环处理
+            do{
+                compiledBlock.getValue(ctx, thisValue, ctxFactory);
+            }
+            //这里的条件判断还是作用的外部作用域,以与执行体相区分
+            while((Boolean) condition.getValue(ctx, thisValue, factory));
+        } finally {
+            ctxFactory.release();
         }
-        //这里的条件判断还是作用的外部作用域,以与执行体相区分
-        while((Boolean) condition.getValue(ctx, thisValue, factory));
 
         return null;
     }
@@ -21,9 +21,7 @@ package org.mvelx.ast;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.MapVariableResolverFactory;
-
-import java.util.HashMap;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.subCompileExpression;
@@ -54,6 +52,7 @@ public class DoUntilNode extends BlockNode {
 
         this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
+        recordFrameSize(pCtx);
         if(pCtx != null) {
             pCtx.popVariableScope();
         }
@@ -61,12 +60,16 @@ public class DoUntilNode extends BlockNode {
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //整个逻辑与do while相同,除了在while的判定不同
-        VariableResolverFactory lc = new MapVariableResolverFactory(new HashMap(0), factory);
+        ScopeFrameResolverFactory lc = acquireFrame(factory);
 
-        do{
-            compiledBlock.getValue(ctx, thisValue, lc);
+        try{
+            do{
+                compiledBlock.getValue(ctx, thisValue, lc);
+            }
+            while(!(Boolean) condition.getValue(ctx, thisValue, lc));
+        } finally {
+            lc.release();
         }
-        while(!(Boolean) condition.getValue(ctx, thisValue, lc));
 
         return null;
     }
@@ -21,27 +21,44 @@ package org.mvelx.ast;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.DefaultLocalVariableResolverFactory;
 import org.mvelx.integration.impl.ItemResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
+import org.mvelx.integration.impl.SynchronizedResolverFactory;
 
+import java.util.AbstractCollection;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.*;
 
 /** 用于描述特殊的fold语法节点  */
 public class Fold extends ASTNode {
+    /** 并行投影时每个任务处理的最少元素数 */
+    private static final int MIN_PARALLEL_LEAF = 256;
+
     private ExecutableStatement subEx;
     private ExecutableStatement dataEx;
     private ExecutableStatement constraintEx;
 
+    /** 并行投影的集合大小下限,为0表示不并行执行 */
+    private int parallelThreshold;
+    /** 是否返回延迟计算的投影视图 */
+    private boolean lazy;
+
     public Fold(char[] expr, int start, int offset, int fields, ParserContext pCtx) {
         super(pCtx);
         this.expr = expr;
         this.start = start;
         this.offset = offset;
+        this.parallelThreshold = pCtx != null ? pCtx.getParserConfiguration().getParallelFoldThreshold() : 0;
+        this.lazy = pCtx != null && pCtx.getParserConfiguration().isLazyFold();
 
         int cursor = start;
         int end = start + offset;
@@ -55,19 +72,26 @@ public class Fold extends ASTNode {
             }
         }
 
-        subEx = (ExecutableStatement) subCompileExpression(expr, start, cursor - start - 1, pCtx);
-        int st = cursor += 2; // skip 'in'
+        //投影以及过滤条件以集合中的每个元素为上下文执行,其中的访问不能作为外层循环的不变量外提
+        if(pCtx != null) pCtx.suspendLoopInvariantHoisting();
+        int st;
+        try{
+            subEx = (ExecutableStatement) subCompileExpression(expr, start, cursor - start - 1, pCtx);
+            st = cursor += 2; // skip 'in'
 
-        for(; cursor < end; cursor++) {
-            if(isWhitespace(expr[cursor])) {
-                while(cursor < end && isWhitespace(expr[cursor])) cursor++;
+            for(; cursor < end; cursor++) {
+                if(isWhitespace(expr[cursor])) {
+                    while(cursor < end && isWhitespace(expr[cursor])) cursor++;
 
-                if(expr[cursor] == 'i' && expr[cursor + 1] == 'f' && isJunct(expr[cursor + 2])) {
-                    int s = cursor + 2;
-                    constraintEx = (ExecutableStatement) subCompileExpression(expr, s, end - s, pCtx);
-                    break;
+                    if(expr[cursor] == 'i' && expr[cursor + 1] == 'f' && isJunct(expr[cursor + 2])) {
+                        int s = cursor + 2;
+                        constraintEx = (ExecutableStatement) subCompileExpression(expr, s, end - s, pCtx);
+                        break;
+                    }
                 }
             }
+        } finally {
+            if(pCtx != null) pCtx.resumeLoopInvariantHoisting();
         }
 
         while(isWhitespace(expr[cursor])) cursor--;
@@ -77,30 +101,172 @@ public class Fold extends ASTNode {
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-        ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver("$");
-        ItemResolverFactory itemFactory = new ItemResolverFactory(itemR, new DefaultLocalVariableResolverFactory(factory));
+        Collection col = ((Collection) dataEx.getValue(ctx, thisValue, factory));
 
-        List list;
+        //视图在遍历时仍会使用当前作用域,因此当前作用域链上的作用域帧不能再被复用
+        if(lazy) {
+            ScopeFrameResolverFactory.escape(factory);
+            return new FoldView(col, ctx, thisValue, factory);
+        }
 
-        if(constraintEx != null) {
-            Collection col = ((Collection) dataEx.getValue(ctx, thisValue, factory));
-            list = new ArrayList(col.size());
+        //大集合拆分之后并行投影
+        if(parallelThreshold > 0 && col.size() >= parallelThreshold) {
+            int leafSize = Math.max(MIN_PARALLEL_LEAF, col.size() / (ForkJoinPool.getCommonPoolParallelism() * 4));
+            return ForkJoinPool.commonPool().invoke(new FoldTask(col.spliterator(), leafSize, ctx, thisValue, factory, new Object()));
+        }
 
+        ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver("$");
+        ScopeFrameResolverFactory itemFactory = ScopeFrameResolverFactory.acquire(factory, 0).setItem(itemR);
+        try{
+            List list = new ArrayList(col.size());
             for(Object o : col) {
-                itemR.value = o;
-                if((Boolean) constraintEx.getValue(ctx, thisValue, itemFactory)) {
-                    list.add(subEx.getValue(o, thisValue, itemFactory));
+                project(o, list, itemR, ctx, thisValue, itemFactory);
+            }
+            return list;
+        } finally {
+            itemFactory.release();
+        }
+    }
+
+    /** 对单个元素进行条件判断以及投影,满足条件时将投影结果加入到列表中 */
+    private void project(Object o, List list, ItemResolverFactory.ItemResolver itemR, Object ctx, Object thisValue, VariableResolverFactory itemFactory) {
+        itemR.value = o;
+        if(constraintEx == null || (Boolean) constraintEx.getValue(ctx, thisValue, itemFactory)) {
+            list.add(subEx.getValue(o, thisValue, itemFactory));
+        }
+    }
+
+    /**
+     * 延迟计算的投影视图,遍历时才对元素进行条件判断以及投影
+     * 源集合同样为投影视图时,遍历时逐个从源视图中获取元素,即嵌套的投影在一次遍历中完成,不产生中间列表
+     */
+    private class FoldView extends AbstractCollection {
+        private final Collection source;
+        private final Object ctx;
+        private final Object thisValue;
+        private final VariableResolverFactory factory;
+
+        FoldView(Collection source, Object ctx, Object thisValue, VariableResolverFactory factory) {
+            this.source = source;
+            this.ctx = ctx;
+            this.thisValue = thisValue;
+            this.factory = factory;
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new FoldIterator(source.iterator(), true, ctx, thisValue, factory);
+        }
+
+        /** 没有条件时与源集合大小相同,否则只进行条件判断,不进行投影 */
+        @Override
+        public int size() {
+            if(constraintEx == null) {
+                return source.size();
+            }
+
+            int size = 0;
+            for(Iterator it = new FoldIterator(source.iterator(), false, ctx, thisValue, factory); it.hasNext(); it.next()) {
+                size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return constraintEx == null ? source.isEmpty() : !new FoldIterator(source.iterator(), false, ctx, thisValue, factory).hasNext();
+        }
+    }
+
+    /** 投影视图的迭代器,每个迭代器使用单独的循环变量及作用域 */
+    private class FoldIterator implements Iterator {
+        private final Iterator source;
+        /** 是否进行投影,为false时只进行条件判断,返回源元素 */
+        private final boolean project;
+        private final Object ctx;
+        private final Object thisValue;
+        private final ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver("$");
+        private final VariableResolverFactory itemFactory;
+
+        /** 下一个结果 */
+        private Object next;
+        /** 下一个结果是否已准备好 */
+        private boolean ready;
+
+        FoldIterator(Iterator source, boolean project, Object ctx, Object thisValue, VariableResolverFactory factory) {
+            this.source = source;
+            this.project = project;
+            this.ctx = ctx;
+            this.thisValue = thisValue;
+            this.itemFactory = new ScopeFrameResolverFactory(factory).setItem(itemR);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while(!ready && source.hasNext()) {
+                Object o = itemR.value = source.next();
+                if(constraintEx == null || (Boolean) constraintEx.getValue(ctx, thisValue, itemFactory)) {
+                    next = project ? subEx.getValue(o, thisValue, itemFactory) : o;
+                    ready = true;
                 }
             }
+            return ready;
+        }
 
-        } else {
-            Collection col = ((Collection) dataEx.getValue(ctx, thisValue, factory));
-            list = new ArrayList(col.size());
-            for(Object o : col) {
-                list.add(subEx.getValue(itemR.value = o, thisValue, itemFactory));
+        @Override
+        public Object next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
             }
+            Object value = next;
+            next = null;
+            ready = false;
+            return value;
+        }
+    }
+
+    /**
+     * 并行投影的任务,元素数超过叶子大小时继续拆分,前半部分交由其它线程执行
+     * 每个叶子任务使用单独的循环变量及作用域,合并时按照拆分的顺序连接结果
+     * 调用方的变量工厂在查找变量时可能延迟地写入缓存,因此各叶子任务通过共用同一个锁的包装工厂访问
+     */
+    private class FoldTask extends RecursiveTask<List> {
+        private final Spliterator spliterator;
+        private final int leafSize;
+        private final Object ctx;
+        private final Object thisValue;
+        private final VariableResolverFactory factory;
+        /** 访问调用方变量工厂时使用的锁 */
+        private final Object lock;
+
+        FoldTask(Spliterator spliterator, int leafSize, Object ctx, Object thisValue, VariableResolverFactory factory, Object lock) {
+            this.spliterator = spliterator;
+            this.leafSize = leafSize;
+            this.ctx = ctx;
+            this.thisValue = thisValue;
+            this.factory = factory;
+            this.lock = lock;
+        }
+
+        @Override
+        protected List compute() {
+            Spliterator prefix;
+            if(spliterator.estimateSize() > leafSize && (prefix = spliterator.trySplit()) != null) {
+                FoldTask left = new FoldTask(prefix, leafSize, ctx, thisValue, factory, lock);
+                left.fork();
+                List right = new FoldTask(spliterator, leafSize, ctx, thisValue, factory, lock).compute();
+                List list = left.join();
+                list.addAll(right);
+                return list;
+            }
+
+            ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver("$");
+            VariableResolverFactory leafFactory = factory == null ? null : new SynchronizedResolverFactory(factory, lock);
+            VariableResolverFactory itemFactory = new ScopeFrameResolverFactory(leafFactory).setItem(itemR);
+            List list = new ArrayList((int) spliterator.estimateSize());
+            spliterator.forEachRemaining(o -> project(o, list, itemR, ctx, thisValue, itemFactory));
+            return list;
         }
-        return list;
     }
 
     public Class getEgressType() {
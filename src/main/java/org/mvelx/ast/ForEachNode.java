@@ -22,11 +22,15 @@ import org.mvelx.DataConversion;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.DefaultLocalVariableResolverFactory;
 import org.mvelx.integration.impl.ItemResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 import org.mvelx.util.ParseTools;
 
 import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
 
 import static org.mvelx.util.ParseTools.*;
 
@@ -46,14 +50,26 @@ public class ForEachNode extends BlockNode {
 
     /** 集合迭代 */
     private static final int ITERABLE = 0;
-    /** 数组迭代 */
+    /** 数组迭代,用于其它原始类型数组,通过反射读取元素 */
     private static final int ARRAY = 1;
     /** 字符串迭代 */
     private static final int CHARSEQUENCE = 2;
     /** 数字处理，表示从 A..B的数字处理,即for(x : 3) x的值分别为 1..3,即1 2 3 */
     private static final int INTEGER = 3;
+    /** 可随机访问的列表,通过下标迭代,不创建迭代器 */
+    private static final int RANDOM_ACCESS = 4;
+    /** Arrays.asList返回的列表类型 */
+    private static final Class ARRAYS_LIST_CLASS = Arrays.asList().getClass();
+    /** 对象数组 */
+    private static final int OBJECT_ARRAY = 5;
+    /** int数组 */
+    private static final int INT_ARRAY = 6;
+    /** long数组 */
+    private static final int LONG_ARRAY = 7;
+    /** double数组 */
+    private static final int DOUBLE_ARRAY = 8;
 
-    /** 当前循环对象的类型 4选1(上面的) */
+    /** 当前循环对象的类型 (上面的常量之一),在第一次执行时确定,之后值类型不匹配时再重新确定 */
     private int type = -1;
 
     public ForEachNode(char[] expr, int start, int offset, int blockStart, int blockOffset, int fields, ParserContext pCtx) {
@@ -73,10 +89,14 @@ public class ForEachNode extends BlockNode {
 
             //为循环体创建新上下文
             pCtx.pushVariableScope();
+            pCtx.pushLoopInvariantScope();
             //当前变量在子上下文中可见,即在循环体中可使用到此变量
             pCtx.makeVisible(item);
+            pCtx.markAssigned(item);
 
             this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
+            this.invariantScope = pCtx.popLoopInvariantScope();
+            recordFrameSize(pCtx);
 
             //编译完,结束临时上下文
             pCtx.popVariableScope();
@@ -87,20 +107,81 @@ public class ForEachNode extends BlockNode {
         //这里面有单独的一个变量,因此创建一个优先级最高的单独解析器并通过封装此解析器来完成后面执行块的处理
         ItemResolverFactory.ItemResolver itemR = new ItemResolverFactory.ItemResolver(item);
         //因为这里要执行方法体,因此需要一个新的作用域,因此在原factory的基础上创建新的解析器作用域
-        ItemResolverFactory itemFactory = new ItemResolverFactory(itemR, new DefaultLocalVariableResolverFactory(factory));
+        ScopeFrameResolverFactory itemFactory = acquireFrame(invariantFactory(factory)).setItem(itemR);
+        try{
+            return iterate(ctx, thisValue, factory, itemR, itemFactory);
+        } finally {
+            itemFactory.release();
+        }
+    }
 
+    /** 对循环对象进行迭代,依次设置循环变量并执行循环体 */
+    private Object iterate(Object ctx, Object thisValue, VariableResolverFactory factory,
+                           ItemResolverFactory.ItemResolver itemR, VariableResolverFactory itemFactory) {
         //一次性获取到相应的循环的值(不会多次求值)
         Object iterCond = condition.getValue(ctx, thisValue, factory);
 
-        //如果变量类型还没有确定,则这里根据相应的值类型再进行判定
-        if(type == -1) {
-            determineIterType(iterCond.getClass());
+        //如果变量类型还没有确定,或者与之前确定的类型不匹配,则这里根据相应的值类型再进行判定
+        int iterType = type;
+        if(iterType == -1 || !isIterType(iterType, iterCond)) {
+            type = iterType = determineIterType(iterCond.getClass());
         }
 
         Object v;
-        switch(type) {
-            //数组的执行方式,因为不能判定数组是原始还是包装,因此采用反射+3段式循环来做.即不能直接使用(Object[])来强制转型
-            case ARRAY:
+        switch(iterType) {
+            //可随机访问的列表,直接使用下标访问
+            //与迭代器一样快速失败,循环体中修改了列表的大小时报错,而不是继续访问新加入的元素
+            case RANDOM_ACCESS: {
+                List list = (List) iterCond;
+                int size = list.size();
+                for(int i = 0; i < size; i++) {
+                    itemR.setValue(list.get(i));
+                    v = compiledBlock.getValue(ctx, thisValue, itemFactory);
+                    //提前返回
+                    if(itemFactory.tiltFlag()) return v;
+                    if(list.size() != size) throw new ConcurrentModificationException();
+                }
+                break;
+            }
+            //以下数组均直接按相应的数组类型访问,不再通过反射
+            case OBJECT_ARRAY: {
+                Object[] array = (Object[]) iterCond;
+                for(Object o : array) {
+                    itemR.setValue(o);
+                    v = compiledBlock.getValue(ctx, thisValue, itemFactory);
+                    if(itemFactory.tiltFlag()) return v;
+                }
+                break;
+            }
+            case INT_ARRAY: {
+                int[] array = (int[]) iterCond;
+                for(int o : array) {
+                    itemR.setValue(o);
+                    v = compiledBlock.getValue(ctx, thisValue, itemFactory);
+                    if(itemFactory.tiltFlag()) return v;
+                }
+                break;
+            }
+            case LONG_ARRAY: {
+                long[] array = (long[]) iterCond;
+                for(long o : array) {
+                    itemR.setValue(o);
+                    v = compiledBlock.getValue(ctx, thisValue, itemFactory);
+                    if(itemFactory.tiltFlag()) return v;
+                }
+                break;
+            }
+            case DOUBLE_ARRAY: {
+                double[] array = (double[]) iterCond;
+                for(double o : array) {
+                    itemR.setValue(o);
+                    v = compiledBlock.getValue(ctx, thisValue, itemFactory);
+                    if(itemFactory.tiltFlag()) return v;
+                }
+                break;
+            }
+            //其它原始类型数组,因为不能判定数组的具体类型,因此采用反射+3段式循环来做
+            case ARRAY: {
                 int len = Array.getLength(iterCond);
                 for(int i = 0; i < len; i++) {
                     itemR.setValue(Array.get(iterCond, i));
@@ -109,25 +190,29 @@ public class ForEachNode extends BlockNode {
                     if(itemFactory.tiltFlag()) return v;
                 }
                 break;
-            //字符串迭代
-            case CHARSEQUENCE:
-                for(Object o : iterCond.toString().toCharArray()) {
-                    itemR.setValue(o);
+            }
+            //字符串迭代,直接按下标读取字符,不再复制出字符数组
+            case CHARSEQUENCE: {
+                CharSequence chars = (CharSequence) iterCond;
+                for(int i = 0; i < chars.length(); i++) {
+                    itemR.setValue(chars.charAt(i));
                     v = compiledBlock.getValue(ctx, thisValue, itemFactory);
                     //提前返回
                     if(itemFactory.tiltFlag()) return v;
                 }
                 break;
+            }
             //整数递增式迭代处理
-            case INTEGER:
-                int max = (Integer) iterCond + 1;
-                for(int i = 1; i != max; i++) {
+            case INTEGER: {
+                int max = (Integer) iterCond;
+                for(int i = 1; i <= max; i++) {
                     itemR.setValue(i);
                     v = compiledBlock.getValue(ctx, thisValue, itemFactory);
                     //提前返回
                     if(itemFactory.tiltFlag()) return v;
                 }
                 break;
+            }
 
             //可迭代对象,采用java 1.5式iterate处理
             case ITERABLE:
@@ -188,26 +273,67 @@ public class ForEachNode extends BlockNode {
                 enforceTypeSafety(itemType, getBaseComponentType(this.condition.getKnownEgressType()));
             } else if(pCtx.isStrongTyping()) {
                 //对相应的前面变量类型进行限定,以及对如何解析语句进行判定
-                determineIterType(egress);
+                type = determineIterType(egress);
             }
         }
     }
 
     /** 判定相应的循环类型 */
-    private void determineIterType(Class t) {
-        if(Iterable.class.isAssignableFrom(t)) {
-            type = ITERABLE;
+    private int determineIterType(Class t) {
+        if(isRandomAccessList(t)) {
+            return RANDOM_ACCESS;
+        } else if(Iterable.class.isAssignableFrom(t)) {
+            return ITERABLE;
         } else if(t.isArray()) {
-            type = ARRAY;
+            Class component = t.getComponentType();
+            if(!component.isPrimitive()) return OBJECT_ARRAY;
+            if(component == int.class) return INT_ARRAY;
+            if(component == long.class) return LONG_ARRAY;
+            if(component == double.class) return DOUBLE_ARRAY;
+            return ARRAY;
         } else if(CharSequence.class.isAssignableFrom(t)) {
-            type = CHARSEQUENCE;
+            return CHARSEQUENCE;
         } else if(Integer.class.isAssignableFrom(t)) {
-            type = INTEGER;
+            return INTEGER;
         } else {
             throw new CompileException("non-iterable type: " + t.getName(), expr, start);
         }
     }
 
+    /**
+     * 判定是否可以使用下标访问的列表,只限于已知的快速失败列表(ArrayList以及Arrays.asList)
+     * 其它列表即使支持RandomAccess,迭代语义也可能不同(如CopyOnWriteArrayList迭代的是快照),因此仍使用迭代器
+     */
+    private static boolean isRandomAccessList(Class t) {
+        return t == ArrayList.class || t == ARRAYS_LIST_CLASS;
+    }
+
+    /** 判断当前值是否可以使用之前确定的循环类型进行迭代 */
+    private static boolean isIterType(int type, Object value) {
+        switch(type) {
+            case RANDOM_ACCESS:
+                return value != null && isRandomAccessList(value.getClass());
+            case ITERABLE:
+                return value instanceof Iterable && !isRandomAccessList(value.getClass());
+            case OBJECT_ARRAY:
+                return value instanceof Object[];
+            case INT_ARRAY:
+                return value instanceof int[];
+            case LONG_ARRAY:
+                return value instanceof long[];
+            case DOUBLE_ARRAY:
+                return value instanceof double[];
+            case ARRAY:
+                return value != null && value.getClass().isArray();
+            case CHARSEQUENCE:
+                return value instanceof CharSequence;
+            case INTEGER:
+                return value instanceof Integer;
+            default:
+                return false;
+        }
+    }
+
     /** 保证类型安全 */
     private void enforceTypeSafety(Class required, Class actual) {
         if(!required.isAssignableFrom(actual) && !DataConversion.canConvert(actual, required)) {
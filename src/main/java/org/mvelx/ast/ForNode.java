@@ -22,11 +22,9 @@ import org.mvelx.CompileException;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 import org.mvelx.util.ParseTools;
 
-import java.util.HashMap;
-
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.subCompileExpression;
 
@@ -65,6 +63,7 @@ public class ForNode extends BlockNode {
         }
 
         //在build过程中有入栈,因此这里进行出栈,以丢弃已使用完的解析上下文作用域
+        recordFrameSize(pCtx);
         if(pCtx != null) {
             pCtx.popVariableScope();
         }
@@ -72,18 +71,43 @@ public class ForNode extends BlockNode {
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //根据解析时上下文情况考虑新建作用域
-        VariableResolverFactory ctxFactory = indexAlloc ? factory : new MapVariableResolverFactory(new HashMap<String, Object>(1), factory);
+        ScopeFrameResolverFactory frame = indexAlloc ? null : acquireFrame(factory);
+        VariableResolverFactory ctxFactory = invariantFactory(indexAlloc ? factory : frame);
         Object v;
-        //标准的for循环3段式处理,初始化,条件,递增处理
-        for(initializer.getValue(ctx, thisValue, ctxFactory); (Boolean) condition.getValue(ctx, thisValue, ctxFactory); after.getValue(ctx, thisValue, ctxFactory)) {
-            //内部语法块执行
-            v = compiledBlock.getValue(ctx, thisValue, ctxFactory);
-            //因为过程中可能有相应的return 语句,因此这里进行判定,以支持在for循环中提前返回
-            if(ctxFactory.tiltFlag()) return v;
+        try{
+            //标准的for循环3段式处理,初始化,条件,递增处理
+            for(initializer.getValue(ctx, thisValue, ctxFactory); (Boolean) condition.getValue(ctx, thisValue, ctxFactory); after.getValue(ctx, thisValue, ctxFactory)) {
+                //内部语法块执行
+                v = compiledBlock.getValue(ctx, thisValue, ctxFactory);
+                //因为过程中可能有相应的return 语句,因此这里进行判定,以支持在for循环中提前返回
+                if(ctxFactory.tiltFlag()) return v;
+            }
+        } finally {
+            if(frame != null) frame.release();
         }
         return null;
     }
 
+    /** 初始化语句(第1段) */
+    public ExecutableStatement getInitializer() {
+        return initializer;
+    }
+
+    /** 条件语句(第2段) */
+    public ExecutableStatement getCondition() {
+        return condition;
+    }
+
+    /** 第3段语句 */
+    public ExecutableStatement getAfter() {
+        return after;
+    }
+
+    /** 执行时是否直接使用当前变量工厂,而不是创建新的作用域 */
+    public boolean isIndexAlloc() {
+        return indexAlloc;
+    }
+
     /** 编译整个for循环语句,并通过变量逸出简单判断是否是死循环 */
     private boolean buildForEach(char[] condition, int start, int offset, int blockStart, int blockEnd, int fields, ParserContext pCtx) {
         int end = start + offset;
@@ -108,6 +132,8 @@ public class ForNode extends BlockNode {
             if(pCtx != null) {
                 pCtx.pushVariableScope();
             }
+            //条件,第3段以及执行块均会被重复执行,在其中处理循环不变量
+            spCtx.pushLoopInvariantScope();
 
             //条件节点
             try{
@@ -145,6 +171,7 @@ public class ForNode extends BlockNode {
 
             //执行节点
             this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockEnd, spCtx);
+            this.invariantScope = spCtx.popLoopInvariantScope();
             if(pCtx != null) {
                 pCtx.setInputs(spCtx.getInputs());
             }
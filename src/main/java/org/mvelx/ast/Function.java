@@ -19,7 +19,12 @@
 package org.mvelx.ast;
 
 import org.mvelx.CompileException;
+import org.mvelx.Operator;
 import org.mvelx.ParserContext;
+import org.mvelx.compiler.Accessor;
+import org.mvelx.compiler.ByteCodeCompiledExpression;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExecutableAccessor;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.compiler.ExpressionCompiler;
 import org.mvelx.integration.VariableResolver;
@@ -31,7 +36,9 @@ import org.mvelx.integration.impl.StackDemarcResolverFactory;
 
 import java.util.Map;
 
+import static org.mvelx.util.ParseTools.balancedCapture;
 import static org.mvelx.util.ParseTools.parseParameterDefList;
+import static org.mvelx.util.ParseTools.parseParameterList;
 import static org.mvelx.util.ParseTools.subCompileExpression;
 
 
@@ -52,6 +59,14 @@ public class Function extends ASTNode implements Safe {
     /** 是否是单列的，可以理解为是否是静态方法 */
     protected boolean singleton;
 
+    /** 函数体起始位 */
+    protected int blockStart;
+    /** 函数体长度位 */
+    protected int blockOffset;
+
+    /** 函数体中是否存在尾部位置的自身调用,存在时调用过程以循环的方式执行 */
+    protected boolean tailRecursive;
+
     /**
      * 构建出函数构建对象
      *
@@ -74,6 +89,8 @@ public class Function extends ASTNode implements Safe {
             this.name = null;
         }
         this.expr = expr;
+        this.blockStart = blockStart;
+        this.blockOffset = blockOffset;
 
         //解析参数
         parmNum = (this.parameters = parseParameterDefList(expr, start, offset)).length;
@@ -131,6 +148,9 @@ public class Function extends ASTNode implements Safe {
 
         //编译相应的执行块
         this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, ctx);
+        if(this.name != null && parmNum != 0) {
+            this.compiledBlock = markTailCalls(this.compiledBlock, true, ctx);
+        }
 
         this.parameters = new String[ctx.getIndexedInputs().size()];
 
@@ -160,8 +180,109 @@ public class Function extends ASTNode implements Safe {
         return instance;
     }
 
+    /**
+     * 将函数体中处于尾部位置的自身调用替换为尾调用节点,返回替换之后的执行语句
+     * 尾部位置即最后一条语句,三元运算的结果分支,尾部if语句的各个代码块,以及非循环体内的return语句
+     *
+     * @param tail 当前语句是否处于尾部位置,不处于尾部位置时只处理其中的return语句
+     */
+    private ExecutableStatement markTailCalls(ExecutableStatement stmt, boolean tail, ParserContext ctx) {
+        if(stmt instanceof ExecutableAccessor) {
+            ASTNode node = ((ExecutableAccessor) stmt).getNode();
+            ASTNode marked = markTailCall(node, tail, ctx);
+            return marked == node ? stmt : new ExecutableAccessor(marked, stmt.getKnownEgressType());
+        }
+
+        //整体编译为字节码的语句不再通过节点链执行,因此不作处理
+        if(!(stmt instanceof CompiledExpression) || stmt instanceof ByteCodeCompiledExpression) {
+            return stmt;
+        }
+
+        ASTNode first = ((CompiledExpression) stmt).getFirstNode();
+        //最后一条语句的起始节点
+        ASTNode last = first;
+        for(ASTNode tk = first; tk != null; tk = tk.nextASTNode) {
+            if(tk.isOperator(Operator.END_OF_STMT) && tk.nextASTNode != null) {
+                last = tk.nextASTNode;
+            }
+        }
+
+        ASTNode prev = null;
+        boolean inLast = false;
+        for(ASTNode tk = first; tk != null; prev = tk, tk = tk.nextASTNode) {
+            inLast |= tk == last;
+            //最后一条语句中的单个节点,三元运算的结果分支,即 ? 与 : 之间的单个节点,以及最后一个 : 之后的单个节点
+            boolean tailNode = tail && inLast && prev != null && (tk == last ? isStatementEnd(tk.nextASTNode)
+                    : prev.isOperator(Operator.TERNARY) && tk.nextASTNode != null && tk.nextASTNode.isOperator(Operator.TERNARY_ELSE)
+                    || prev.isOperator(Operator.TERNARY_ELSE) && isStatementEnd(tk.nextASTNode));
+
+            ASTNode marked = markTailCall(tk, tailNode, ctx);
+            if(marked != tk) {
+                marked.nextASTNode = tk.nextASTNode;
+                prev.nextASTNode = marked;
+                tk = marked;
+            }
+        }
+        return stmt;
+    }
+
+    /** 判断节点是否表示语句结束 */
+    private static boolean isStatementEnd(ASTNode node) {
+        return node == null || node.isOperator(Operator.END_OF_STMT) && node.nextASTNode == null;
+    }
+
+    /** 处理单个节点,尾部位置的自身调用替换为尾调用节点,if以及return则继续处理其内部的语句 */
+    private ASTNode markTailCall(ASTNode node, boolean tail, ParserContext ctx) {
+        if(node instanceof ReturnNode) {
+            if(node.accessor instanceof ExecutableStatement) {
+                node.setAccessor((Accessor) markTailCalls((ExecutableStatement) node.accessor, true, ctx));
+            }
+            return node;
+        }
+
+        if(node instanceof IfNode) {
+            for(IfNode ifNode = (IfNode) node; ifNode != null; ifNode = ifNode.elseIf) {
+                ifNode.nestedStatement = markTailCalls(ifNode.nestedStatement, tail, ctx);
+                if(ifNode.elseBlock != null) {
+                    ifNode.elseBlock = markTailCalls(ifNode.elseBlock, tail, ctx);
+                }
+            }
+            return node;
+        }
+
+        if(!tail || !isSelfCall(node, ctx)) {
+            return node;
+        }
+
+        tailRecursive = true;
+        return new TailCallNode(this, node, ctx);
+    }
+
+    /** 判断节点是否为 函数名(参数) 形式的自身调用,参数个数需要与定义相同 */
+    private boolean isSelfCall(ASTNode node, ParserContext ctx) {
+        if(node.getClass() != ASTNode.class || !node.isIdentifier() || (node.getFields() & ASSIGN) != 0) {
+            return false;
+        }
+
+        String call = node.getName();
+        int paren = call.indexOf('(');
+        if(paren <= 0 || call.charAt(call.length() - 1) != ')' || !name.equals(call.substring(0, paren).trim())) {
+            return false;
+        }
+
+        char[] chars = call.toCharArray();
+        if(balancedCapture(chars, paren, '(') != chars.length - 1 || ctx.getIndexedInputs().contains(name)) {
+            return false;
+        }
+        return parseParameterList(chars, paren + 1, chars.length - paren - 2).size() == parmNum;
+    }
+
     /** 执行真正的调用过程,即在已经产生了一个函数实例之后，再进行函数调用 */
     public Object call(Object ctx, Object thisValue, VariableResolverFactory factory, Object[] parms) {
+        if(tailRecursive && parms != null && parms.length == parmNum) {
+            return callTailRecursive(thisValue, factory, parms);
+        }
+
         if(parms != null && parms.length != 0) {
             // detect tail recursion
             //这里处理递归化调用,则当前函数递归调用当前函数,那么相应的工厂就是之前在当前函数内创建好地变量工厂
@@ -196,6 +317,19 @@ public class Function extends ASTNode implements Safe {
 
     }
 
+    /**
+     * 以循环的方式执行存在尾调用的函数体,函数体返回尾调用标记时,表示作用域已使用新的参数重置,则继续执行函数体
+     * 每次调用均使用新的作用域,即使是在函数内部的递归调用也不复用外层的作用域
+     */
+    private Object callTailRecursive(Object thisValue, VariableResolverFactory factory, Object[] parms) {
+        StackDemarcResolverFactory frame = new StackDemarcResolverFactory(new FunctionVariableResolverFactory(this, factory, parameters, parms));
+        Object value;
+        while((value = compiledBlock.getValue(thisValue, frame)) == TailCallNode.TAIL_CALL) {
+            frame.setTiltFlag(false);
+        }
+        return value;
+    }
+
     public String getName() {
         return name;
     }
@@ -208,6 +342,21 @@ public class Function extends ASTNode implements Safe {
         return parameters;
     }
 
+    /** 声明的参数个数 */
+    public int getParameterCount() {
+        return parmNum;
+    }
+
+    /** 是否为全局声明的函数 */
+    public boolean isSingleton() {
+        return singleton;
+    }
+
+    /** 函数体源码,即{}中的内容 */
+    public String getBody() {
+        return new String(expr, blockStart, blockOffset);
+    }
+
     public void checkArgumentCount(int passing) {
         if(passing != parmNum) {
             throw new CompileException("bad number of arguments in function call: "
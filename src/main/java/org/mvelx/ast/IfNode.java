@@ -20,11 +20,10 @@ package org.mvelx.ast;
 
 import org.mvelx.CompileException;
 import org.mvelx.ParserContext;
+import org.mvelx.compiler.ExecutableLiteral;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.MapVariableResolverFactory;
-
-import java.util.HashMap;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.subCompileExpression;
@@ -71,6 +70,7 @@ public class IfNode extends BlockNode implements NestedStatement {
             }
             this.nestedStatement = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
+            recordFrameSize(pCtx);
             if(pCtx != null) {
                 pCtx.popVariableScope();
             }
@@ -80,11 +80,11 @@ public class IfNode extends BlockNode implements NestedStatement {
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //标准的if elseif else逻辑,在创建变量作用域时,需要根据当前的作用域是否可创建新变量才判定是否要使用新的作用域
         if((Boolean) condition.getValue(ctx, thisValue, factory)) {
-            return nestedStatement.getValue(ctx, thisValue, idxAlloc ? factory : new MapVariableResolverFactory(new HashMap(0), factory));
+            return executeBlock(nestedStatement, null, ctx, thisValue, factory);
         } else if(elseIf != null) {
-            return elseIf.getReducedValueAccelerated(ctx, thisValue, idxAlloc ? factory : new MapVariableResolverFactory(new HashMap(0), factory));
+            return executeBlock(null, elseIf, ctx, thisValue, factory);
         } else if(elseBlock != null) {
-            return elseBlock.getValue(ctx, thisValue, idxAlloc ? factory : new MapVariableResolverFactory(new HashMap(0), factory));
+            return executeBlock(elseBlock, null, ctx, thisValue, factory);
         }
         //只有if,并且if不满足条件,返回null
         else {
@@ -92,6 +92,86 @@ public class IfNode extends BlockNode implements NestedStatement {
         }
     }
 
+    /** 在代码块的作用域中执行相应的语句或者elseif节点,当前作用域不允许创建新变量时使用复用的作用域帧 */
+    private Object executeBlock(ExecutableStatement block, IfNode elseIfNode, Object ctx, Object thisValue, VariableResolverFactory factory) {
+        if(idxAlloc) {
+            return block != null ? block.getValue(ctx, thisValue, factory) : elseIfNode.getReducedValueAccelerated(ctx, thisValue, factory);
+        }
+
+        ScopeFrameResolverFactory frame = acquireFrame(factory);
+        try{
+            return block != null ? block.getValue(ctx, thisValue, frame) : elseIfNode.getReducedValueAccelerated(ctx, thisValue, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 根据为常量的条件裁剪不会执行的分支,返回裁剪之后实际需要执行的节点
+     * 条件为常量true时直接执行相应的代码块,为常量false时跳过当前分支,后续elseif中条件为常量的分支同样进行裁剪
+     */
+    public ASTNode pruneDeadBranches() {
+        Boolean constant = constantCondition(condition);
+        if(constant == null) {
+            pruneElseIf();
+            return this;
+        }
+
+        if(constant) {
+            return new ScopedBlockNode(expr, start, offset, nestedStatement, idxAlloc, pCtx);
+        } else if(elseIf != null) {
+            return elseIf.pruneDeadBranches();
+        } else if(elseBlock != null) {
+            return new ScopedBlockNode(expr, start, offset, elseBlock, idxAlloc, pCtx);
+        }
+        //没有任何分支会执行,与不满足条件时的返回值相同
+        return new LiteralNode(null, pCtx);
+    }
+
+    /** 裁剪后续elseif中条件为常量的分支,条件为true的分支成为else块,条件为false的分支直接去掉 */
+    private void pruneElseIf() {
+        while(elseIf != null) {
+            IfNode next = elseIf;
+            Boolean constant = constantCondition(next.condition);
+            if(constant == null) {
+                next.pruneElseIf();
+                return;
+            }
+
+            if(constant) {
+                elseIf = null;
+                elseBlock = next.nestedStatement;
+                return;
+            }
+
+            elseIf = next.elseIf;
+            elseBlock = next.elseBlock;
+        }
+    }
+
+    /** 返回条件表达式的常量值,不是boolean常量时返回null */
+    private static Boolean constantCondition(ExecutableStatement condition) {
+        if(condition instanceof ExecutableLiteral && ((ExecutableLiteral) condition).getLiteral() instanceof Boolean) {
+            return (Boolean) ((ExecutableLiteral) condition).getLiteral();
+        }
+        return null;
+    }
+
+    /** 条件表达式 */
+    public ExecutableStatement getCondition() {
+        return condition;
+    }
+
+    /** 后面的elseif 节点 */
+    public IfNode getElseIf() {
+        return elseIf;
+    }
+
+    /** 执行代码块时是否直接使用当前变量工厂,而不是创建新的作用域 */
+    public boolean isIdxAlloc() {
+        return idxAlloc;
+    }
+
     /** 相应的嵌套代码块,即if{}内部的执行语句 */
     public ExecutableStatement getNestedStatement() {
         return nestedStatement;
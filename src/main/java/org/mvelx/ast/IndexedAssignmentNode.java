@@ -122,6 +122,12 @@ public class IndexedAssignmentNode extends ASTNode implements Assignment {
         if((fields & COMPILE_IMMEDIATE) != 0) {
             pCtx.addVariable(name, egressType);
         }
+        //与其它按下标处理的节点相同,总是记录赋值,以避免循环中的不变量判断错误,下标写入同时使全部的属性访问失效
+        if(col) {
+            pCtx.markPropertyAssigned(this.name);
+        } else {
+            pCtx.markAssigned(this.name);
+        }
     }
 
     /** 表示普通的赋值操作 没有 += 这种处理 */
@@ -36,6 +36,7 @@ public class IndexedDeclTypedVarNode extends ASTNode implements Assignment {
         this.start = start;
         this.offset = offset;
         this.register = register;
+        pCtx.markAssigned(register);
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
@@ -40,6 +40,7 @@ public class IndexedPostFixDecNode extends ASTNode {
         this.register = register;
         //因为这里是下标,因此从之前的下标变量中获取到相应的类型即可
         this.egressType = pCtx.getVarOrInputType(pCtx.getIndexedVarNames()[register]);
+        pCtx.markAssigned(register);
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
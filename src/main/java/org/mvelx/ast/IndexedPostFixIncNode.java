@@ -38,6 +38,7 @@ public class IndexedPostFixIncNode extends ASTNode {
         this.register = register;
         //已注册下标,则直接从相应的上下文中获取到变量名,再获取类型即可
         this.egressType = pCtx.getVarOrInputType(pCtx.getIndexedVarNames()[register]);
+        pCtx.markAssigned(register);
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
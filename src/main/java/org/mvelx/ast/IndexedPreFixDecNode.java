@@ -37,6 +37,7 @@ public class IndexedPreFixDecNode extends ASTNode {
         this.register = register;
         //因为之前已注册下标,则从之前的下标变量中获取即可
         this.egressType = pCtx.getVarOrInputType(pCtx.getIndexedVarNames()[register]);
+        pCtx.markAssigned(register);
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
@@ -38,6 +38,7 @@ public class IndexedPreFixIncNode extends ASTNode {
         this.register = register;
         //之前已注册,则直接通过下标获取变量名,再获取类型
         this.egressType = pCtx.getVarOrInputType(pCtx.getIndexedVarNames()[register]);
+        pCtx.markAssigned(register);
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
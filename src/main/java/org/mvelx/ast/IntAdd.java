@@ -1,5 +1,6 @@
 package org.mvelx.ast;
 
+import org.mvelx.DataTypes;
 import org.mvelx.Operator;
 import org.mvelx.ParserContext;
 import org.mvelx.integration.VariableResolverFactory;
@@ -15,15 +16,19 @@ public class IntAdd extends BinaryOperation implements IntOptimized {
 
     @Override
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-        //整数相加,分别计算出数值,直接进行+即可,而不必通过math.doOperate进行多项判断
-        //各个节点采用编译执行完成
-        return ((Integer) left.getReducedValueAccelerated(ctx, thisValue, factory))
-                + ((Integer) right.getReducedValueAccelerated(ctx, thisValue, factory));
+        //整数相加,直接以int计算,而不必通过math.doOperate进行多项判断,溢出时与通用运算一样提升为long
+        return intOptimizedValue(ctx, thisValue, factory);
     }
 
-    /** 整数相加,结果肯定为int类型 */
+    /** 按int特化计算(executeInt),子节点同样以int计算,溢出时通过UnexpectedResultException返回提升之后的结果 */
+    @Override
+    protected int specializedResultType() {
+        return DataTypes.W_INTEGER;
+    }
+
+    /** 整数相加,溢出时结果提升为long,因此不声明为Integer */
     @Override
     public Class getEgressType() {
-        return Integer.class;
+        return Number.class;
     }
 }
@@ -1,5 +1,6 @@
 package org.mvelx.ast;
 
+import org.mvelx.DataTypes;
 import org.mvelx.Operator;
 import org.mvelx.ParserContext;
 import org.mvelx.integration.VariableResolverFactory;
@@ -15,9 +16,8 @@ public class IntDiv extends BinaryOperation implements IntOptimized {
 
     @Override
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-        // a / b ,每个节点采用编译运行的方式
-        return ((Integer) left.getReducedValueAccelerated(ctx, thisValue, factory))
-                / ((Integer) right.getReducedValueAccelerated(ctx, thisValue, factory));
+        //整数相除,操作数不是int(如子节点溢出之后的long)时按通用运算处理
+        return intOptimizedValue(ctx, thisValue, factory);
     }
 
     @Override
@@ -25,9 +25,36 @@ public class IntDiv extends BinaryOperation implements IntOptimized {
         super.setRight(node);
     }
 
-    /** 整数相除,结果肯定为整数 */
+    /** 整数相除,子节点同样以int计算,避免中间结果的装箱;子节点结果不是int或者相除溢出时通过UnexpectedResultException返回实际结果 */
+    @Override
+    public int executeInt(Object ctx, Object thisValue, VariableResolverFactory factory) throws UnexpectedResultException {
+        int l;
+        try{
+            l = left.executeInt(ctx, thisValue, factory);
+        } catch(UnexpectedResultException e) {
+            throw new UnexpectedResultException(doIntOptimizedOperation(e.getResult(), Operator.DIV, right.getReducedValueAccelerated(ctx, thisValue, factory)));
+        }
+        int r;
+        try{
+            r = right.executeInt(ctx, thisValue, factory);
+        } catch(UnexpectedResultException e) {
+            throw new UnexpectedResultException(doIntOptimizedOperation(l, Operator.DIV, e.getResult()));
+        }
+        if(l == Integer.MIN_VALUE && r == -1) {
+            throw new UnexpectedResultException(-(long) l);
+        }
+        return l / r;
+    }
+
+    /** 按int特化计算(executeInt) */
+    @Override
+    protected int specializedResultType() {
+        return DataTypes.W_INTEGER;
+    }
+
+    /** 整数相除,结果通常为int,但 MIN_VALUE / -1 或操作数不是int时可能为其它数字类型 */
     @Override
     public Class getEgressType() {
-        return Integer.class;
+        return Number.class;
     }
 }
\ No newline at end of file
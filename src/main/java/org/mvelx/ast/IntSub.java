@@ -1,5 +1,6 @@
 package org.mvelx.ast;
 
+import org.mvelx.DataTypes;
 import org.mvelx.Operator;
 import org.mvelx.ParserContext;
 import org.mvelx.integration.VariableResolverFactory;
@@ -15,14 +16,19 @@ public class IntSub extends BinaryOperation implements IntOptimized {
 
     @Override
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
-        // a - b,每个节点采用编译运行
-        return ((Integer) left.getReducedValueAccelerated(ctx, thisValue, factory))
-                - ((Integer) right.getReducedValueAccelerated(ctx, thisValue, factory));
+        //整数相减,直接以int计算,而不必通过math.doOperate进行多项判断,溢出时与通用运算一样提升为long
+        return intOptimizedValue(ctx, thisValue, factory);
     }
 
-    /** 整数相减,结果为整数 */
+    /** 按int特化计算(executeInt),子节点同样以int计算,溢出时通过UnexpectedResultException返回提升之后的结果 */
+    @Override
+    protected int specializedResultType() {
+        return DataTypes.W_INTEGER;
+    }
+
+    /** 整数相减,结果可能因溢出提升为long */
     @Override
     public Class getEgressType() {
-        return Integer.class;
+        return Number.class;
     }
 }
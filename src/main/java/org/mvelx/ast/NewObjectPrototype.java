@@ -3,6 +3,7 @@ package org.mvelx.ast;
 import org.mvelx.ParserContext;
 import org.mvelx.integration.VariableResolverFactory;
 import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 
 import java.util.HashMap;
 
@@ -23,6 +24,8 @@ public class NewObjectPrototype extends ASTNode {
     @Override
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //因为是new一个对象,因此需要一个新的变量工厂,即作用域
+        //原型对象在之后仍会引用当前作用域,因此当前作用域链上的作用域帧不能再被复用
+        ScopeFrameResolverFactory.escape(factory);
         final MapVariableResolverFactory resolverFactory = new MapVariableResolverFactory(new HashMap<String, Object>(), factory);
         //这里实际上已经作了一次函数块调用,但这个调用没什么用处...
         function.getCompiledBlock().getValue(ctx, thisValue, resolverFactory);
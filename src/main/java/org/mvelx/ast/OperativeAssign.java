@@ -61,6 +61,7 @@ public class OperativeAssign extends ASTNode {
             if(!pCtx.hasVarOrInput(varName)) {
                 pCtx.addInput(varName, egressType);
             }
+            pCtx.markAssigned(varName);
         }
     }
 
@@ -56,6 +56,12 @@ public class Or extends BooleanNode {
         return n.right;
     }
 
+    /** 两边均以boolean计算,避免结果的装箱 */
+    @Override
+    public boolean evalBoolean(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        return left.evalBoolean(ctx, thisValue, factory) || right.evalBoolean(ctx, thisValue, factory);
+    }
+
     public String toString() {
         return "(" + left.toString() + " || " + right.toString() + ")";
     }
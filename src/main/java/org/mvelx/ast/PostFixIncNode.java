@@ -37,6 +37,7 @@ public class PostFixIncNode extends ASTNode {
         this.name = name;
         if(pCtx != null) {
             this.egressType = pCtx.getVarOrInputType(name);
+            pCtx.markAssigned(name);
         }
     }
 
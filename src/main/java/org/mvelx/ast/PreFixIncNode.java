@@ -39,6 +39,7 @@ public class PreFixIncNode extends ASTNode {
         this.name = name;
         if(pCtx != null) {
             this.egressType = pCtx.getVarOrInputType(name);
+            pCtx.markAssigned(name);
         }
     }
 
@@ -0,0 +1,48 @@
+package org.mvelx.ast;
+
+import org.mvelx.ParserContext;
+import org.mvelx.compiler.ExecutableStatement;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
+
+/**
+ * 直接执行的代码块节点,由编译期裁剪条件为常量的if语句产生,即只保留了实际会执行的分支
+ * 执行时与if的代码块相同,在当前作用域不允许创建新变量时使用新的变量作用域
+ */
+public class ScopedBlockNode extends BlockNode implements NestedStatement {
+    /** 执行语句 */
+    private final ExecutableStatement nestedStatement;
+
+    /** 当前解析上下文是否可创建新变量 */
+    private final boolean idxAlloc;
+
+    public ScopedBlockNode(char[] expr, int start, int offset, ExecutableStatement nestedStatement, boolean idxAlloc, ParserContext pCtx) {
+        super(pCtx);
+        this.expr = expr;
+        this.start = start;
+        this.offset = offset;
+        this.nestedStatement = nestedStatement;
+        this.idxAlloc = idxAlloc;
+    }
+
+    public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        if(idxAlloc) {
+            return nestedStatement.getValue(ctx, thisValue, factory);
+        }
+
+        ScopeFrameResolverFactory frame = acquireFrame(factory);
+        try{
+            return nestedStatement.getValue(ctx, thisValue, frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    public ExecutableStatement getNestedStatement() {
+        return nestedStatement;
+    }
+
+    public String toString() {
+        return new String(expr, start, offset);
+    }
+}
@@ -0,0 +1,67 @@
+package org.mvelx.ast;
+
+import org.mvelx.ParserContext;
+import org.mvelx.compiler.SharedValueScope;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.SharedValueResolverFactory;
+
+/**
+ * 公共子表达式节点,即在同一个编译表达式中重复出现的无副作用访问
+ * 所有出现的位置共用同一个原始节点,在一次执行中只在第一次使用时计算,之后直接读取共享存储中的值
+ * 由编译期的公共子表达式消除以及循环不变量外提产生
+ */
+public class SharedValueNode extends ASTNode {
+    /** 所属的共享范围 */
+    private final SharedValueScope scope;
+    /** 共享存储中的下标 */
+    private final int slot;
+    /** 实际计算值的节点 */
+    private final ASTNode node;
+    /** 是否共享计算结果,编译期判断出不能共享时每次均直接计算 */
+    private boolean shared = true;
+
+    public SharedValueNode(SharedValueScope scope, int slot, ASTNode node, ParserContext pCtx) {
+        super(pCtx);
+        this.scope = scope;
+        this.slot = slot;
+        this.node = node;
+        this.egressType = node.getEgressType();
+    }
+
+    public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        SharedValueResolverFactory sharedFactory = shared ? SharedValueResolverFactory.find(factory, scope) : null;
+        //不共享或不在相应的执行范围之内(如节点被单独执行),则直接计算
+        if(sharedFactory == null) {
+            return node.getReducedValueAccelerated(ctx, thisValue, factory);
+        }
+
+        if(sharedFactory.isComputed(slot)) {
+            return sharedFactory.getValue(slot);
+        }
+
+        Object value = node.getReducedValueAccelerated(ctx, thisValue, factory);
+        sharedFactory.setValue(slot, value);
+        return value;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public ASTNode getNode() {
+        return node;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    @Override
+    public String toString() {
+        return "Shared<" + slot + ":" + node.getName() + ">";
+    }
+}
@@ -0,0 +1,100 @@
+package org.mvelx.ast;
+
+import org.mvelx.ParserContext;
+import org.mvelx.compiler.ExecutableStatement;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.FunctionVariableResolverFactory;
+import org.mvelx.integration.impl.StackDemarcResolverFactory;
+import org.mvelx.integration.impl.StackResetResolverFactory;
+
+import java.util.List;
+
+import static org.mvelx.util.ParseTools.parseParameterList;
+import static org.mvelx.util.ParseTools.subCompileExpression;
+
+/**
+ * 函数体中处于尾部位置的自身调用,如 def sum(n, acc) { n == 0 ? acc : sum(n - 1, acc + n) } 中的sum调用
+ * 执行时不再进行实际的递归调用,而是计算出新的参数值,使用新参数重置当前函数的变量作用域,
+ * 再返回调用标记,由Function.call 以循环的方式重新执行函数体,因此递归深度不再受调用栈的限制
+ */
+public class TailCallNode extends ASTNode {
+    /** 表示函数体需要使用新参数重新执行的返回标记 */
+    public static final Object TAIL_CALL = new Object();
+
+    /** 被调用的函数,即当前函数本身 */
+    private final Function function;
+    /** 函数名 */
+    private final String functionName;
+    /** 各个参数的执行单元 */
+    private final ExecutableStatement[] args;
+    /** 原调用节点,在不能以尾调用方式执行时,仍使用原节点进行正常调用 */
+    private final ASTNode original;
+
+    public TailCallNode(Function function, ASTNode original, ParserContext pCtx) {
+        super(pCtx);
+        this.function = function;
+        this.functionName = function.getName();
+        this.original = original;
+        this.expr = original.getExpr();
+        this.start = original.getStart();
+        this.offset = original.getOffset();
+
+        String call = original.getName();
+        char[] chars = call.toCharArray();
+        int paren = call.indexOf('(');
+        List<char[]> list = parseParameterList(chars, paren + 1, chars.length - paren - 2);
+        this.args = new ExecutableStatement[list.size()];
+        for(int i = 0; i < args.length; i++) {
+            args[i] = (ExecutableStatement) subCompileExpression(list.get(i), pCtx);
+        }
+    }
+
+    public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
+        FunctionVariableResolverFactory frame = frameOf(factory);
+        //函数名已被重新赋值,或者当前并不在此函数的调用过程中,使用原节点正常调用
+        if(frame == null || !isSelfReference(factory)) {
+            return original.getReducedValueAccelerated(ctx, thisValue, factory);
+        }
+
+        //先计算出全部参数,再重置作用域,参数中可能引用了当前的参数值
+        Object[] values = new Object[args.length];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = args[i].getValue(ctx, thisValue, factory);
+        }
+        frame.resetFrame(values);
+
+        return TAIL_CALL;
+    }
+
+    /** 查找当前函数调用时创建的变量作用域 */
+    private FunctionVariableResolverFactory frameOf(VariableResolverFactory factory) {
+        while(factory != null) {
+            if(factory instanceof FunctionVariableResolverFactory) {
+                FunctionVariableResolverFactory frame = (FunctionVariableResolverFactory) factory;
+                return frame.getFunction() == function ? frame : null;
+            }
+
+            if(factory instanceof StackDemarcResolverFactory) {
+                factory = ((StackDemarcResolverFactory) factory).getDelegate();
+            } else if(factory instanceof StackResetResolverFactory) {
+                factory = ((StackResetResolverFactory) factory).getDelegate();
+            } else {
+                factory = factory.getNextFactory();
+            }
+        }
+        return null;
+    }
+
+    /** 判断函数名当前是否仍引用此函数 */
+    private boolean isSelfReference(VariableResolverFactory factory) {
+        if(!factory.isResolvable(functionName)) {
+            return false;
+        }
+        Object ptr = factory.getVariableResolver(functionName).getValue();
+        return ptr instanceof FunctionInstance && ((FunctionInstance) ptr).getFunction() == function;
+    }
+
+    public String toString() {
+        return "TailCall:" + new String(expr, start, offset);
+    }
+}
@@ -66,6 +66,7 @@ public class TypedVarNode extends ASTNode implements Assignment {
                 throw new RuntimeException("statically-typed variable already defined in scope: " + name);
             }
             pCtx.addVariable(name, egressType, false);
+            pCtx.markAssigned(name);
         }
     }
 
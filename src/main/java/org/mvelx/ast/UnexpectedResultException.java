@@ -0,0 +1,19 @@
+package org.mvelx.ast;
+
+import lombok.Getter;
+
+/**
+ * 在以原始类型精确计算节点值(如executeInt)时,实际的计算结果不是期望的类型
+ * 此异常携带实际的计算结果,调用方可以继续使用此结果进行通用的处理,而不必重新计算节点
+ * 此异常只在类型守卫失败时产生,因此不记录相应的调用栈
+ */
+public class UnexpectedResultException extends Exception {
+    /** 实际的计算结果 */
+    @Getter
+    private final Object result;
+
+    public UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -21,9 +21,7 @@ package org.mvelx.ast;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.MapVariableResolverFactory;
-
-import java.util.HashMap;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.subCompileExpression;
@@ -52,6 +50,7 @@ public class UntilNode extends BlockNode {
 
         this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockOffset, pCtx);
 
+        recordFrameSize(pCtx);
         if(pCtx != null) {
             pCtx.popVariableScope();
         }
@@ -59,9 +58,13 @@ public class UntilNode extends BlockNode {
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //开启单独的循环解析作用域,按照与while相反的判断条件进行循环执行
-        VariableResolverFactory ctxFactory = new MapVariableResolverFactory(new HashMap(0), factory);
-        while(!(Boolean) condition.getValue(ctx, thisValue, factory)) {
-            compiledBlock.getValue(ctx, thisValue, ctxFactory);
+        ScopeFrameResolverFactory ctxFactory = acquireFrame(factory);
+        try{
+            while(!(Boolean) condition.getValue(ctx, thisValue, factory)) {
+                compiledBlock.getValue(ctx, thisValue, ctxFactory);
+            }
+        } finally {
+            ctxFactory.release();
         }
 
         //循环执行,无返回值
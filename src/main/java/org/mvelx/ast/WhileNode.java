@@ -21,9 +21,7 @@ package org.mvelx.ast;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.ExecutableStatement;
 import org.mvelx.integration.VariableResolverFactory;
-import org.mvelx.integration.impl.MapVariableResolverFactory;
-
-import java.util.HashMap;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
 
 import static org.mvelx.util.CompilerTools.expectType;
 import static org.mvelx.util.ParseTools.subCompileExpression;
@@ -41,6 +39,11 @@ public class WhileNode extends BlockNode {
 
     public WhileNode(char[] expr, int start, int offset, int blockStart, int blockEnd, int fields, ParserContext pCtx) {
         super(pCtx);
+        //条件以及执行块均会被重复执行,在其中处理循环不变量
+        if(pCtx != null) {
+            pCtx.pushLoopInvariantScope();
+        }
+
         //期望条件的执行结果为boolean
         expectType(pCtx, this.condition = (ExecutableStatement) subCompileExpression(expr, start, offset, pCtx),
                 Boolean.class, ((fields & COMPILE_IMMEDIATE) != 0));
@@ -52,21 +55,32 @@ public class WhileNode extends BlockNode {
         }
         this.compiledBlock = (ExecutableStatement) subCompileExpression(expr, blockStart, blockEnd, pCtx);
 
+        recordFrameSize(pCtx);
         if(pCtx != null) {
             pCtx.popVariableScope();
-
+            this.invariantScope = pCtx.popLoopInvariantScope();
         }
     }
 
     public Object getReducedValueAccelerated(Object ctx, Object thisValue, VariableResolverFactory factory) {
         //为执行作用域单独创建变量解析域,在整个处理完之后,即不会再使用
-        VariableResolverFactory ctxFactory = new MapVariableResolverFactory(new HashMap<String, Object>(), factory);
-        //标准的while执行过程
-        while((Boolean) condition.getValue(ctx, thisValue, factory)) {
-            compiledBlock.getValue(ctx, thisValue, ctxFactory);
+        VariableResolverFactory loopFactory = invariantFactory(factory);
+        ScopeFrameResolverFactory ctxFactory = acquireFrame(loopFactory);
+        try{
+            //标准的while执行过程
+            while((Boolean) condition.getValue(ctx, thisValue, loopFactory)) {
+                compiledBlock.getValue(ctx, thisValue, ctxFactory);
+            }
+        } finally {
+            ctxFactory.release();
         }
 
         //因为是循环语句,因此只影响过程,不影响相应的
         return null;
     }
+
+    /** while条件值 */
+    public ExecutableStatement getCondition() {
+        return condition;
+    }
 }
\ No newline at end of file
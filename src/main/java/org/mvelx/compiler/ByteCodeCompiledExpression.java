@@ -0,0 +1,74 @@
+package org.mvelx.compiler;
+
+import org.mvelx.CompileException;
+import org.mvelx.ScriptRuntimeException;
+import org.mvelx.ast.ASTNode;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.ScopeFrameResolverFactory;
+import org.mvelx.optimizers.OptimizerFactory;
+
+import static org.mvelx.Operator.CHOR;
+import static org.mvelx.math.MathProcessor.doOperations;
+import static org.mvelx.util.PropertyTools.isEmpty;
+
+/**
+ * 整体编译为字节码的编译表达式的父类，具体的子类由AsmExpressionCompiler在运行期生成
+ * 子类将整个节点链直接生成为executeCompiled中的代码，因此执行时不再通过MVELRuntime的执行栈逐节点处理
+ * 生成代码中无法直接表示的常量，节点以及内部语句则通过下标引用当前类中的数组
+ */
+public abstract class ByteCodeCompiledExpression extends CompiledExpression {
+    /** 生成代码中引用的常量值 */
+    protected final Object[] literals;
+    /** 生成代码中不能直接编译，需要回调原节点执行的节点 */
+    protected final ASTNode[] nodes;
+    /** 生成代码中引用的内部执行语句 */
+    protected final ExecutableStatement[] statements;
+
+    protected ByteCodeCompiledExpression(CompiledExpression source, Object[] literals, ASTNode[] nodes, ExecutableStatement[] statements) {
+        super(source);
+        this.literals = literals;
+        this.nodes = nodes;
+        this.statements = statements;
+    }
+
+    /** 直接调用生成的代码计算出相应的值 */
+    @Override
+    protected Object executeDirect(Object staticContext, VariableResolverFactory executionFactory) {
+        try{
+            return executeCompiled(staticContext, executionFactory);
+        } finally {
+            OptimizerFactory.clearThreadAccessorOptimizer();
+        }
+    }
+
+    /** 由生成的子类实现,即整个节点链编译之后的执行代码 */
+    protected abstract Object executeCompiled(Object ctx, VariableResolverFactory factory);
+
+    /** 将三元运算的条件值转换为boolean,与执行栈中的popBoolean处理相同 */
+    protected static boolean toBoolean(Object value) {
+        if(value instanceof Boolean) return (Boolean) value;
+        throw new ScriptRuntimeException("expected Boolean; but found: " + (value == null ? "null" : value.getClass().getName()));
+    }
+
+    /** 使用指定的操作符对2个操作数进行处理,与MVELRuntime中的reduce处理相同 */
+    protected static Object operate(Object left, int operator, Object right) {
+        if(operator == CHOR) {
+            return !isEmpty(left) ? left : !isEmpty(right) ? right : null;
+        }
+
+        try{
+            return doOperations(left, operator, right);
+        } catch(ClassCastException e) {
+            throw new CompileException("syntax error or incomptable types", new char[0], 0, e);
+        } catch(CompileException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new CompileException("failed to compileShared sub expression", new char[0], 0, e);
+        }
+    }
+
+    /** 为代码块创建新的变量作用域 */
+    protected static VariableResolverFactory blockFactory(VariableResolverFactory factory) {
+        return new ScopeFrameResolverFactory(factory);
+    }
+}
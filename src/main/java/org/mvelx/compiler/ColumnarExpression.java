@@ -0,0 +1,606 @@
+package org.mvelx.compiler;
+
+import org.mvelx.Operator;
+import org.mvelx.ast.*;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.mvelx.util.ParseTools;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按列批量计算的表达式,用于对以原始类型数组存储的列数据进行算术以及比较运算
+ * 表达式在创建时转换为列运算树,计算时每个运算节点对整列数据以原始类型循环计算一次,而不是对每一行执行一次节点树
+ * 只支持由列变量,数字以及boolean常量,四则运算,取模,比较,与或非以及括号组成的单个表达式
+ * 列数据可以为int[],long[],double[]以及boolean[],也可以直接传入数字作为每一行都相同的值
+ * 运算结果的类型与行计算时的特化运算一致,即不同类型之间运算时提升为较大的类型,除法的结果为double(整数除法节点除外)
+ * 与行计算一样,int运算溢出时整列提升为long;long运算溢出时(行计算的结果为BigInteger)整个表达式改为逐行计算
+ * boolean结果使用位图表示,第i行的结果为 (bitmap[i >>> 6] & (1L << i)) != 0
+ */
+public class ColumnarExpression implements Serializable {
+    private static final int INT = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private static final int BOOLEAN = 3;
+
+    /** 原编译表达式,按列计算溢出时用于逐行计算 */
+    private final CompiledExpression compiled;
+    /** 列运算树的根节点 */
+    private final Op root;
+    /** 表达式中引用的列名 */
+    private final Set<String> columnNames;
+
+    private ColumnarExpression(CompiledExpression compiled, Op root, Set<String> columnNames) {
+        this.compiled = compiled;
+        this.root = root;
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * 将编译表达式转换为按列计算的表达式
+     *
+     * @throws IllegalArgumentException 表达式中有不支持按列计算的语句或运算时
+     */
+    public static ColumnarExpression of(CompiledExpression compiled) {
+        ASTNode node = compiled.getFirstNode();
+        if(node == null || node.nextASTNode != null) {
+            throw new IllegalArgumentException("only a single expression can be evaluated by column");
+        }
+
+        Set<String> columnNames = new LinkedHashSet<>();
+        return new ColumnarExpression(compiled, build(node, columnNames), columnNames);
+    }
+
+    /** 将节点转换为相应的列运算 */
+    private static Op build(ASTNode node, Set<String> columnNames) {
+        if(node instanceof SharedValueNode) {
+            return build(((SharedValueNode) node).getNode(), columnNames);
+        }
+        if(node instanceof Substatement) {
+            return build(((Substatement) node).getStatement(), columnNames);
+        }
+        if(node instanceof Negation) {
+            return new NotOp(build(((Negation) node).getStatement(), columnNames));
+        }
+        if(node instanceof And || node instanceof Or) {
+            BooleanNode bool = (BooleanNode) node;
+            return new LogicOp(node instanceof And ? Operator.AND : Operator.OR, build(bool.getLeft(), columnNames), build(bool.getRight(), columnNames));
+        }
+        if(node instanceof BinaryOperation) {
+            BinaryOperation bo = (BinaryOperation) node;
+            Op left = build(bo.getLeft(), columnNames);
+            Op right = build(bo.getRight(), columnNames);
+            int operation = bo.getOperation();
+            if(operation <= Operator.MOD) {
+                return new ArithmeticOp(operation, bo instanceof IntDiv, left, right);
+            }
+            if(operation >= Operator.LTHAN && operation <= Operator.NEQUAL) {
+                return new ComparisonOp(operation, left, right);
+            }
+            if(operation == Operator.AND || operation == Operator.OR) {
+                return new LogicOp(operation, left, right);
+            }
+            throw new IllegalArgumentException("operation can not be evaluated by column: " + bo);
+        }
+
+        if(node.isLiteral()) {
+            Object value = node.getLiteralValue();
+            if(value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Boolean) {
+                return new ConstantOp(value);
+            }
+            throw new IllegalArgumentException("constant can not be evaluated by column: " + value);
+        }
+        if(node.getClass() == ASTNode.class && node.isIdentifier() && !ParseTools.isNotValidNameorLabel(node.getName())) {
+            columnNames.add(node.getName());
+            return new ColumnOp(node.getName());
+        }
+
+        throw new IllegalArgumentException("expression can not be evaluated by column: " + node.getName());
+    }
+
+    /** 将括号等子语句转换为相应的列运算 */
+    private static Op build(ExecutableStatement stmt, Set<String> columnNames) {
+        if(stmt instanceof ExecutableLiteral) {
+            return build(new LiteralNode(((ExecutableLiteral) stmt).getLiteral(), null), columnNames);
+        }
+        if(stmt instanceof ExecutableAccessor) {
+            return build(((ExecutableAccessor) stmt).getNode(), columnNames);
+        }
+        if(stmt instanceof CompiledExpression) {
+            ASTNode node = ((CompiledExpression) stmt).getFirstNode();
+            if(node != null && node.nextASTNode == null) {
+                return build(node, columnNames);
+            }
+        }
+        throw new IllegalArgumentException("statement can not be evaluated by column: " + stmt);
+    }
+
+    /**
+     * 按列计算表达式
+     *
+     * @param columns 列名及相应的列数据,列数据的长度需要相同
+     * @return 数字结果为int[],long[]或double[],boolean结果为boolean[],long运算溢出而逐行计算时为各行结果组成的Object[]
+     */
+    public Object evaluate(Map<String, ?> columns) {
+        int rows = rows(columns);
+        Vector result;
+        try{
+            result = root.eval(columns, rows);
+        } catch(LongOverflowException e) {
+            return evaluateByRow(columns, rows);
+        }
+        if(result.type != BOOLEAN) {
+            return result.values;
+        }
+
+        long[] bitmap = (long[]) result.values;
+        boolean[] values = new boolean[result.rows];
+        for(int i = 0; i < values.length; i++) {
+            values[i] = (bitmap[i >>> 6] & (1L << i)) != 0;
+        }
+        return values;
+    }
+
+    /**
+     * 按列计算boolean表达式,返回满足条件的行的位图
+     *
+     * @param columns 列名及相应的列数据,列数据的长度需要相同
+     */
+    public long[] select(Map<String, ?> columns) {
+        int rows = rows(columns);
+        Vector result;
+        try{
+            result = root.eval(columns, rows);
+        } catch(LongOverflowException e) {
+            Object[] values = evaluateByRow(columns, rows);
+            long[] bitmap = new long[words(rows)];
+            for(int i = 0; i < rows; i++) {
+                if(!(values[i] instanceof Boolean)) {
+                    throw new IllegalArgumentException("expression is not a boolean expression");
+                }
+                if((Boolean) values[i]) bitmap[i >>> 6] |= 1L << i;
+            }
+            return bitmap;
+        }
+        if(result.type != BOOLEAN) {
+            throw new IllegalArgumentException("expression is not a boolean expression");
+        }
+        return (long[]) result.values;
+    }
+
+    /** 逐行执行原表达式,用于long运算溢出,结果不能以原始类型数组表示的情况 */
+    private Object[] evaluateByRow(Map<String, ?> columns, int rows) {
+        Object[] values = new Object[rows];
+        for(int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            for(String name : columnNames) {
+                Object column = columns.get(name);
+                row.put(name, column.getClass().isArray() ? Array.get(column, i) : column);
+            }
+            values[i] = compiled.getValue(null, new MapVariableResolverFactory(row));
+        }
+        return values;
+    }
+
+    /** 根据表达式中引用的列数据确定行数,各列的行数需要相同 */
+    private int rows(Map<String, ?> columns) {
+        int rows = -1;
+        for(String name : columnNames) {
+            Object column = columns.get(name);
+            if(column == null) {
+                throw new IllegalArgumentException("column not found: " + name);
+            }
+            if(column.getClass().isArray()) {
+                int length = Array.getLength(column);
+                if(rows != -1 && rows != length) {
+                    throw new IllegalArgumentException("column length mismatch: " + name + " has " + length + " rows, expected " + rows);
+                }
+                rows = length;
+            }
+        }
+        if(rows == -1) {
+            throw new IllegalArgumentException("no column array to evaluate");
+        }
+        return rows;
+    }
+
+    /** 一列计算结果 */
+    private static class Vector {
+        /** 结果类型 */
+        private final int type;
+        /** 结果数组,boolean结果为位图 */
+        private final Object values;
+        /** 行数 */
+        private final int rows;
+
+        private Vector(int type, Object values, int rows) {
+            this.type = type;
+            this.values = values;
+            this.rows = rows;
+        }
+
+        int[] toInt() {
+            if(type == INT) return (int[]) values;
+            throw new IllegalArgumentException("expected int column but found: " + typeName(type));
+        }
+
+        long[] toLong() {
+            if(type == LONG) return (long[]) values;
+            int[] ints = toInt();
+            long[] result = new long[rows];
+            for(int i = 0; i < rows; i++) result[i] = ints[i];
+            return result;
+        }
+
+        double[] toDouble() {
+            if(type == DOUBLE) return (double[]) values;
+            long[] longs = type == INT ? null : toLong();
+            int[] ints = type == INT ? (int[]) values : null;
+            double[] result = new double[rows];
+            for(int i = 0; i < rows; i++) result[i] = ints != null ? ints[i] : longs[i];
+            return result;
+        }
+
+        long[] toBitmap() {
+            if(type == BOOLEAN) return (long[]) values;
+            throw new IllegalArgumentException("expected boolean column but found: " + typeName(type));
+        }
+
+        private static String typeName(int type) {
+            switch(type) {
+                case INT:
+                    return "int";
+                case LONG:
+                    return "long";
+                case DOUBLE:
+                    return "double";
+                default:
+                    return "boolean";
+            }
+        }
+    }
+
+    /** 列运算 */
+    private interface Op extends Serializable {
+        Vector eval(Map<String, ?> columns, int rows);
+    }
+
+    /** 读取列数据,传入的值不为数组时作为每一行都相同的值 */
+    private static class ColumnOp implements Op {
+        private final String name;
+
+        private ColumnOp(String name) {
+            this.name = name;
+        }
+
+        public Vector eval(Map<String, ?> columns, int rows) {
+            Object column = columns.get(name);
+            if(column instanceof int[]) return new Vector(INT, column, rows);
+            if(column instanceof long[]) return new Vector(LONG, column, rows);
+            if(column instanceof double[]) return new Vector(DOUBLE, column, rows);
+            if(column instanceof boolean[]) {
+                boolean[] values = (boolean[]) column;
+                long[] bitmap = new long[words(rows)];
+                for(int i = 0; i < rows; i++) {
+                    if(values[i]) bitmap[i >>> 6] |= 1L << i;
+                }
+                return new Vector(BOOLEAN, bitmap, rows);
+            }
+            if(column instanceof Integer || column instanceof Long || column instanceof Double || column instanceof Boolean) {
+                return ConstantOp.fill(column, rows);
+            }
+            throw new IllegalArgumentException("unsupported column type: " + name + " = " + (column == null ? null : column.getClass().getName()));
+        }
+    }
+
+    /** 常量,计算时扩展为整列相同的值 */
+    private static class ConstantOp implements Op {
+        private final Object value;
+
+        private ConstantOp(Object value) {
+            this.value = value;
+        }
+
+        public Vector eval(Map<String, ?> columns, int rows) {
+            return fill(value, rows);
+        }
+
+        static Vector fill(Object value, int rows) {
+            if(value instanceof Integer) {
+                int[] values = new int[rows];
+                Arrays.fill(values, (Integer) value);
+                return new Vector(INT, values, rows);
+            }
+            if(value instanceof Long) {
+                long[] values = new long[rows];
+                Arrays.fill(values, (Long) value);
+                return new Vector(LONG, values, rows);
+            }
+            if(value instanceof Double) {
+                double[] values = new double[rows];
+                Arrays.fill(values, (Double) value);
+                return new Vector(DOUBLE, values, rows);
+            }
+
+            long[] bitmap = new long[words(rows)];
+            if((Boolean) value) {
+                Arrays.fill(bitmap, -1L);
+                clearTail(bitmap, rows);
+            }
+            return new Vector(BOOLEAN, bitmap, rows);
+        }
+    }
+
+    /** 四则运算以及取模,结果类型为两边中较大的类型,除法结果为double */
+    private static class ArithmeticOp implements Op {
+        private final int operation;
+        /** 是否是整数除法节点,即两边均为int时结果仍为int */
+        private final boolean intDivision;
+        private final Op left;
+        private final Op right;
+
+        private ArithmeticOp(int operation, boolean intDivision, Op left, Op right) {
+            this.operation = operation;
+            this.intDivision = intDivision;
+            this.left = left;
+            this.right = right;
+        }
+
+        public Vector eval(Map<String, ?> columns, int rows) {
+            Vector l = left.eval(columns, rows);
+            Vector r = right.eval(columns, rows);
+            int type = intDivision ? INT : operation == Operator.DIV ? DOUBLE : Math.max(l.type, r.type);
+            switch(type) {
+                case INT:
+                    int[] values = intArithmetic(l.toInt(), operation, r.toInt(), rows);
+                    if(values != null) {
+                        return new Vector(INT, values, rows);
+                    }
+                    //int溢出,整列提升为long重新计算
+                case LONG:
+                    return new Vector(LONG, longArithmetic(l.toLong(), operation, r.toLong(), rows), rows);
+                case DOUBLE:
+                    return new Vector(DOUBLE, doubleArithmetic(l.toDouble(), operation, r.toDouble(), rows), rows);
+                default:
+                    throw new IllegalArgumentException("arithmetic operation on boolean column");
+            }
+        }
+    }
+
+    /** 比较运算,两边提升为相同的类型之后进行比较,结果为位图 */
+    private static class ComparisonOp implements Op {
+        private final int operation;
+        private final Op left;
+        private final Op right;
+
+        private ComparisonOp(int operation, Op left, Op right) {
+            this.operation = operation;
+            this.left = left;
+            this.right = right;
+        }
+
+        public Vector eval(Map<String, ?> columns, int rows) {
+            Vector l = left.eval(columns, rows);
+            Vector r = right.eval(columns, rows);
+            int type = Math.max(l.type, r.type);
+            if(type == BOOLEAN) {
+                throw new IllegalArgumentException("comparison on boolean column");
+            }
+            long[] bitmap = type == DOUBLE ? doubleComparison(l.toDouble(), operation, r.toDouble(), rows)
+                    : longComparison(l.toLong(), operation, r.toLong(), rows);
+            return new Vector(BOOLEAN, bitmap, rows);
+        }
+    }
+
+    /** 与或运算,直接对位图按字计算 */
+    private static class LogicOp implements Op {
+        private final int operation;
+        private final Op left;
+        private final Op right;
+
+        private LogicOp(int operation, Op left, Op right) {
+            this.operation = operation;
+            this.left = left;
+            this.right = right;
+        }
+
+        public Vector eval(Map<String, ?> columns, int rows) {
+            long[] l = left.eval(columns, rows).toBitmap();
+            long[] r = right.eval(columns, rows).toBitmap();
+            long[] bitmap = new long[l.length];
+            if(operation == Operator.AND) {
+                for(int i = 0; i < bitmap.length; i++) bitmap[i] = l[i] & r[i];
+            } else {
+                for(int i = 0; i < bitmap.length; i++) bitmap[i] = l[i] | r[i];
+            }
+            return new Vector(BOOLEAN, bitmap, rows);
+        }
+    }
+
+    /** 取反运算 */
+    private static class NotOp implements Op {
+        private final Op child;
+
+        private NotOp(Op child) {
+            this.child = child;
+        }
+
+        public Vector eval(Map<String, ?> columns, int rows) {
+            long[] values = child.eval(columns, rows).toBitmap();
+            long[] bitmap = new long[values.length];
+            for(int i = 0; i < bitmap.length; i++) bitmap[i] = ~values[i];
+            clearTail(bitmap, rows);
+            return new Vector(BOOLEAN, bitmap, rows);
+        }
+    }
+
+    /** long列运算溢出,此时结果不能以long表示,需要逐行计算 */
+    private static class LongOverflowException extends ArithmeticException {
+        private LongOverflowException() {
+            super("long overflow");
+        }
+    }
+
+    /** 位图所需要的字数 */
+    private static int words(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    /** 清除位图中超出行数的位 */
+    private static void clearTail(long[] bitmap, int rows) {
+        if((rows & 63) != 0) {
+            bitmap[bitmap.length - 1] &= (1L << rows) - 1;
+        }
+    }
+
+    /** int列运算,加减乘以及整数除法溢出时返回null,由调用方提升为long计算 */
+    private static int[] intArithmetic(int[] l, int operation, int[] r, int rows) {
+        int[] result = new int[rows];
+        try{
+            switch(operation) {
+                case Operator.ADD:
+                    for(int i = 0; i < rows; i++) result[i] = Math.addExact(l[i], r[i]);
+                    return result;
+                case Operator.SUB:
+                    for(int i = 0; i < rows; i++) result[i] = Math.subtractExact(l[i], r[i]);
+                    return result;
+                case Operator.MULT:
+                    for(int i = 0; i < rows; i++) result[i] = Math.multiplyExact(l[i], r[i]);
+                    return result;
+            }
+        } catch(ArithmeticException e) {
+            return null;
+        }
+
+        switch(operation) {
+            case Operator.DIV:
+                for(int i = 0; i < rows; i++) {
+                    if(l[i] == Integer.MIN_VALUE && r[i] == -1) return null;
+                    result[i] = l[i] / r[i];
+                }
+                break;
+            case Operator.MOD:
+                for(int i = 0; i < rows; i++) result[i] = l[i] % r[i];
+                break;
+            default:
+                throw new IllegalStateException("unsupported column operation: " + operation);
+        }
+        return result;
+    }
+
+    /** long列运算,加减乘溢出时抛出LongOverflowException,由调用方改为逐行计算 */
+    private static long[] longArithmetic(long[] l, int operation, long[] r, int rows) {
+        long[] result = new long[rows];
+        try{
+            switch(operation) {
+                case Operator.ADD:
+                    for(int i = 0; i < rows; i++) result[i] = Math.addExact(l[i], r[i]);
+                    return result;
+                case Operator.SUB:
+                    for(int i = 0; i < rows; i++) result[i] = Math.subtractExact(l[i], r[i]);
+                    return result;
+                case Operator.MULT:
+                    for(int i = 0; i < rows; i++) result[i] = Math.multiplyExact(l[i], r[i]);
+                    return result;
+            }
+        } catch(ArithmeticException e) {
+            throw new LongOverflowException();
+        }
+
+        switch(operation) {
+            case Operator.DIV:
+                //只用于int整数除法溢出之后的重新计算
+                for(int i = 0; i < rows; i++) result[i] = l[i] / r[i];
+                break;
+            case Operator.MOD:
+                for(int i = 0; i < rows; i++) result[i] = l[i] % r[i];
+                break;
+            default:
+                throw new IllegalStateException("unsupported column operation: " + operation);
+        }
+        return result;
+    }
+
+    private static strictfp double[] doubleArithmetic(double[] l, int operation, double[] r, int rows) {
+        double[] result = new double[rows];
+        switch(operation) {
+            case Operator.ADD:
+                for(int i = 0; i < rows; i++) result[i] = l[i] + r[i];
+                break;
+            case Operator.SUB:
+                for(int i = 0; i < rows; i++) result[i] = l[i] - r[i];
+                break;
+            case Operator.MULT:
+                for(int i = 0; i < rows; i++) result[i] = l[i] * r[i];
+                break;
+            case Operator.DIV:
+                for(int i = 0; i < rows; i++) result[i] = l[i] / r[i];
+                break;
+            case Operator.MOD:
+                for(int i = 0; i < rows; i++) result[i] = l[i] % r[i];
+                break;
+            default:
+                throw new IllegalStateException("unsupported column operation: " + operation);
+        }
+        return result;
+    }
+
+    private static long[] longComparison(long[] l, int operation, long[] r, int rows) {
+        long[] bitmap = new long[words(rows)];
+        switch(operation) {
+            case Operator.EQUAL:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] == r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.NEQUAL:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] != r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.GTHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] > r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.GETHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] >= r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.LTHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] < r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.LETHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] <= r[i] ? 1L : 0L) << i;
+                break;
+            default:
+                throw new IllegalStateException("unsupported column operation: " + operation);
+        }
+        return bitmap;
+    }
+
+    private static long[] doubleComparison(double[] l, int operation, double[] r, int rows) {
+        long[] bitmap = new long[words(rows)];
+        switch(operation) {
+            case Operator.EQUAL:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] == r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.NEQUAL:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] != r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.GTHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] > r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.GETHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] >= r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.LTHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] < r[i] ? 1L : 0L) << i;
+                break;
+            case Operator.LETHAN:
+                for(int i = 0; i < rows; i++) bitmap[i >>> 6] |= (l[i] <= r[i] ? 1L : 0L) << i;
+                break;
+            default:
+                throw new IllegalStateException("unsupported column operation: " + operation);
+        }
+        return bitmap;
+    }
+}
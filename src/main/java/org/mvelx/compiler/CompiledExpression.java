@@ -1,5 +1,6 @@
 package org.mvelx.compiler;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.mvelx.ParserConfiguration;
@@ -7,10 +8,17 @@ import org.mvelx.ast.ASTNode;
 import org.mvelx.ast.TypeCast;
 import org.mvelx.integration.VariableResolverFactory;
 import org.mvelx.integration.impl.ClassImportResolverFactory;
+import org.mvelx.integration.impl.ScriptFrameResolverFactory;
+import org.mvelx.integration.impl.SharedValueResolverFactory;
 import org.mvelx.integration.impl.StackResetResolverFactory;
+import org.mvelx.optimizers.OptimizerFactory;
 import org.mvelx.util.ASTLinkedList;
+import org.mvelx.util.PrimitiveTools;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 import static org.mvelx.MVELRuntime.execute;
 
@@ -22,8 +30,9 @@ import static org.mvelx.MVELRuntime.execute;
 public class CompiledExpression implements Serializable, ExecutableStatement {
     /** 原始表达式 */
     private String expr;
-    /** 当前表达式第一个节点(剩下的信息通过第1个节点来调用) */
+    /** 当前表达式第一个节点(剩下的信息通过第1个节点来调用),在多个表达式之间进行优化时(如规则集)可被替换 */
     @Getter
+    @Setter(AccessLevel.PACKAGE)
     private ASTNode firstNode;
 
     /** 声明的出参类型 */
@@ -48,6 +57,16 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
     @Getter
     private ParserConfiguration parserConfiguration;
 
+    /** 公共子表达式的共享范围,没有公共子表达式时为null */
+    @Getter
+    @Setter
+    private SharedValueScope sharedValueScope;
+
+    /** 编译期为脚本变量分配的下标对应的变量名,未按下标解析时为null */
+    @Getter
+    @Setter
+    private String[] slotNames;
+
     public CompiledExpression(String expr, ASTLinkedList astMap, Class egressType, ParserConfiguration parserConfiguration, boolean literalOnly) {
         this.expr = expr;
         this.firstNode = astMap.firstNode();
@@ -57,6 +76,20 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
         this.importInjectionRequired = parserConfiguration.getImports() != null && !parserConfiguration.getImports().isEmpty();
     }
 
+    /** 复制另一个编译表达式的信息,用于在原表达式的基础上生成新的执行方式(如字节码编译) */
+    protected CompiledExpression(CompiledExpression source) {
+        this.expr = source.expr;
+        this.firstNode = source.firstNode;
+        this.knownEgressType = source.knownEgressType;
+        this.knownIngressType = source.knownIngressType;
+        this.convertableIngressEgress = source.convertableIngressEgress;
+        this.importInjectionRequired = source.importInjectionRequired;
+        this.literalOnly = source.literalOnly;
+        this.parserConfiguration = source.parserConfiguration;
+        this.sharedValueScope = source.sharedValueScope;
+        this.slotNames = source.slotNames;
+    }
+
     /** 解析此表达式是否仅有单个节点 */
     public boolean isSingleNode() {
         return firstNode != null && firstNode.nextASTNode == null;
@@ -82,8 +115,134 @@ public class CompiledExpression implements Serializable, ExecutableStatement {
 
     /** 调用计算程序最终计算出相应的值 */
     public Object getDirectValue(Object staticContext, VariableResolverFactory factory) {
-        return execute(false, this, staticContext,
-                importInjectionRequired ? new ClassImportResolverFactory(parserConfiguration, factory, true) : new StackResetResolverFactory(factory));
+        return executeDirect(staticContext, executionFactory(factory));
+    }
+
+    /**
+     * 按顺序传入参数值进行计算,参数值依次作为编译期最前面下标的变量值,仅用于变量按下标解析的表达式
+     *
+     * @see org.mvelx.MVEL#prepare(String, String[], Class[])
+     */
+    public Object getIndexedValue(Object staticContext, VariableResolverFactory factory, Object[] parameters) {
+        if(slotNames == null || parameters.length > slotNames.length) {
+            throw new IllegalStateException("expression is not compiled with indexed parameters: " + expr);
+        }
+        return executeDirect(staticContext, executionFactory(factory, parameters));
+    }
+
+    /**
+     * 使用同一个变量工厂对多个上下文对象批量执行,结果按顺序写入results中
+     * 执行时使用的变量工厂(包括执行帧以及共享值存储)在整批执行中复用,每次执行前仅重置相应的执行状态
+     */
+    public void getValues(List<?> contexts, VariableResolverFactory factory, Object[] results) {
+        if(results.length < contexts.size()) {
+            throw new IllegalArgumentException("results is too small: " + results.length + " < " + contexts.size());
+        }
+        executeBatch(contexts, factory, (value, i) -> results[i] = value);
+    }
+
+    /** 使用同一个变量工厂对多个上下文对象批量执行,返回结果为true的上下文对象 */
+    public <T> List<T> filter(List<T> contexts, VariableResolverFactory factory) {
+        List<T> matched = new ArrayList<>();
+        executeBatch(contexts, factory, (value, i) -> {
+            if(PrimitiveTools.toBoolean(value)) matched.add(contexts.get(i));
+        });
+        return matched;
+    }
+
+    /** 批量执行,依次将每个上下文对象的结果及相应的下标交由consumer处理 */
+    private void executeBatch(List<?> contexts, VariableResolverFactory factory, ObjIntConsumer<Object> consumer) {
+        VariableResolverFactory executionFactory = null;
+        for(int i = 0, size = contexts.size(); i < size; i++) {
+            //执行帧在执行之后仍被引用时(如延迟投影),后续的执行使用新的执行帧
+            if(executionFactory == null || !resetExecutionFactory(executionFactory)) {
+                executionFactory = executionFactory(factory);
+            }
+            consumer.accept(executeDirect(contexts.get(i), executionFactory), i);
+        }
+    }
+
+    /** 重置执行时变量工厂的执行状态,不能复用时返回false */
+    private static boolean resetExecutionFactory(VariableResolverFactory factory) {
+        if(factory instanceof SharedValueResolverFactory) {
+            if(!((SharedValueResolverFactory) factory).reset()) return false;
+            factory = ((SharedValueResolverFactory) factory).getDelegate();
+        }
+        if(factory instanceof ScriptFrameResolverFactory) {
+            if(!((ScriptFrameResolverFactory) factory).reset()) return false;
+            factory = factory.getNextFactory();
+        }
+
+        //重置工厂只在委托工厂未终止时才设置标记,因此直接重置委托工厂
+        if(factory instanceof StackResetResolverFactory) {
+            factory = ((StackResetResolverFactory) factory).getDelegate();
+        }
+        factory.setTiltFlag(false);
+        return true;
+    }
+
+    /** 使用已创建好的执行时变量工厂进行计算 */
+    protected Object executeDirect(Object staticContext, VariableResolverFactory executionFactory) {
+        return execute(false, this, staticContext, executionFactory);
+    }
+
+    /** 以boolean的方式取值,单节点的表达式直接由节点以原始类型计算,以避免中间结果的装箱 */
+    @Override
+    public boolean evalBoolean(Object staticContext, VariableResolverFactory factory) {
+        if(!isSingleNode()) {
+            return ExecutableStatement.super.evalBoolean(staticContext, factory);
+        }
+
+        try{
+            return firstNode.evalBoolean(staticContext, staticContext, executionFactory(factory));
+        } finally {
+            OptimizerFactory.clearThreadAccessorOptimizer();
+        }
+    }
+
+    /** 以long的方式取值,单节点的表达式直接由节点以原始类型计算 */
+    @Override
+    public long evalLong(Object staticContext, VariableResolverFactory factory) {
+        if(!isSingleNode()) {
+            return ExecutableStatement.super.evalLong(staticContext, factory);
+        }
+
+        try{
+            return firstNode.evalLong(staticContext, staticContext, executionFactory(factory));
+        } finally {
+            OptimizerFactory.clearThreadAccessorOptimizer();
+        }
+    }
+
+    /** 以double的方式取值,单节点的表达式直接由节点以原始类型计算 */
+    @Override
+    public double evalDouble(Object staticContext, VariableResolverFactory factory) {
+        if(!isSingleNode()) {
+            return ExecutableStatement.super.evalDouble(staticContext, factory);
+        }
+
+        try{
+            return firstNode.evalDouble(staticContext, staticContext, executionFactory(factory));
+        } finally {
+            OptimizerFactory.clearThreadAccessorOptimizer();
+        }
+    }
+
+    /** 根据是否有外部导入,创建出执行时实际使用的变量工厂 */
+    public VariableResolverFactory executionFactory(VariableResolverFactory factory) {
+        return executionFactory(factory, null);
+    }
+
+    /** 创建执行时实际使用的变量工厂,parameters不为null时依次作为最前面下标的变量值 */
+    private VariableResolverFactory executionFactory(VariableResolverFactory factory, Object[] parameters) {
+        VariableResolverFactory executionFactory = importInjectionRequired ? new ClassImportResolverFactory(parserConfiguration, factory, true) : new StackResetResolverFactory(factory);
+        //变量按下标解析时,为当次执行创建相应的变量帧
+        if(slotNames != null) {
+            executionFactory = parameters == null ? new ScriptFrameResolverFactory(slotNames, executionFactory)
+                    : new ScriptFrameResolverFactory(slotNames, executionFactory, parameters);
+        }
+        //存在公共子表达式时,为当次执行准备相应的共享存储
+        return sharedValueScope != null ? new SharedValueResolverFactory(sharedValueScope, executionFactory) : executionFactory;
     }
 
     /** 当前表达式不是整数优化的 */
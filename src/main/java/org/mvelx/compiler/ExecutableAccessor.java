@@ -52,6 +52,21 @@ public class ExecutableAccessor implements ExecutableStatement {
         return node.getReducedValueAccelerated(staticContext, staticContext, factory);
     }
 
+    @Override
+    public boolean evalBoolean(Object staticContext, VariableResolverFactory factory) {
+        return node.evalBoolean(staticContext, staticContext, factory);
+    }
+
+    @Override
+    public long evalLong(Object staticContext, VariableResolverFactory factory) {
+        return node.evalLong(staticContext, staticContext, factory);
+    }
+
+    @Override
+    public double evalDouble(Object staticContext, VariableResolverFactory factory) {
+        return node.evalDouble(staticContext, staticContext, factory);
+    }
+
     public void setKnownIngressType(Class type) {
         this.ingress = type;
     }
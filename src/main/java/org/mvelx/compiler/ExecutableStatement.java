@@ -19,6 +19,7 @@
 package org.mvelx.compiler;
 
 import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.util.PrimitiveTools;
 
 import java.io.Serializable;
 
@@ -27,6 +28,21 @@ public interface ExecutableStatement extends Accessor, Serializable, Cloneable {
     /** 取值操作，不带elContext的版本 */
     Object getValue(Object staticContext, VariableResolverFactory factory);
 
+    /** 以boolean的方式取值,结果必须为boolean.支持原始类型运算的实现可以重写此方法以避免结果的装箱 */
+    default boolean evalBoolean(Object staticContext, VariableResolverFactory factory) {
+        return PrimitiveTools.toBoolean(getValue(staticContext, factory));
+    }
+
+    /** 以long的方式取值,数字结果将转换为long */
+    default long evalLong(Object staticContext, VariableResolverFactory factory) {
+        return PrimitiveTools.toLong(getValue(staticContext, factory));
+    }
+
+    /** 以double的方式取值,数字结果将转换为double */
+    default double evalDouble(Object staticContext, VariableResolverFactory factory) {
+        return PrimitiveTools.toDouble(getValue(staticContext, factory));
+    }
+
     /** 设置相应的入参类型(这里的入参也不一定是真实的入参，也可能是当前的结果的处理结果类型 */
     void setKnownIngressType(Class type);
 
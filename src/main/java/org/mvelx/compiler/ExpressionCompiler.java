@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.mvelx.*;
 import org.mvelx.ast.*;
+import org.mvelx.optimizers.impl.asm.AsmExpressionCompiler;
 import org.mvelx.util.*;
 
 import java.util.Iterator;
@@ -15,7 +16,11 @@ import static org.mvelx.DataConversion.convert;
 import static org.mvelx.Operator.PTABLE;
 import static org.mvelx.ast.ASTNode.COMPILE_IMMEDIATE;
 import static org.mvelx.ast.ASTNode.OPT_SUBTR;
+import static org.mvelx.util.CompilerTools.bindSchema;
+import static org.mvelx.util.CompilerTools.eliminateCommonSubexpressions;
 import static org.mvelx.util.CompilerTools.finalizePayload;
+import static org.mvelx.util.CompilerTools.hoistLoopInvariants;
+import static org.mvelx.util.CompilerTools.inlineFunctions;
 import static org.mvelx.util.CompilerTools.signNumber;
 import static org.mvelx.util.ParseTools.subCompileExpression;
 import static org.mvelx.util.ParseTools.unboxPrimitive;
@@ -64,7 +69,13 @@ public class ExpressionCompiler extends AbstractParser {
     /** 主要的编译操作，返回编译表达式 */
     public CompiledExpression compile() {
         try{
-            return _compile();
+            CompiledExpression compiled = !verifyOnly && pCtx.isSlotResolution() && !pCtx.isIndexAllocation() && !pCtx.isFunctionContext() ? compileSlots() : _compile();
+            //按声明的入参类型在编译期生成属性访问器
+            if(compiled != null && pCtx.isSchemaBinding()) {
+                bindSchema(compiled, pCtx);
+            }
+            //开启整体字节码编译时，将编译结果进一步生成为字节码类
+            return pCtx.getParserConfiguration().isByteCodeCompile() ? AsmExpressionCompiler.compile(compiled) : compiled;
         } finally {
             //如果有严重的编译错误，报相应的异常
             //当前很少会有严重错误，因此一般情况下都不会走到这里来，而是直接throw出相应的异常
@@ -94,6 +105,30 @@ public class ExpressionCompiler extends AbstractParser {
 
     }
 
+    /**
+     * 为脚本中的全部变量分配下标进行编译,与函数体的编译方式相同
+     * 先进行一次编译以得到脚本中的全部变量(包括外部输入的变量),再将这些变量作为下标变量重新编译
+     */
+    private CompiledExpression compileSlots() {
+        ExpressionCompiler compiler = new ExpressionCompiler(expr, pCtx);
+        compiler.start = start;
+        compiler.end = end;
+        compiler.length = length;
+        compiler._compile();
+
+        pCtx.addIndexedInputs(pCtx.getInputs().keySet());
+        pCtx.addIndexedInputs(pCtx.getVariables().keySet());
+
+        pCtx.setIndexAllocation(true);
+        try{
+            CompiledExpression compiled = _compile();
+            compiled.setSlotNames(pCtx.getIndexedVarNames());
+            return compiled;
+        } finally {
+            pCtx.setIndexAllocation(false);
+        }
+    }
+
     /**
      * 进行实际的编译操作
      * 在整个过程中stk栈作为常量处理栈，辅助进行节点链的创建
@@ -306,7 +341,29 @@ public class ExpressionCompiler extends AbstractParser {
 
             //如果并不仅仅是验证,还需要进一步优化，因此进行相应的优化操作
             if(!verifyOnly) {
-                return new CompiledExpression(new String(expr, start, length), finalizePayload(astBuild, secondPassOptimization, pCtx), returnType, pCtx.getParserConfiguration(), literalOnly == 1);
+                ASTLinkedList optimizedAst = finalizePayload(astBuild, secondPassOptimization, pCtx);
+
+                //小函数内联,调用处直接替换为函数体
+                if(pCtx.getParserConfiguration().getFunctionInlineThreshold() > 0 && !pCtx.getFunctions().isEmpty()) {
+                    optimizedAst = inlineFunctions(optimizedAst, pCtx);
+                }
+
+                //公共子表达式消除,重复出现的无副作用访问在每次执行中只计算一次
+                SharedValueScope sharedValueScope = new SharedValueScope();
+                if(pCtx.isCommonSubexpressionElimination()) {
+                    optimizedAst = eliminateCommonSubexpressions(optimizedAst, sharedValueScope, pCtx);
+                }
+
+                //循环中的不变量外提,在循环编译完毕之后才能确定最终哪些访问在循环中不变
+                if(pCtx.isLoopInvariantHoistingActive()) {
+                    optimizedAst = hoistLoopInvariants(optimizedAst, pCtx.getLoopInvariantScope(), pCtx);
+                }
+
+                CompiledExpression compiled = new CompiledExpression(new String(expr, start, length), optimizedAst, returnType, pCtx.getParserConfiguration(), literalOnly == 1);
+                if(sharedValueScope.getSize() > 0) {
+                    compiled.setSharedValueScope(sharedValueScope);
+                }
+                return compiled;
             }
             //仅验证，因此这里分析出相应的返回类型，直接返回null
             else {
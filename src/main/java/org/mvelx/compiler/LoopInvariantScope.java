@@ -0,0 +1,62 @@
+package org.mvelx.compiler;
+
+import lombok.Getter;
+import org.mvelx.ast.SharedValueNode;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 描述一个循环中不变量的共享范围
+ * 编译循环条件以及循环体时,无副作用的访问先被替换为共享值节点并登记在此范围中,
+ * 整个循环编译完毕之后再根据循环中被赋值的变量去掉依赖这些变量的节点,余下的节点在一次循环执行中只计算一次
+ */
+public class LoopInvariantScope extends SharedValueScope {
+    /** 表示可能修改任意变量的操作,如非无副作用的方法调用 */
+    public static final String ANY_VARIABLE = "*";
+    /** 表示可能修改任意对象属性的操作,如属性或下标的写入,所有的属性访问节点均依赖于此 */
+    public static final String ANY_PROPERTY = "*.";
+
+    /** 外层循环的范围,当前循环编译完毕之后恢复 */
+    @Getter
+    private final transient LoopInvariantScope parent;
+    /** 开始编译当前循环时赋值记录的位置 */
+    @Getter
+    private final transient int mark;
+
+    /** 登记的共享值节点以及各节点所依赖的根变量 */
+    private transient Map<SharedValueNode, Set<String>> candidates = new IdentityHashMap<>();
+
+    public LoopInvariantScope(LoopInvariantScope parent, int mark) {
+        this.parent = parent;
+        this.mark = mark;
+    }
+
+    /** 登记一个可能的不变量节点 */
+    public void addCandidate(SharedValueNode node, Set<String> roots) {
+        candidates.put(node, roots);
+    }
+
+    /**
+     * 根据循环中被赋值的变量确定最终的不变量,依赖被赋值变量的节点不再共享
+     *
+     * @return 是否还有不变量
+     */
+    public boolean resolve(Collection<String> assigned) {
+        boolean anyVariable = assigned.contains(ANY_VARIABLE);
+        boolean shared = false;
+        for(Map.Entry<SharedValueNode, Set<String>> entry : candidates.entrySet()) {
+            if(anyVariable || !Collections.disjoint(entry.getValue(), assigned)) {
+                entry.getKey().setShared(false);
+            } else {
+                shared = true;
+            }
+        }
+
+        candidates = null;
+        return shared;
+    }
+}
@@ -0,0 +1,72 @@
+package org.mvelx.compiler;
+
+import lombok.Getter;
+import org.mvelx.integration.impl.ImmutableDefaultFactory;
+
+import java.io.Serializable;
+
+import static org.mvelx.DataConversion.convert;
+
+/**
+ * 按位置传参的预编译表达式,参数在编译期即分配好下标
+ * 执行时参数值按顺序直接放入相应下标的变量帧中,不再需要按变量名查找变量,也不需要每次执行时创建map
+ *
+ * @see org.mvelx.MVEL#prepare(String, String[], Class[])
+ */
+@Getter
+public class PreparedExpression implements Serializable {
+    /**
+     * 全部执行共用的外部变量工厂,参数均在每次执行单独的变量帧中,不会向此工厂写入变量
+     * return时的退出标记同样由变量帧自己记录,因此可以在多次以及多线程的执行中共用
+     */
+    private static final ImmutableDefaultFactory FACTORY = new ImmutableDefaultFactory();
+
+    /** 按顺序的参数名 */
+    private final String[] parameterNames;
+    /** 按顺序的参数类型,为null表示不进行类型转换 */
+    private final Class[] parameterTypes;
+    /** 编译好的表达式 */
+    private final CompiledExpression compiledExpression;
+
+    public PreparedExpression(String[] parameterNames, Class[] parameterTypes, CompiledExpression compiledExpression) {
+        this.parameterNames = parameterNames;
+        this.parameterTypes = parameterTypes;
+        this.compiledExpression = compiledExpression;
+    }
+
+    /** 使用按顺序的参数值执行 */
+    public Object getValue(Object[] parameters) {
+        return getValue(null, parameters);
+    }
+
+    /** 使用上下文对象+按顺序的参数值执行 */
+    public Object getValue(Object ctx, Object[] parameters) {
+        if(parameters.length != parameterNames.length) {
+            throw new RuntimeException("wrong number of parameters: expected " + parameterNames.length + " but got " + parameters.length);
+        }
+
+        return compiledExpression.getIndexedValue(ctx, FACTORY, coerce(parameters));
+    }
+
+    /** 将参数值转换为声明的类型,需要转换时复制一份,不修改调用方的数组 */
+    private Object[] coerce(Object[] parameters) {
+        if(parameterTypes == null) {
+            return parameters;
+        }
+
+        Object[] values = parameters;
+        for(int i = 0; i < parameters.length; i++) {
+            Class type = parameterTypes[i];
+            Object value = parameters[i];
+            if(type == null || type == Object.class || value == null || type.isInstance(value)) {
+                continue;
+            }
+
+            if(values == parameters) {
+                values = parameters.clone();
+            }
+            values[i] = convert(value, type);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,342 @@
+package org.mvelx.compiler;
+
+import org.mvelx.Operator;
+import org.mvelx.ParserContext;
+import org.mvelx.ast.*;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.optimizers.OptimizerFactory;
+import org.mvelx.util.CompilerTools;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 规则集的谓词索引,用于在执行前快速排除不可能满足的规则
+ * 编译时分析每个规则最外层的 && 条件,从中选取一个 属性 == 常量 或 属性 >,>=,<,<= 数字常量 的约束作为索引条件,
+ * 并按属性路径建立常量值的hash索引以及按数字常量排序的区间索引
+ * 执行时每个属性路径只读取一次值,通过索引找出索引条件可能成立的规则,只有这些规则以及没有索引条件的规则才进行完整的计算
+ * 索引只用于排除规则,不能确定的情况(如值的类型与常量不一致,读取值时出错)均按可能成立处理,因此结果与逐个执行规则一致
+ */
+class RuleIndex implements Serializable {
+    /** 超过此范围的long值转换为double时可能丢失精度,不用于区间索引 */
+    private static final long EXACT_DOUBLE = 1L << 53;
+
+    /** 没有索引条件,始终需要计算的表达式下标 */
+    private final int[] unindexed;
+    /** 各属性路径的索引 */
+    private final PathIndex[] paths;
+
+    private RuleIndex(int[] unindexed, PathIndex[] paths) {
+        this.unindexed = unindexed;
+        this.paths = paths;
+    }
+
+    /** 为编译表达式建立索引,相应的解析上下文用于判断属性访问是否没有副作用 */
+    static RuleIndex build(CompiledExpression[] expressions, List<ParserContext> contexts) {
+        List<Integer> unindexed = new ArrayList<>();
+        Map<String, PathIndex> paths = new LinkedHashMap<>();
+        for(int i = 0; i < expressions.length; i++) {
+            Constraint constraint = expressions[i].isSingleNode() ? findConstraint(expressions[i].getFirstNode(), contexts.get(i)) : null;
+            if(constraint == null) {
+                unindexed.add(i);
+                continue;
+            }
+
+            PathIndex path = paths.get(constraint.name);
+            if(path == null) {
+                paths.put(constraint.name, path = new PathIndex(constraint.path, i));
+            }
+            path.add(constraint, i);
+        }
+
+        for(PathIndex path : paths.values()) {
+            path.finish();
+        }
+        return new RuleIndex(unindexed.stream().mapToInt(Integer::intValue).toArray(), paths.values().toArray(new PathIndex[0]));
+    }
+
+    /** 从最外层的 && 条件中查找索引条件,优先选择相等条件 */
+    private static Constraint findConstraint(ASTNode node, ParserContext pCtx) {
+        if(node instanceof And) {
+            return choose(findConstraint(((And) node).getLeft(), pCtx), ((And) node).getRight(), pCtx);
+        }
+        if(!(node instanceof BinaryOperation)) {
+            return null;
+        }
+
+        BinaryOperation bo = (BinaryOperation) node;
+        int operation = bo.getOperation();
+        if(operation == Operator.AND) {
+            return choose(findConstraint(bo.getLeft(), pCtx), bo.getRight(), pCtx);
+        }
+        if(operation != Operator.EQUAL && (operation < Operator.LTHAN || operation > Operator.GETHAN)) {
+            return null;
+        }
+
+        //常量在左边时交换两边,相应的比较方向也反过来
+        ASTNode path = bo.getLeft();
+        ASTNode literal = bo.getRight();
+        if(path.isLiteral()) {
+            path = bo.getRight();
+            literal = bo.getLeft();
+            operation = reverse(operation);
+        }
+        if(!literal.isLiteral() || !isPath(path, pCtx)) {
+            return null;
+        }
+
+        Object value = literal.getLiteralValue();
+        if(operation == Operator.EQUAL) {
+            return equalityKey(value) != null ? new Constraint(path, operation, value) : null;
+        }
+        return rangeValue(value) != null ? new Constraint(path, operation, value) : null;
+    }
+
+    /** 在左边的索引条件以及右边的条件中选择一个,左边已是相等条件时不再分析右边 */
+    private static Constraint choose(Constraint left, ASTNode rightNode, ParserContext pCtx) {
+        if(left != null && left.operation == Operator.EQUAL) {
+            return left;
+        }
+        Constraint right = findConstraint(rightNode, pCtx);
+        return right != null && (left == null || right.operation == Operator.EQUAL) ? right : left;
+    }
+
+    /** 交换比较两边之后的比较运算 */
+    private static int reverse(int operation) {
+        switch(operation) {
+            case Operator.LTHAN:
+                return Operator.GTHAN;
+            case Operator.GTHAN:
+                return Operator.LTHAN;
+            case Operator.LETHAN:
+                return Operator.GETHAN;
+            case Operator.GETHAN:
+                return Operator.LETHAN;
+            default:
+                return operation;
+        }
+    }
+
+    /** 判断节点是否是没有副作用的属性访问 */
+    private static boolean isPath(ASTNode node, ParserContext pCtx) {
+        ASTNode access = node instanceof SharedValueNode ? ((SharedValueNode) node).getNode() : node;
+        return access.getClass() == ASTNode.class && access.isIdentifier() && (access.getFields() & ASTNode.ASSIGN) == 0
+                && CompilerTools.isSideEffectFreeAccess(access.getName(), pCtx);
+    }
+
+    /** 相等比较使用的索引键,数字统一为long或double,不支持索引的值返回null */
+    private static Object equalityKey(Object value) {
+        if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if(value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            long l = (long) d;
+            return l == d ? (Object) l : (Object) d;
+        }
+        return value instanceof String || value instanceof Boolean ? value : null;
+    }
+
+    /** 区间比较使用的数字值,不支持索引的值返回null */
+    private static Double rangeValue(Object value) {
+        if(value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        if(value instanceof Long && Math.abs((Long) value) <= EXACT_DOUBLE) {
+            return ((Long) value).doubleValue();
+        }
+        return null;
+    }
+
+    /**
+     * 计算各表达式是否需要执行
+     *
+     * @param factory 规则执行时使用的变量工厂,属性路径的值在此工厂中读取,共享的访问值也会保存以供规则使用
+     */
+    boolean[] candidates(Object fact, VariableResolverFactory factory, CompiledExpression[] expressions) {
+        boolean[] candidates = new boolean[expressions.length];
+        for(int i : unindexed) {
+            candidates[i] = true;
+        }
+
+        for(PathIndex path : paths) {
+            Object value;
+            try{
+                value = path.node.getReducedValueAccelerated(fact, fact, expressions[path.owner].executionFactory(factory));
+            } catch(RuntimeException e) {
+                //读取出错时(如规则中前面的条件用于保证此访问有效)不能排除任何规则
+                path.markAll(candidates);
+                continue;
+            } finally {
+                OptimizerFactory.clearThreadAccessorOptimizer();
+            }
+            path.mark(value, candidates);
+        }
+        return candidates;
+    }
+
+    /** 一个索引条件,即 属性 运算 常量 */
+    private static class Constraint {
+        /** 属性路径 */
+        private final String name;
+        /** 读取属性值的节点 */
+        private final ASTNode path;
+        private final int operation;
+        private final Object value;
+
+        private Constraint(ASTNode path, int operation, Object value) {
+            this.name = (path instanceof SharedValueNode ? ((SharedValueNode) path).getNode() : path).getName();
+            this.path = path;
+            this.operation = operation;
+            this.value = value;
+        }
+    }
+
+    /** 一个属性路径上的索引 */
+    private static class PathIndex implements Serializable {
+        /** 用于读取属性值的节点 */
+        private final ASTNode node;
+        /** 节点所在的表达式下标,读取时使用此表达式的执行工厂 */
+        private final int owner;
+
+        /** 相等条件中常量的类型分类 */
+        private Class<?> equalityFamily;
+        /** 相等条件中是否存在不同分类的常量,此时不通过hash索引排除规则 */
+        private boolean mixedFamily;
+        /** 相等条件的hash索引 */
+        private final Map<Object, int[]> equalities = new HashMap<>();
+        /** 全部相等条件的表达式 */
+        private int[] equalityRules = new int[0];
+
+        /** 下界条件(属性 > 常量),按常量从小到大排序 */
+        private Bound[] lowerBounds = new Bound[0];
+        /** 上界条件(属性 < 常量),按常量从大到小排序 */
+        private Bound[] upperBounds = new Bound[0];
+
+        private transient List<Bound> lowerList = new ArrayList<>();
+        private transient List<Bound> upperList = new ArrayList<>();
+
+        private PathIndex(ASTNode node, int owner) {
+            this.node = node;
+            this.owner = owner;
+        }
+
+        void add(Constraint constraint, int expression) {
+            switch(constraint.operation) {
+                case Operator.EQUAL:
+                    Object key = equalityKey(constraint.value);
+                    Class<?> family = family(key);
+                    if(equalityRules.length == 0) {
+                        equalityFamily = family;
+                    } else if(equalityFamily != family) {
+                        mixedFamily = true;
+                    }
+                    equalities.merge(key, new int[]{expression}, RuleIndex::concat);
+                    equalityRules = concat(equalityRules, new int[]{expression});
+                    break;
+                case Operator.GTHAN:
+                    lowerList.add(new Bound(rangeValue(constraint.value), false, expression));
+                    break;
+                case Operator.GETHAN:
+                    lowerList.add(new Bound(rangeValue(constraint.value), true, expression));
+                    break;
+                case Operator.LTHAN:
+                    upperList.add(new Bound(rangeValue(constraint.value), false, expression));
+                    break;
+                case Operator.LETHAN:
+                    upperList.add(new Bound(rangeValue(constraint.value), true, expression));
+                    break;
+                default:
+                    throw new IllegalStateException("unsupported index operation: " + constraint.operation);
+            }
+        }
+
+        /** 完成区间索引的排序 */
+        void finish() {
+            lowerBounds = lowerList.toArray(new Bound[0]);
+            Arrays.sort(lowerBounds, Comparator.comparingDouble(b -> b.threshold));
+            upperBounds = upperList.toArray(new Bound[0]);
+            Arrays.sort(upperBounds, Comparator.comparingDouble((Bound b) -> b.threshold).reversed());
+            lowerList = null;
+            upperList = null;
+        }
+
+        /** 根据属性值标记索引条件可能成立的表达式 */
+        void mark(Object value, boolean[] candidates) {
+            if(equalityRules.length > 0) {
+                Object key = equalityKey(value);
+                if(key == null || mixedFamily || family(key) != equalityFamily) {
+                    //类型不一致时相等比较可能进行类型转换,不能通过索引排除
+                    markAll(equalityRules, candidates);
+                } else {
+                    int[] matched = equalities.get(key);
+                    if(matched != null) markAll(matched, candidates);
+                }
+            }
+
+            if(lowerBounds.length == 0 && upperBounds.length == 0) {
+                return;
+            }
+            Double number = rangeValue(value);
+            if(number == null) {
+                markAll(lowerBounds, candidates);
+                markAll(upperBounds, candidates);
+                return;
+            }
+
+            double v = number;
+            for(Bound bound : lowerBounds) {
+                if(bound.threshold > v) break;
+                if(bound.threshold < v || bound.inclusive) candidates[bound.expression] = true;
+            }
+            for(Bound bound : upperBounds) {
+                if(bound.threshold < v) break;
+                if(bound.threshold > v || bound.inclusive) candidates[bound.expression] = true;
+            }
+        }
+
+        /** 标记此属性路径上的全部表达式 */
+        void markAll(boolean[] candidates) {
+            markAll(equalityRules, candidates);
+            markAll(lowerBounds, candidates);
+            markAll(upperBounds, candidates);
+        }
+
+        private static void markAll(int[] expressions, boolean[] candidates) {
+            for(int i : expressions) {
+                candidates[i] = true;
+            }
+        }
+
+        private static void markAll(Bound[] bounds, boolean[] candidates) {
+            for(Bound bound : bounds) {
+                candidates[bound.expression] = true;
+            }
+        }
+
+        /** 索引键的类型分类,数字统一为Number */
+        private static Class<?> family(Object key) {
+            return key instanceof Number ? Number.class : key.getClass();
+        }
+    }
+
+    /** 区间索引中的一个边界 */
+    private static class Bound implements Serializable {
+        private final double threshold;
+        /** 是否包含边界值 */
+        private final boolean inclusive;
+        private final int expression;
+
+        private Bound(double threshold, boolean inclusive, int expression) {
+            this.threshold = threshold;
+            this.inclusive = inclusive;
+            this.expression = expression;
+        }
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
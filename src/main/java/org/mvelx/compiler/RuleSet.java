@@ -0,0 +1,133 @@
+package org.mvelx.compiler;
+
+import org.mvelx.ParserConfiguration;
+import org.mvelx.ParserContext;
+import org.mvelx.ast.SharedValueNode;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.ImmutableDefaultFactory;
+import org.mvelx.integration.impl.SharedValueResolverFactory;
+import org.mvelx.util.CompilerTools;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一起编译并针对同一个事实对象执行的一组boolean规则
+ * 编译时在全部规则之间进行公共子表达式消除,各规则中相同的无副作用属性访问以及括号语句共用同一个共享值下标,
+ * 执行时全部规则在同一个共享存储中执行,因此对于同一个事实对象,相同的访问只在第一次使用时计算一次
+ * 表达式完全相同的规则也只编译以及执行一次
+ * 同时根据规则最外层 && 中的 属性 == 常量 以及 属性 比较 数字常量 条件建立谓词索引,执行时只计算索引条件可能成立的规则
+ *
+ * @see org.mvelx.MVEL#compileRuleSet(Map)
+ */
+public class RuleSet implements Serializable {
+    /** 按顺序的规则id */
+    private final String[] ruleIds;
+    /** 每个规则对应的表达式下标 */
+    private final int[] ruleExpressions;
+    /** 去重之后的编译表达式 */
+    private final CompiledExpression[] expressions;
+    /** 全部规则共用的共享范围 */
+    private final SharedValueScope scope = new SharedValueScope();
+    /** 用于排除不可能满足的规则的谓词索引 */
+    private final RuleIndex index;
+
+    /** 使用默认的解析配置编译规则,规则按map的迭代顺序排列 */
+    public RuleSet(Map<String, String> rules) {
+        this(rules, new ParserConfiguration());
+    }
+
+    /**
+     * 编译规则
+     *
+     * @param rules         规则id及相应的表达式,规则按map的迭代顺序排列
+     * @param configuration 编译各个规则时使用的解析配置
+     */
+    public RuleSet(Map<String, String> rules, ParserConfiguration configuration) {
+        this.ruleIds = new String[rules.size()];
+        this.ruleExpressions = new int[rules.size()];
+
+        List<CompiledExpression> compiledList = new ArrayList<>();
+        List<ParserContext> contexts = new ArrayList<>();
+        Map<String, Integer> expressionIndexes = new HashMap<>();
+        int i = 0;
+        for(Map.Entry<String, String> entry : rules.entrySet()) {
+            String expression = entry.getValue().trim();
+            Integer index = expressionIndexes.get(expression);
+            if(index == null) {
+                //由规则集统一处理公共子表达式,单个规则内不再单独处理
+                ParserContext pCtx = new ParserContext(configuration);
+                pCtx.setCommonSubexpressionElimination(false);
+                compiledList.add(new ExpressionCompiler(expression, pCtx).compile());
+                contexts.add(pCtx);
+                expressionIndexes.put(expression, index = compiledList.size() - 1);
+            }
+
+            ruleIds[i] = entry.getKey();
+            ruleExpressions[i++] = index;
+        }
+        this.expressions = compiledList.toArray(new CompiledExpression[0]);
+
+        shareAccess(contexts);
+        this.index = RuleIndex.build(expressions, contexts);
+    }
+
+    /** 在全部规则之间进行公共子表达式消除,有副作用的规则不参与共享 */
+    private void shareAccess(List<ParserContext> contexts) {
+        Map<String, Integer> counts = new HashMap<>();
+        boolean[] sideEffectFree = new boolean[expressions.length];
+        for(int i = 0; i < expressions.length; i++) {
+            sideEffectFree[i] = CompilerTools.countSharedAccess(expressions[i].getFirstNode(), counts, contexts.get(i));
+        }
+
+        Map<String, SharedValueNode> sharedNodes = new HashMap<>();
+        for(int i = 0; i < expressions.length; i++) {
+            if(sideEffectFree[i]) {
+                expressions[i].setFirstNode(CompilerTools.shareCommonAccess(expressions[i].getFirstNode(), counts, sharedNodes, scope, contexts.get(i)));
+            }
+        }
+    }
+
+    /** 使用事实对象执行全部规则,返回结果为true的规则id */
+    public List<String> evaluate(Object fact) {
+        return evaluate(fact, null);
+    }
+
+    /**
+     * 使用事实对象以及变量工厂执行全部规则
+     *
+     * @return 按规则顺序排列的结果为true的规则id
+     */
+    public List<String> evaluate(Object fact, VariableResolverFactory factory) {
+        VariableResolverFactory executionFactory = factory != null ? factory : new ImmutableDefaultFactory();
+        //当次执行的共享存储,全部规则共用
+        if(scope.getSize() > 0) {
+            executionFactory = new SharedValueResolverFactory(scope, executionFactory);
+        }
+
+        //只有索引条件可能成立的规则才进行完整的计算
+        boolean[] results = index.candidates(fact, executionFactory, expressions);
+        for(int i = 0; i < expressions.length; i++) {
+            if(results[i]) results[i] = expressions[i].evalBoolean(fact, executionFactory);
+        }
+
+        List<String> matched = new ArrayList<>();
+        for(int i = 0; i < ruleIds.length; i++) {
+            if(results[ruleExpressions[i]]) matched.add(ruleIds[i]);
+        }
+        return matched;
+    }
+
+    /** 规则个数 */
+    public int size() {
+        return ruleIds.length;
+    }
+
+    /** 共享值的个数,即在规则之间共用的访问个数 */
+    public int getSharedSize() {
+        return scope.getSize();
+    }
+}
@@ -0,0 +1,21 @@
+package org.mvelx.compiler;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * 描述一个编译表达式中公共子表达式的共享范围
+ * 编译期为每个重复出现的访问分配一个下标,执行时由SharedValueResolverFactory为每次执行准备相应的存储位置
+ * 节点通过此对象找到属于当前编译表达式的存储,以避免在嵌套的编译表达式之间相互混用
+ */
+public class SharedValueScope implements Serializable {
+    /** 已分配的共享值个数 */
+    @Getter
+    private int size;
+
+    /** 分配一个新的共享值下标 */
+    public int allocate() {
+        return size++;
+    }
+}
@@ -174,6 +174,17 @@ public class FunctionVariableResolverFactory extends BaseVariableResolverFactory
 //        }
     }
 
+    /**
+     * 使用新的参数值重置整个作用域,用于尾调用时重新执行函数体
+     * 参数之后的变量解析器全部清空,与新建一个函数作用域时的状态相同
+     */
+    public void resetFrame(Object[] parameters) {
+        updateParameters(parameters);
+        for(int i = parameters.length; i < indexedVariableResolvers.length; i++) {
+            indexedVariableResolvers[i] = null;
+        }
+    }
+
     public VariableResolver[] getIndexedVariableResolvers() {
         return this.indexedVariableResolvers;
     }
@@ -0,0 +1,161 @@
+package org.mvelx.integration.impl;
+
+import org.mvelx.UnresolveablePropertyException;
+import org.mvelx.integration.VariableResolver;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 直接绑定外部map的变量工厂,用于 MVEL.executeExpression(compiled, map) 这种每次执行都传入新map的场景
+ * 变量的读写均直接作用于当前绑定的map,解析器只记录变量名,通过工厂访问当前绑定的map,因此解析器在多次执行之间可以复用
+ * 工厂在每个线程中复用,通过acquire绑定map之后需要在finally中通过release解除绑定
+ * 如果工厂在执行完之后仍会被引用(如延迟投影),则通过ScopeFrameResolverFactory.escape标记,此工厂不再被复用
+ */
+public class MapBindingResolverFactory extends BaseVariableResolverFactory {
+    /** 每个线程复用的工厂 */
+    private static final ThreadLocal<MapBindingResolverFactory> threadFactory = ThreadLocal.withInitial(MapBindingResolverFactory::new);
+    /** 解除绑定时保留的解析器个数上限,变量名不固定(如每次执行使用不同的key)时超出上限即清除,避免缓存无限增长 */
+    private static final int MAX_CACHED_BINDINGS = 256;
+
+    /** 当前绑定的外部map */
+    private Map<String, Object> variables;
+    /** 声明了类型的变量,只在当次执行中有效 */
+    private Map<String, VariableResolver> typedResolvers;
+
+    /** 是否为线程复用的工厂 */
+    private boolean pooled;
+    /** 是否正在使用中,嵌套执行时不能使用同一个工厂 */
+    private boolean inUse;
+    /** 是否在执行完之后仍会被引用 */
+    private boolean escaped;
+
+    /** 获取当前线程可复用的工厂并绑定相应的map,已在使用中时(嵌套执行)创建新的工厂 */
+    public static MapBindingResolverFactory acquire(Map<String, Object> variables) {
+        MapBindingResolverFactory factory = threadFactory.get();
+        if(factory.inUse) {
+            factory = new MapBindingResolverFactory();
+        } else {
+            factory.pooled = true;
+        }
+
+        factory.variables = variables;
+        factory.inUse = true;
+        return factory;
+    }
+
+    /** 解除map的绑定,以便下次复用 */
+    public void release() {
+        if(!pooled) {
+            return;
+        }
+
+        if(escaped) {
+            //仍被引用的工厂直接丢弃
+            threadFactory.remove();
+            pooled = false;
+            return;
+        }
+
+        this.variables = null;
+        this.typedResolvers = null;
+        this.inUse = false;
+        if(variableResolvers.size() > MAX_CACHED_BINDINGS) {
+            variableResolvers.clear();
+        }
+        setTiltFlag(false);
+    }
+
+    /** 标记此工厂在执行完之后仍会被引用 */
+    void markEscaped() {
+        this.escaped = true;
+    }
+
+    /** 获取相应变量名的解析器,解析器在多次执行之间复用 */
+    private VariableResolver binding(String name) {
+        VariableResolver vr = variableResolvers.get(name);
+        if(vr == null) {
+            variableResolvers.put(name, vr = new Binding(name));
+        }
+        return vr;
+    }
+
+    public VariableResolver createVariable(String name, Object value) {
+        VariableResolver vr = typedResolvers != null ? typedResolvers.get(name) : null;
+        if(vr == null) {
+            vr = variables.containsKey(name) || !isNextResolveable(name) ? binding(name) : nextFactory.getVariableResolver(name);
+        }
+        vr.setValue(value);
+        return vr;
+    }
+
+    public VariableResolver createVariable(String name, Object value, Class<?> type) {
+        //不允许重复创建对象
+        if(typedResolvers != null && typedResolvers.containsKey(name)) {
+            throw new RuntimeException("variable already defined within scope: " + typedResolvers.get(name).getType() + " " + name);
+        }
+
+        if(typedResolvers == null) {
+            typedResolvers = new HashMap<>();
+        }
+        VariableResolver vr = new MapVariableResolver(variables, name, type);
+        typedResolvers.put(name, vr);
+        vr.setValue(value);
+        return vr;
+    }
+
+    public VariableResolver getVariableResolver(String name) {
+        if(typedResolvers != null && typedResolvers.containsKey(name)) {
+            return typedResolvers.get(name);
+        } else if(variables.containsKey(name)) {
+            return binding(name);
+        } else if(nextFactory != null) {
+            return nextFactory.getVariableResolver(name);
+        }
+
+        throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+    }
+
+    public boolean isResolvable(String name) {
+        return isTarget(name) || isNextResolveable(name);
+    }
+
+    public boolean isTarget(String name) {
+        return variables.containsKey(name) || (typedResolvers != null && typedResolvers.containsKey(name));
+    }
+
+    public Set<String> getKnownVariables() {
+        return new HashSet<>(variables.keySet());
+    }
+
+    /** 只记录变量名,值直接从当前绑定的map中读写 */
+    private class Binding implements VariableResolver {
+        private final String name;
+
+        Binding(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class getType() {
+            return null;
+        }
+
+        public int getFlags() {
+            return 0;
+        }
+
+        public Object getValue() {
+            return variables.get(name);
+        }
+
+        public void setValue(Object value) {
+            variables.put(name, value);
+        }
+    }
+}
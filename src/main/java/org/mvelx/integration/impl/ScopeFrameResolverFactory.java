@@ -0,0 +1,275 @@
+package org.mvelx.integration.impl;
+
+import org.mvelx.UnresolveablePropertyException;
+import org.mvelx.integration.VariableResolver;
+import org.mvelx.integration.VariableResolverFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 用于代码块(如if for while foreach等)的变量作用域帧,与MapVariableResolverFactory的作用域语义相同,
+ * 即代码块中新建的变量只在当前块中可见,对外层已有变量的赋值则由外层作用域处理
+ * 块内变量通过数组存储,数组大小由编译期块内声明的变量数决定,不再创建相应的map
+ * 作用域帧在每个线程中按照嵌套深度复用,通过acquire获取之后需要在finally中通过release进行释放
+ * 如果作用域在代码块执行完之后仍会被引用(如new 一个函数原型对象),则通过escape标记,此作用域不再被复用
+ */
+public class ScopeFrameResolverFactory implements VariableResolverFactory {
+    /** 每个线程复用的作用域帧 */
+    private static final ThreadLocal<FramePool> threadPool = ThreadLocal.withInitial(FramePool::new);
+
+    /** 委托的下一个解析器工厂 */
+    private VariableResolverFactory nextFactory;
+
+    /** 块内变量名 */
+    private String[] names;
+    /** 块内变量的解析器,与names下标对应 */
+    private VariableResolver[] resolvers;
+    /** 块内变量个数 */
+    private int size;
+
+    /** 循环变量,如foreach中的当前项,为null表示没有循环变量 */
+    private ItemResolverFactory.ItemResolver item;
+
+    /** 是否终止的标记位 */
+    private boolean tilt;
+
+    /** 所属的复用池,未通过复用池获取时为null */
+    private transient FramePool pool;
+    /** 是否在代码块执行完之后仍会被引用 */
+    private boolean escaped;
+
+    /** 创建一个不复用的作用域帧 */
+    public ScopeFrameResolverFactory(VariableResolverFactory nextFactory) {
+        this(nextFactory, 0);
+    }
+
+    private ScopeFrameResolverFactory(VariableResolverFactory nextFactory, int capacity) {
+        this.nextFactory = nextFactory;
+        this.names = new String[Math.max(capacity, 2)];
+        this.resolvers = new VariableResolver[names.length];
+    }
+
+    /**
+     * 获取当前线程可复用的作用域帧
+     * 外层作用域同样为复用的作用域帧时直接使用其复用池,以避免每次都从ThreadLocal中获取
+     *
+     * @param capacity 编译期确定的块内变量个数
+     */
+    public static ScopeFrameResolverFactory acquire(VariableResolverFactory nextFactory, int capacity) {
+        FramePool pool = nextFactory instanceof ScopeFrameResolverFactory && ((ScopeFrameResolverFactory) nextFactory).pool != null
+                ? ((ScopeFrameResolverFactory) nextFactory).pool : threadPool.get();
+        return pool.push(nextFactory, capacity);
+    }
+
+    /** 释放通过acquire获取的作用域帧,清除其中的变量值,避免引用泄露 */
+    public void release() {
+        if(pool != null) {
+            pool.pop(this);
+        }
+    }
+
+    /** 将指定作用域链上的作用域帧(以及复用的map绑定工厂,执行帧和共享值存储)均标记为在执行完之后仍会被引用,这些作用域帧不再被复用 */
+    public static void escape(VariableResolverFactory factory) {
+        while(factory != null) {
+            if(factory instanceof ScopeFrameResolverFactory) {
+                ((ScopeFrameResolverFactory) factory).escaped = true;
+            } else if(factory instanceof MapBindingResolverFactory) {
+                ((MapBindingResolverFactory) factory).markEscaped();
+            } else if(factory instanceof ScriptFrameResolverFactory) {
+                ((ScriptFrameResolverFactory) factory).markEscaped();
+            } else if(factory instanceof SharedValueResolverFactory) {
+                ((SharedValueResolverFactory) factory).markEscaped();
+            }
+
+            if(factory instanceof StackDemarcResolverFactory) {
+                factory = ((StackDemarcResolverFactory) factory).getDelegate();
+            } else if(factory instanceof StackResetResolverFactory) {
+                factory = ((StackResetResolverFactory) factory).getDelegate();
+            } else {
+                factory = factory.getNextFactory();
+            }
+        }
+    }
+
+    /** 设置当前块的循环变量 */
+    public ScopeFrameResolverFactory setItem(ItemResolverFactory.ItemResolver item) {
+        this.item = item;
+        return this;
+    }
+
+    /** 查找块内变量的下标,不存在时返回-1 */
+    private int indexOf(String name) {
+        for(int i = 0; i < size; i++) {
+            if(name.equals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** 在当前块中添加新变量 */
+    private VariableResolver addLocal(String name, VariableResolver resolver) {
+        if(size == names.length) {
+            names = Arrays.copyOf(names, size << 1);
+            resolvers = Arrays.copyOf(resolvers, size << 1);
+        }
+        names[size] = name;
+        resolvers[size++] = resolver;
+        return resolver;
+    }
+
+    /** 本地变量,或者外层作用域中的变量,都没有时返回null */
+    private VariableResolver findResolver(String name) {
+        if(item != null && item.getName().equals(name)) {
+            return item;
+        }
+
+        int idx = indexOf(name);
+        if(idx != -1) {
+            return resolvers[idx];
+        }
+
+        return nextFactory != null && nextFactory.isResolvable(name) ? nextFactory.getVariableResolver(name) : null;
+    }
+
+    /** 修改变量值信息(如果有)，否则在当前块中创建新的变量 */
+    public VariableResolver createVariable(String name, Object value) {
+        VariableResolver vr = findResolver(name);
+        if(vr != null) {
+            vr.setValue(value);
+            return vr;
+        }
+        return addLocal(name, new SimpleSTValueResolver(value, null));
+    }
+
+    public VariableResolver createVariable(String name, Object value, Class<?> type) {
+        if(item != null && item.getName().equals(name)) {
+            throw new RuntimeException("variable already defined in scope: " + name);
+        }
+
+        //不允许重复创建对象
+        VariableResolver vr = findResolver(name);
+        if(vr != null && vr.getType() != null) {
+            throw new RuntimeException("variable already defined within scope: " + vr.getType() + " " + name);
+        }
+        return addLocal(name, new SimpleSTValueResolver(value, type));
+    }
+
+    public VariableResolver getVariableResolver(String name) {
+        VariableResolver vr = findResolver(name);
+        if(vr == null) {
+            throw new UnresolveablePropertyException("unable to resolve variable '" + name + "'");
+        }
+        return vr;
+    }
+
+    public boolean isResolvable(String name) {
+        return isTarget(name) || (nextFactory != null && nextFactory.isResolvable(name));
+    }
+
+    public boolean isTarget(String name) {
+        return (item != null && item.getName().equals(name)) || indexOf(name) != -1;
+    }
+
+    /** 当前块不支持下标存储,委托给next来处理 */
+    public VariableResolver createIndexedVariable(int index, String name, Object value) {
+        return nextFactory.createIndexedVariable(index, name, value);
+    }
+
+    public VariableResolver createIndexedVariable(int index, String name, Object value, Class<?> type) {
+        return nextFactory.createIndexedVariable(index, name, value, type);
+    }
+
+    public VariableResolver setIndexedVariableResolver(int index, VariableResolver variableResolver) {
+        return nextFactory.setIndexedVariableResolver(index, variableResolver);
+    }
+
+    public VariableResolver getIndexedVariableResolver(int index) {
+        return nextFactory.getIndexedVariableResolver(index);
+    }
+
+    public int variableIndexOf(String name) {
+        return -1;
+    }
+
+    public boolean isIndexedFactory() {
+        return false;
+    }
+
+    public VariableResolverFactory getNextFactory() {
+        return nextFactory;
+    }
+
+    public VariableResolverFactory setNextFactory(VariableResolverFactory resolverFactory) {
+        return nextFactory = resolverFactory;
+    }
+
+    public Set<String> getKnownVariables() {
+        Set<String> vars = new HashSet<>(Arrays.asList(names).subList(0, size));
+        if(item != null) vars.add(item.getName());
+        if(nextFactory != null) vars.addAll(nextFactory.getKnownVariables());
+        return vars;
+    }
+
+    public boolean tiltFlag() {
+        return tilt;
+    }
+
+    /** 与其它作用域相同,终止标记级联至外层 */
+    public void setTiltFlag(boolean tilt) {
+        this.tilt = tilt;
+        if(nextFactory != null) nextFactory.setTiltFlag(tilt);
+    }
+
+    /** 清除当前帧的数据,以便下次复用 */
+    private void reset() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(resolvers, 0, size, null);
+        this.size = 0;
+        this.item = null;
+        this.tilt = false;
+        this.nextFactory = null;
+    }
+
+    /** 按照嵌套深度存放作用域帧的复用池,作用域帧的获取和释放总是成对嵌套的 */
+    private static class FramePool {
+        private ScopeFrameResolverFactory[] frames = new ScopeFrameResolverFactory[8];
+        /** 当前使用中的深度 */
+        private int depth;
+
+        ScopeFrameResolverFactory push(VariableResolverFactory nextFactory, int capacity) {
+            if(depth == frames.length) {
+                frames = Arrays.copyOf(frames, depth << 1);
+            }
+
+            ScopeFrameResolverFactory frame = frames[depth];
+            if(frame == null) {
+                frame = frames[depth] = new ScopeFrameResolverFactory(nextFactory, capacity);
+                frame.pool = this;
+            } else {
+                frame.nextFactory = nextFactory;
+            }
+            depth++;
+            return frame;
+        }
+
+        void pop(ScopeFrameResolverFactory frame) {
+            //释放的帧必须为栈顶的帧,否则表示获取和释放没有成对进行,此时不再复用
+            if(depth == 0 || frames[depth - 1] != frame) {
+                frame.pool = null;
+                return;
+            }
+
+            depth--;
+            if(frame.escaped) {
+                //仍被引用的帧直接丢弃,同时不再属于复用池
+                frames[depth] = null;
+                frame.pool = null;
+            } else {
+                frame.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.mvelx.integration.impl;
+
+import org.mvelx.integration.VariableResolver;
+import org.mvelx.integration.VariableResolverFactory;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * 用于按下标解析脚本变量的执行帧,每次执行编译表达式时创建
+ * 脚本中的全部变量在编译期已分配好下标,执行时通过下标直接获取相应的解析器,不再按变量名逐层查找
+ * 外部已存在的变量在第一次访问时将外部的解析器缓存在相应下标中,对其的赋值仍由外部处理;
+ * 脚本中新建的变量则直接保存在当前帧中,与函数作用域的处理方式相同
+ */
+public class ScriptFrameResolverFactory extends BaseVariableResolverFactory {
+    /** 是否在执行完之后仍会被引用 */
+    private boolean escaped;
+
+    public ScriptFrameResolverFactory(String[] indexedVariableNames, VariableResolverFactory nextFactory) {
+        this.nextFactory = nextFactory;
+        this.indexedVariableNames = indexedVariableNames;
+        this.indexedVariableResolvers = new VariableResolver[indexedVariableNames.length];
+    }
+
+    /** 使用按顺序传入的参数值构建,参数值依次作为最前面下标的变量值 */
+    public ScriptFrameResolverFactory(String[] indexedVariableNames, VariableResolverFactory nextFactory, Object[] parameters) {
+        this(indexedVariableNames, nextFactory);
+        for(int i = 0; i < parameters.length; i++) {
+            indexedVariableResolvers[i] = new SimpleValueResolver(parameters[i]);
+        }
+    }
+
+    /** 标记此执行帧在执行完之后仍会被引用 */
+    void markEscaped() {
+        this.escaped = true;
+    }
+
+    /**
+     * 清除当前帧中的全部变量,以便在批量执行中复用
+     *
+     * @return 执行帧仍会被引用而不能复用时返回false
+     */
+    public boolean reset() {
+        if(escaped) {
+            return false;
+        }
+
+        Arrays.fill(indexedVariableResolvers, null);
+        variableResolvers.clear();
+        setTiltFlag(false);
+        return true;
+    }
+
+    /** 获取指定下标的解析器,第一次访问时从外部获取,外部也不存在时创建新的本地变量 */
+    private VariableResolver slotResolver(int index) {
+        VariableResolver resolver = indexedVariableResolvers[index];
+        if(resolver == null) {
+            String name = indexedVariableNames[index];
+            resolver = indexedVariableResolvers[index] = isNextResolveable(name) ? nextFactory.getVariableResolver(name) : new SimpleValueResolver(null);
+        }
+        return resolver;
+    }
+
+    /** 修改变量值信息(如果有),否则在当前帧中创建新的变量,编译期未分配下标的变量(如代码块中的变量)按变量名存储 */
+    public VariableResolver createVariable(String name, Object value) {
+        int idx = variableIndexOf(name);
+        if(idx != -1) {
+            return createIndexedVariable(idx, name, value);
+        }
+
+        VariableResolver resolver = variableResolvers.get(name);
+        if(resolver != null) {
+            resolver.setValue(value);
+            return resolver;
+        }
+        if(isNextResolveable(name)) {
+            return nextFactory.createVariable(name, value);
+        }
+
+        variableResolvers.put(name, resolver = new SimpleValueResolver(value));
+        return resolver;
+    }
+
+    /** 声明类型的变量总是在当前帧中创建,后续的赋值均转换为声明的类型 */
+    public VariableResolver createVariable(String name, Object value, Class<?> type) {
+        VariableResolver resolver = new SimpleSTValueResolver(value, type);
+        int idx = variableIndexOf(name);
+        if(idx != -1) {
+            indexedVariableResolvers[idx] = resolver;
+        } else {
+            variableResolvers.put(name, resolver);
+        }
+        return resolver;
+    }
+
+    public VariableResolver createIndexedVariable(int index, String name, Object value) {
+        VariableResolver resolver = slotResolver(index);
+        resolver.setValue(value);
+        return resolver;
+    }
+
+    public VariableResolver createIndexedVariable(int index, String name, Object value, Class<?> type) {
+        return createIndexedVariable(index, name, value);
+    }
+
+    /** 未赋值并且外部也不存在的变量不能解析 */
+    public VariableResolver getIndexedVariableResolver(int index) {
+        VariableResolver resolver = indexedVariableResolvers[index];
+        if(resolver == null) {
+            return indexedVariableResolvers[index] = nextFactory.getVariableResolver(indexedVariableNames[index]);
+        }
+        return resolver;
+    }
+
+    public VariableResolver getVariableResolver(String name) {
+        int idx = variableIndexOf(name);
+        if(idx != -1) {
+            return getIndexedVariableResolver(idx);
+        }
+        return super.getVariableResolver(name);
+    }
+
+    public boolean isResolvable(String name) {
+        int idx = variableIndexOf(name);
+        return (idx != -1 && indexedVariableResolvers[idx] != null) || variableResolvers.containsKey(name) || isNextResolveable(name);
+    }
+
+    public boolean isTarget(String name) {
+        return variableIndexOf(name) != -1;
+    }
+
+    /** 当前是基于下标工作的工厂 */
+    public boolean isIndexedFactory() {
+        return true;
+    }
+
+    public Set<String> getKnownVariables() {
+        Set<String> vars = super.getKnownVariables();
+        for(int i = 0; i < indexedVariableNames.length; i++) {
+            if(indexedVariableResolvers[i] != null) vars.add(indexedVariableNames[i]);
+        }
+        return vars;
+    }
+}
@@ -0,0 +1,73 @@
+package org.mvelx.integration.impl;
+
+import org.mvelx.compiler.SharedValueScope;
+import org.mvelx.integration.VariableResolverFactory;
+
+import java.util.Arrays;
+
+/**
+ * 用于存储公共子表达式计算结果的变量工厂,每次执行编译表达式时创建,即相当于当次执行中的隐藏下标变量
+ * 变量的处理全部委托给原工厂,自身仅存储按下标访问的共享值,共享值在第一次使用时才进行计算
+ */
+public class SharedValueResolverFactory extends StackResetResolverFactory {
+    /** 当前存储所属的共享范围 */
+    private final SharedValueScope scope;
+    /** 已计算的共享值 */
+    private final Object[] values;
+    /** 相应下标的值是否已计算 */
+    private final boolean[] computed;
+    /** 是否在执行完之后仍会被引用 */
+    private boolean escaped;
+
+    public SharedValueResolverFactory(SharedValueScope scope, VariableResolverFactory delegate) {
+        super(delegate);
+        this.scope = scope;
+        this.values = new Object[scope.getSize()];
+        this.computed = new boolean[scope.getSize()];
+    }
+
+    /** 从指定工厂开始查找属于指定共享范围的存储,找不到时返回null */
+    public static SharedValueResolverFactory find(VariableResolverFactory factory, SharedValueScope scope) {
+        while(factory != null) {
+            if(factory instanceof SharedValueResolverFactory && ((SharedValueResolverFactory) factory).scope == scope) {
+                return (SharedValueResolverFactory) factory;
+            }
+            //重置工厂的getNextFactory会跳过委托工厂本身,因此需要直接处理委托
+            factory = factory instanceof StackResetResolverFactory ? ((StackResetResolverFactory) factory).getDelegate() : factory.getNextFactory();
+        }
+        return null;
+    }
+
+    /** 标记此存储在执行完之后仍会被引用 */
+    void markEscaped() {
+        this.escaped = true;
+    }
+
+    /**
+     * 清除已计算的共享值,以便在批量执行中复用
+     *
+     * @return 存储仍会被引用而不能复用时返回false
+     */
+    public boolean reset() {
+        if(escaped) {
+            return false;
+        }
+
+        Arrays.fill(values, null);
+        Arrays.fill(computed, false);
+        return true;
+    }
+
+    public boolean isComputed(int slot) {
+        return computed[slot];
+    }
+
+    public Object getValue(int slot) {
+        return values[slot];
+    }
+
+    public void setValue(int slot, Object value) {
+        values[slot] = value;
+        computed[slot] = true;
+    }
+}
@@ -0,0 +1,159 @@
+package org.mvelx.integration.impl;
+
+import org.mvelx.integration.VariableResolver;
+import org.mvelx.integration.VariableResolverFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 多个线程共用同一个变量工厂时,每个线程单独使用的包装工厂
+ * 许多变量工厂在查找变量时会延迟地缓存解析器(如MapVariableResolverFactory,MapBindingResolverFactory),不能在多个线程中同时访问,
+ * 因此对被包装工厂的访问均在同一个锁中进行,查找到的解析器再缓存在当前包装工厂中,同一个变量在每个线程中只查找一次
+ * 解析器本身的读取不加锁,因此只用于在并行执行期间只读取外部变量的场景,如并行的fold投影
+ */
+public class SynchronizedResolverFactory implements VariableResolverFactory {
+    /** 被包装的变量工厂 */
+    private final VariableResolverFactory delegate;
+    /** 全部线程共用的锁 */
+    private final Object lock;
+
+    /** 当前线程已查找到的解析器 */
+    private final Map<String, VariableResolver> resolvers = new HashMap<>();
+    /** 当前线程已查找到的下标解析器 */
+    private VariableResolver[] indexedResolvers = new VariableResolver[0];
+
+    /**
+     * @param delegate 被包装的变量工厂
+     * @param lock     共用同一个变量工厂的全部包装工厂使用的同一个锁
+     */
+    public SynchronizedResolverFactory(VariableResolverFactory delegate, Object lock) {
+        this.delegate = delegate;
+        this.lock = lock;
+    }
+
+    public VariableResolver createVariable(String name, Object value) {
+        synchronized(lock) {
+            return cache(name, delegate.createVariable(name, value));
+        }
+    }
+
+    public VariableResolver createVariable(String name, Object value, Class<?> type) {
+        synchronized(lock) {
+            return cache(name, delegate.createVariable(name, value, type));
+        }
+    }
+
+    public VariableResolver createIndexedVariable(int index, String name, Object value) {
+        synchronized(lock) {
+            return cache(index, delegate.createIndexedVariable(index, name, value));
+        }
+    }
+
+    public VariableResolver createIndexedVariable(int index, String name, Object value, Class<?> type) {
+        synchronized(lock) {
+            return cache(index, delegate.createIndexedVariable(index, name, value, type));
+        }
+    }
+
+    public VariableResolver setIndexedVariableResolver(int index, VariableResolver variableResolver) {
+        synchronized(lock) {
+            VariableResolver vr = delegate.setIndexedVariableResolver(index, variableResolver);
+            cache(index, variableResolver);
+            return vr;
+        }
+    }
+
+    public VariableResolver getVariableResolver(String name) {
+        VariableResolver vr = resolvers.get(name);
+        if(vr != null) {
+            return vr;
+        }
+        synchronized(lock) {
+            return cache(name, delegate.getVariableResolver(name));
+        }
+    }
+
+    public VariableResolver getIndexedVariableResolver(int index) {
+        VariableResolver vr = index < indexedResolvers.length ? indexedResolvers[index] : null;
+        if(vr != null) {
+            return vr;
+        }
+        synchronized(lock) {
+            return cache(index, delegate.getIndexedVariableResolver(index));
+        }
+    }
+
+    public boolean isTarget(String name) {
+        if(resolvers.containsKey(name)) {
+            return true;
+        }
+        synchronized(lock) {
+            return delegate.isTarget(name);
+        }
+    }
+
+    public boolean isResolvable(String name) {
+        if(resolvers.containsKey(name)) {
+            return true;
+        }
+        synchronized(lock) {
+            return delegate.isResolvable(name);
+        }
+    }
+
+    public int variableIndexOf(String name) {
+        synchronized(lock) {
+            return delegate.variableIndexOf(name);
+        }
+    }
+
+    public boolean isIndexedFactory() {
+        return delegate.isIndexedFactory();
+    }
+
+    public VariableResolverFactory getNextFactory() {
+        return delegate.getNextFactory();
+    }
+
+    public VariableResolverFactory setNextFactory(VariableResolverFactory resolverFactory) {
+        throw new UnsupportedOperationException("cannot change the next factory of a synchronized factory");
+    }
+
+    public Set<String> getKnownVariables() {
+        synchronized(lock) {
+            return delegate.getKnownVariables();
+        }
+    }
+
+    public boolean tiltFlag() {
+        synchronized(lock) {
+            return delegate.tiltFlag();
+        }
+    }
+
+    public void setTiltFlag(boolean tilt) {
+        synchronized(lock) {
+            delegate.setTiltFlag(tilt);
+        }
+    }
+
+    private VariableResolver cache(String name, VariableResolver vr) {
+        if(vr != null) {
+            resolvers.put(name, vr);
+        }
+        return vr;
+    }
+
+    private VariableResolver cache(int index, VariableResolver vr) {
+        if(vr != null && index >= 0) {
+            if(index >= indexedResolvers.length) {
+                indexedResolvers = Arrays.copyOf(indexedResolvers, index + 1);
+            }
+            indexedResolvers[index] = vr;
+        }
+        return vr;
+    }
+}
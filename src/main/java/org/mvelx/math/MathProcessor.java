@@ -58,6 +58,7 @@ public strictfp class MathProcessor {
 
     /**
      * 根据2个值,2个值的类型,操作符计算出相应的值
+     * 通过预先计算的分派表,根据2个类型直接找到相应的处理器进行处理
      *
      * @param type1     左边的值类型,可能未计算
      * @param type2     右边的值类型,可能未计算
@@ -71,27 +72,195 @@ public strictfp class MathProcessor {
         if(type2 == -1)
             type2 = val2 == null ? DataTypes.OBJECT : __resolveType(val2.getClass());
 
-        switch(type1) {
-            //单独处理bigDecimal系列,因为右边的类型可能要进行转型处理
-            case BIG_DECIMAL:
+        return dispatchTable[dispatchIndex(type1)][dispatchIndex(type2)].operate(type1, val1, operation, type2, val2);
+    }
 
-                switch(type2) {
-                    case BIG_DECIMAL:
-                        return doBigDecimalArithmetic((BigDecimal) val1, operation, (BigDecimal) val2, false, -1);
-                    default:
-                        //类型2是数字,则进行相应的数字运算
-                        if(type2 > 99) {
-                            return doBigDecimalArithmetic((BigDecimal) val1, operation, getInternalNumberFromType(val2, type2), false, -1);
-                        } else {
-                            return _doOperations(type1, val1, operation, type2, val2);
-                        }
+    /** 描述一种类型组合下的运算处理器 */
+    private interface OperationHandler {
+        Object operate(int type1, Object val1, int operation, int type2, Object val2);
+    }
+
+    /** 分派表中单独处理的数字类型的起始值,即从SHORT至W_BYTE,其它类型均使用下标0 */
+    private static final int DISPATCH_TYPE_START = DataTypes.SHORT;
+    private static final int DISPATCH_TYPE_END = DataTypes.W_BYTE;
+
+    /** 按照 [类型1][类型2] 预先计算的运算处理器 */
+    private static final OperationHandler[][] dispatchTable;
+
+    static {
+        int size = DISPATCH_TYPE_END - DISPATCH_TYPE_START + 2;
+        dispatchTable = new OperationHandler[size][size];
+        for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+                int type1 = i == 0 ? DataTypes.OBJECT : i + DISPATCH_TYPE_START - 1;
+                int type2 = j == 0 ? DataTypes.OBJECT : j + DISPATCH_TYPE_START - 1;
+
+                //单独处理bigDecimal系列,因为右边的类型可能要进行转型处理
+                if(type1 == BIG_DECIMAL) {
+                    dispatchTable[i][j] = MathProcessor::doBigDecimalOperations;
+                } else if(i == 0 || j == 0) {
+                    dispatchTable[i][j] = MathProcessor::_doOperations;
+                } else if(type1 == type2) {
+                    dispatchTable[i][j] = MathProcessor::doSameTypeNumericOperations;
+                } else if(isExactIntegralType(type1) && isExactIntegralType(type2)) {
+                    dispatchTable[i][j] = MathProcessor::doIntegralOperations;
+                } else if(type1 == DataTypes.BIG_INTEGER && isExactIntegralType(type2) || type2 == DataTypes.BIG_INTEGER && isExactIntegralType(type1)) {
+                    dispatchTable[i][j] = MathProcessor::doBigIntegerOperations;
+                } else {
+                    dispatchTable[i][j] = MathProcessor::doMixedNumericOperations;
                 }
+            }
+        }
+    }
+
+    /** 获取类型在分派表中的下标 */
+    private static int dispatchIndex(int type) {
+        return type >= DISPATCH_TYPE_START && type <= DISPATCH_TYPE_END ? type - DISPATCH_TYPE_START + 1 : 0;
+    }
+
+    /** 可以使用long精确运算的整数类型 */
+    private static boolean isExactIntegralType(int type) {
+        switch(type) {
+            case DataTypes.SHORT:
+            case DataTypes.W_SHORT:
+            case DataTypes.INTEGER:
+            case DataTypes.W_INTEGER:
+            case DataTypes.LONG:
+            case DataTypes.W_LONG:
+                return true;
             default:
-                return _doOperations(type1, val1, operation, type2, val2);
+                return false;
+        }
+    }
 
+    /** 左边为bigDecimal的运算,右边是数字时转换为bigDecimal进行运算 */
+    private static Object doBigDecimalOperations(int type1, Object val1, int operation, int type2, Object val2) {
+        switch(type2) {
+            case BIG_DECIMAL:
+                return doBigDecimalArithmetic((BigDecimal) val1, operation, (BigDecimal) val2, false, -1);
+            default:
+                //类型2是数字,则进行相应的数字运算
+                if(type2 > 99) {
+                    return doBigDecimalArithmetic((BigDecimal) val1, operation, getInternalNumberFromType(val2, type2), false, -1);
+                } else {
+                    return _doOperations(type1, val1, operation, type2, val2);
+                }
         }
     }
 
+    /** 相同数字类型之间的运算 */
+    private static Object doSameTypeNumericOperations(int type1, Object val1, int operation, int type2, Object val2) {
+        return operation < 20 ? doOperationsSameType(type1, val1, operation, val2) : doOperationNonNumeric(type1, val1, operation, val2);
+    }
+
+    /** 不同数字类型之间的运算,先使用double进行处理,最后转换为宽化的类型 */
+    private static Object doMixedNumericOperations(int type1, Object val1, int operation, int type2, Object val2) {
+        if(operation >= 20) {
+            return doOperationNonNumeric(type1, val1, operation, val2);
+        }
+        //int和long之间的位运算
+        if(isIntegerType(type1) && isIntegerType(type2) && operation >= BW_AND && operation <= BW_NOT) {
+            return doOperationsSameType(type1, val1, operation, val2);
+        }
+        return doPrimWrapperArithmetic(getNumber(val1, type1), operation, getNumber(val2, type2), true, widerType(type1, type2));
+    }
+
+    /**
+     * 不同整数类型(short,int,long)之间的运算,直接使用long进行精确运算,而不再转换为double
+     * 结果超出宽化类型的范围时提升为更宽的类型,超出long的范围时则提升为BigInteger
+     */
+    private static Object doIntegralOperations(int type1, Object val1, int operation, int type2, Object val2) {
+        if(val1 == null || val2 == null) {
+            return doMixedNumericOperations(type1, val1, operation, type2, val2);
+        }
+
+        long l = ((Number) val1).longValue();
+        long r = ((Number) val2).longValue();
+        switch(operation) {
+            case ADD:
+            case SUB:
+            case MULT:
+                return doExactIntegralArithmetic(l, operation, r, widerType(type1, type2));
+            case DIV:
+                //除0以及溢出时与double的处理保持一致
+                if(r == 0 || (l == Long.MIN_VALUE && r == -1)) break;
+                return narrowIntegral(l / r, widerType(type1, type2));
+            case MOD:
+                if(r == 0) break;
+                return narrowIntegral(l % r, widerType(type1, type2));
+            case GTHAN:
+                return l > r ? Boolean.TRUE : Boolean.FALSE;
+            case GETHAN:
+                return l >= r ? Boolean.TRUE : Boolean.FALSE;
+            case LTHAN:
+                return l < r ? Boolean.TRUE : Boolean.FALSE;
+            case LETHAN:
+                return l <= r ? Boolean.TRUE : Boolean.FALSE;
+            case EQUAL:
+                return l == r ? Boolean.TRUE : Boolean.FALSE;
+            case NEQUAL:
+                return l != r ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        return doMixedNumericOperations(type1, val1, operation, type2, val2);
+    }
+
+    /**
+     * 整数的加减乘运算,使用long精确计算,结果超出目标类型的范围时提升为更宽的类型,超出long的范围时提升为BigInteger
+     * 同类型以及不同类型的int,long运算均使用此方法,特化的int,long运算在溢出时也由此计算结果
+     */
+    public static Object doExactIntegralArithmetic(long l, int operation, long r, int returnTarget) {
+        try{
+            switch(operation) {
+                case ADD:
+                    return narrowIntegral(Math.addExact(l, r), returnTarget);
+                case SUB:
+                    return narrowIntegral(Math.subtractExact(l, r), returnTarget);
+                case MULT:
+                    return narrowIntegral(Math.multiplyExact(l, r), returnTarget);
+            }
+        } catch(ArithmeticException e) {
+            switch(operation) {
+                case ADD:
+                    return BigInteger.valueOf(l).add(BigInteger.valueOf(r));
+                case SUB:
+                    return BigInteger.valueOf(l).subtract(BigInteger.valueOf(r));
+                default:
+                    return BigInteger.valueOf(l).multiply(BigInteger.valueOf(r));
+            }
+        }
+
+        throw new IllegalArgumentException("not an exact integral operation: " + operation);
+    }
+
+    /** BigInteger与其它整数类型之间的运算,均转换为BigInteger进行精确运算,从而long溢出之后的结果可以继续精确计算 */
+    private static Object doBigIntegerOperations(int type1, Object val1, int operation, int type2, Object val2) {
+        if(val1 == null || val2 == null || operation >= BW_AND) {
+            return doMixedNumericOperations(type1, val1, operation, type2, val2);
+        }
+
+        BigInteger l = val1 instanceof BigInteger ? (BigInteger) val1 : BigInteger.valueOf(((Number) val1).longValue());
+        BigInteger r = val2 instanceof BigInteger ? (BigInteger) val2 : BigInteger.valueOf(((Number) val2).longValue());
+        return doOperationsSameType(DataTypes.BIG_INTEGER, l, operation, r);
+    }
+
+    /** 将整数运算的结果转换为目标类型,超出目标类型范围时提升为更宽的类型 */
+    private static Object narrowIntegral(long value, int returnTarget) {
+        switch(returnTarget) {
+            case DataTypes.W_SHORT:
+                if(value == (short) value) return (short) value;
+            case DataTypes.W_INTEGER:
+                if(value == (int) value) return (int) value;
+            default:
+                return value;
+        }
+    }
+
+    /** 2个数字类型中更宽的类型(装箱之后比较) */
+    private static int widerType(int type1, int type2) {
+        return box(type2) > box(type1) ? box(type2) : box(type1);
+    }
+
     /** 进行窄化的数学运算，先使用double进行处理，最后转换为相应的类型 */
     private static Object doPrimWrapperArithmetic(final Number val1, final int operation, final Number val2, boolean iNumber, int returnTarget) {
         switch(operation) {
@@ -252,7 +421,7 @@ public strictfp class MathProcessor {
             else if(isNumericOperation(type1, val1, operation, type2, val2)) {
                 return doPrimWrapperArithmetic(getNumber(val1, type1),
                         operation,
-                        getNumber(val2, type2), true, box(type2) > box(type1) ? box(type2) : box(type1));
+                        getNumber(val2, type2), true, widerType(type1, type2));
             }
             //非数学操作,并且2者有1个为boolean类型，则表示进行boolean的各项操作
             else if(operation != ADD &&
@@ -428,13 +597,12 @@ public strictfp class MathProcessor {
             case DataTypes.W_INTEGER:
                 switch(operation) {
                     case ADD:
-                        return ((Integer) val1) + ((Integer) val2);
                     case SUB:
-                        return ((Integer) val1) - ((Integer) val2);
+                    case MULT:
+                        //与不同整数类型之间的运算一致,溢出时提升为更宽的类型
+                        return doExactIntegralArithmetic((Integer) val1, operation, (Integer) val2, DataTypes.W_INTEGER);
                     case DIV:
                         return ((Integer) val1).doubleValue() / ((Integer) val2).doubleValue();
-                    case MULT:
-                        return ((Integer) val1) * ((Integer) val2);
                     case POWER:
                         double d = Math.pow((Integer) val1, (Integer) val2);
                         if(d > Integer.MAX_VALUE) return d;
@@ -522,13 +690,12 @@ public strictfp class MathProcessor {
             case DataTypes.W_LONG:
                 switch(operation) {
                     case ADD:
-                        return ((Long) val1) + ((Long) val2);
                     case SUB:
-                        return ((Long) val1) - ((Long) val2);
+                    case MULT:
+                        //与不同整数类型之间的运算一致,溢出时提升为更宽的类型
+                        return doExactIntegralArithmetic((Long) val1, operation, (Long) val2, DataTypes.W_LONG);
                     case DIV:
                         return ((Long) val1).doubleValue() / ((Long) val2).doubleValue();
-                    case MULT:
-                        return ((Long) val1) * ((Long) val2);
                     case POWER:
                         double d = Math.pow((Long) val1, (Long) val2);
                         if(d > Long.MAX_VALUE) return d;
@@ -22,17 +22,15 @@ import org.mvelx.ParserContext;
 import org.mvelx.compiler.AccessorNode;
 import org.mvelx.integration.VariableResolverFactory;
 import org.mvelx.optimizers.AccessorOptimizeType;
-import org.mvelx.optimizers.OptimizerFactory;
 import org.mvelx.optimizers.impl.refl.nodes.BaseAccessor;
 
-import static java.lang.System.currentTimeMillis;
-
 /**
  * 针对内联集合InlineCollection的动态访问器
  *
  * @see org.mvelx.ast.InlineCollectionNode
  * @see org.mvelx.optimizers.impl.refl.nodes.Union
  * 整个逻辑与DynamicGetAccessor或setAccessor相一致
+ * 集合中的元素可以为任意表达式(如方法调用),asm优化器生成时会同时执行这些表达式,因此不在后台线程中优化,始终使用反射访问器
  */
 public class DynamicCollectionAccessor extends BaseAccessor implements DynamicAccessor {
     private ParserContext pCtx;
@@ -43,13 +41,8 @@ public class DynamicCollectionAccessor extends BaseAccessor implements DynamicAc
     private int start;
     private int offset;
 
-    private long stamp;
     private AccessorOptimizeType type;
 
-    private int runCount;
-
-    private boolean opt = false;
-
     private AccessorNode _safeAccessor;
     private AccessorNode _accessor;
 
@@ -65,52 +58,18 @@ public class DynamicCollectionAccessor extends BaseAccessor implements DynamicAc
         this.property = property;
         this.start = start;
         this.offset = offset;
-
-        stamp = currentTimeMillis();
     }
 
     public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
-        //todo 暂时屏蔽
-        /*
-        if(!opt) {
-            if(++runCount > DynamicOptimizer.tenuringThreshold) {
-                if((currentTimeMillis() - stamp) < DynamicOptimizer.timeSpan) {
-                    opt = true;
-
-                    return optimize(pCtx, ctx, elCtx, variableFactory);
-                } else {
-                    runCount = 0;
-                    stamp = currentTimeMillis();
-                }
-            }
-        }
-        */
-
         return _accessor.getValue(ctx, elCtx, variableFactory);
     }
 
     public Object setValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory, Object value) {
-        runCount++;
         return _accessor.setValue(ctx, elCtx, variableFactory, value);
     }
 
-    private Object optimize(ParserContext pCtx, Object ctx, Object elCtx, VariableResolverFactory variableResolverFactory) {
-
-        if(DynamicOptimizer.isOverloaded()) {
-            DynamicOptimizer.enforceTenureLimit();
-        }
-
-        _accessor = OptimizerFactory.getAccessorCompiler("ASM").optimizeCollection(pCtx, rootObject, colType,
-                property, start, offset, ctx, elCtx, variableResolverFactory);
-        return _accessor.getValue(ctx, elCtx, variableResolverFactory);
-    }
-
-
     public void deoptimize() {
         this._accessor = this._safeAccessor;
-        opt = false;
-        runCount = 0;
-        stamp = currentTimeMillis();
     }
 
     public Class getKnownEgressType() {
@@ -1,17 +1,53 @@
 package org.mvelx.optimizers.dynamic;
 
+import com.google.common.collect.ImmutableSet;
+import lombok.extern.slf4j.Slf4j;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.AccessorNode;
+import org.mvelx.integration.VariableResolver;
 import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.BaseVariableResolverFactory;
+import org.mvelx.integration.impl.SimpleValueResolver;
 import org.mvelx.optimizers.AccessorOptimizeType;
-import org.mvelx.optimizers.AccessorOptimizer;
 import org.mvelx.optimizers.OptimizerFactory;
-import org.mvelx.optimizers.impl.refl.nodes.BaseAccessor;
+import org.mvelx.optimizers.impl.refl.nodes.*;
 
-import static java.lang.System.currentTimeMillis;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-/** 用于执行get访问的动态访问器(如字段读取，方法调用等) */
+/**
+ * 用于执行get访问的动态访问器(如字段读取，方法调用等)
+ * 访问器先使用反射方式执行并统计调用次数,在达到优化阈值之后提交至后台编译线程生成asm访问器,
+ * 生成完毕之后通过cas替换当前访问器,调用线程不会等待优化过程
+ * 由于asm优化器在生成代码的同时会执行一次相应的表达式,因此只对没有副作用的属性访问链进行优化
+ * 调用时的变量工厂在调用结束之后会被释放或复用,因此提交时在调用线程中先读取根变量的值,
+ * 后台只使用包含此值的快照工厂生成代码,不会访问调用时的变量工厂
+ */
+@Slf4j
 public class DynamicGetAccessor extends BaseAccessor implements DynamicAccessor {
+    /** 未达到优化阈值,正在计数 */
+    private static final int STATE_COLD = 0;
+    /** 已提交至后台编译队列 */
+    private static final int STATE_QUEUED = 1;
+    /** 已使用优化后的访问器 */
+    private static final int STATE_OPTIMIZED = 2;
+    /** 不能优化或优化失败,将一直使用反射访问器 */
+    private static final int STATE_FAILED = 3;
+
+    /** 可以在后台重复执行的访问节点,这些节点只读取数据,重复执行不会产生副作用 */
+    private static final Set<Class<?>> sideEffectFreeNodes = ImmutableSet.of(
+            VariableAccessor.class, IndexedVariableAccessor.class, ThisValueAccessor.class,
+            FieldAccessor.class, FieldAccessorNH.class, GetterAccessor.class, GetterAccessorNH.class,
+            StaticVarAccessor.class, StaticVarAccessorNH.class, StaticReferenceAccessor.class,
+            MapAccessor.class, ListAccessor.class, ArrayAccessor.class, ArrayLength.class, IndexedCharSeqAccessor.class
+    );
+
+    private static final AtomicIntegerFieldUpdater<DynamicGetAccessor> stateUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(DynamicGetAccessor.class, "state");
+    private static final AtomicReferenceFieldUpdater<DynamicGetAccessor, AccessorNode> accessorUpdater =
+            AtomicReferenceFieldUpdater.newUpdater(DynamicGetAccessor.class, AccessorNode.class, "_accessor");
+
     /** 相应的表达式 */
     private char[] expr;
     /** 当前处理的起始点 */
@@ -19,24 +55,22 @@ public class DynamicGetAccessor extends BaseAccessor implements DynamicAccessor
     /** 当前处理的语句长度 */
     private int offset;
 
-    /** 上一次优化访问时间(即在一定时间内上一次统计时间) */
-    private long stamp;
     /** 处理类型，有0和3可选，分别表示获取和对象创建(2的访问将转由collection处理) */
     private AccessorOptimizeType type;
 
-    /** 在时间区间内的运行统计次数 */
+    /** 当前访问点的调用次数,多线程下允许有少量的计数丢失 */
     private int runCount;
 
-    /** 是否作过优化 */
-    private boolean opt = false;
+    /** 当前的优化状态 */
+    private volatile int state;
 
     /** 当前解析上下文 */
     private ParserContext pCtx;
 
     /** 当前安全的访问器(即可正常执行的访问器) */
-    private AccessorNode _safeAccessor;
+    private final AccessorNode _safeAccessor;
     /** 当前的优化访问器 */
-    private AccessorNode _accessor;
+    private volatile AccessorNode _accessor;
 
     /** 使用解析上下文, 当前区间的表达式,以及指定的访问器创建结构 */
     public DynamicGetAccessor(ParserContext pCtx, char[] expr, int start, int offset, AccessorOptimizeType type, Class lastCtxClass, AccessorNode _accessor) {
@@ -50,58 +84,104 @@ public class DynamicGetAccessor extends BaseAccessor implements DynamicAccessor
         this.offset = offset;
 
         this.pCtx = pCtx;
-        stamp = currentTimeMillis();
+        this.state = isSideEffectFree() ? STATE_COLD : STATE_FAILED;
+    }
+
+    /** 判断当前的反射访问链是否可以在后台重复执行,对象创建以及方法调用均不能重复执行 */
+    private boolean isSideEffectFree() {
+        if(type != AccessorOptimizeType.ACCESS_REGULAR) {
+            return false;
+        }
+
+        for(AccessorNode node = _safeAccessor; node != null; node = node.getNextNode()) {
+            if(!sideEffectFreeNodes.contains(node.getClass())) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     public Object getValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
-        //todo 取消相应的优化，后续再支持
-        /*
-        if(!opt) {
-            //这里即尝试优化，即如果次数超过指定计数，并且时间在指定区间内，即在100ms内运行超过50次
-            if(++runCount > DynamicOptimizer.tenuringThreshold) {
-                if((currentTimeMillis() - stamp) < DynamicOptimizer.timeSpan) {
-                    opt = true;
-                    try{
-                        return optimize(ctx, elCtx, variableFactory);
-                    } catch(OptimizationNotSupported ex) {
-                        // If optimization fails then, rather than fail evaluation, fallback to use safe reflective accessor
-                    }
-                } else {
-                    runCount = 0;
-                    stamp = currentTimeMillis();
-                }
+        AccessorNode accessor = _accessor;
+        if(accessor == _safeAccessor) {
+            if(state == STATE_COLD && ++runCount >= DynamicOptimizer.getTenuringThreshold()) {
+                submitOptimize(ctx, elCtx, variableFactory);
             }
+            return accessor.getValue(ctx, elCtx, variableFactory);
         }
-        */
 
-        return _accessor.getValue(ctx, elCtx, variableFactory);
+        try{
+            return accessor.getValue(ctx, elCtx, variableFactory);
+        } catch(ClassCastException e) {
+            //优化访问器是按照优化时的类型生成的,类型不再匹配时回退至反射访问器,并且不再优化
+            log.debug("优化访问器类型不匹配,回退至反射访问:{}", e.getMessage());
+            state = STATE_FAILED;
+            accessorUpdater.compareAndSet(this, accessor, _safeAccessor);
+            return _safeAccessor.getValue(ctx, elCtx, variableFactory);
+        }
     }
 
     public Object setValue(Object ctx, Object elCtx, VariableResolverFactory variableFactory, Object value) {
-        runCount++;
         return _accessor.setValue(ctx, elCtx, variableFactory, value);
     }
 
-    /** 执行实际的优化过程 */
-    private Object optimize(Object ctx, Object elCtx, VariableResolverFactory variableResolverFactory) {
-        //过载保护，避免无限创建新类(其实没什么用)
-        if(DynamicOptimizer.isOverloaded()) {
-            DynamicOptimizer.enforceTenureLimit();
-        }
-
-        //这里采用asm优化器来进行优化,即直接执行相应的字节码
-        AccessorOptimizer ao = OptimizerFactory.getAccessorCompiler("ASM");
-        switch(type) {
-            //正常对象访问
-            case ACCESS_REGULAR:
-                _accessor = ao.optimizeAccessor(pCtx, expr, start, offset, ctx, elCtx, variableResolverFactory, null);
-                return ao.getResultOptPass();
-            //对象创建过程
-            case ACCESS_OBJ_CREATION:
-                _accessor = ao.optimizeObjectCreation(pCtx, expr, start, offset, ctx, elCtx, variableResolverFactory);
-                return _accessor.getValue(ctx, elCtx, variableResolverFactory);
-            default:
-                throw new UnsupportedOperationException("不支持的优化类型操作:" + type);
+    /** 将当前访问点提交至后台进行优化,如果编译队列已满,则重新计数之后再尝试 */
+    private void submitOptimize(Object ctx, Object elCtx, VariableResolverFactory variableFactory) {
+        if(!stateUpdater.compareAndSet(this, STATE_COLD, STATE_QUEUED)) {
+            return;
+        }
+
+        VariableResolverFactory snapshot;
+        try{
+            snapshot = snapshotFactory(variableFactory);
+        } catch(RuntimeException e) {
+            //根变量当前不能读取,由反射访问器正常处理,之后再尝试
+            runCount = 0;
+            stateUpdater.compareAndSet(this, STATE_QUEUED, STATE_COLD);
+            return;
+        }
+
+        if(!DynamicOptimizer.submitBackgroundCompile(() -> optimize(ctx, elCtx, snapshot))) {
+            runCount = 0;
+            stateUpdater.compareAndSet(this, STATE_QUEUED, STATE_COLD);
+        }
+    }
+
+    /** 在调用线程中读取访问链的根变量,创建只包含此变量值的快照工厂,访问链不以变量开头时为空的快照工厂 */
+    private VariableResolverFactory snapshotFactory(VariableResolverFactory variableFactory) {
+        if(_safeAccessor instanceof IndexedVariableAccessor) {
+            int register = ((IndexedVariableAccessor) _safeAccessor).getRegister();
+            return new SnapshotResolverFactory(_safeAccessor.nodeExpr(), register, variableFactory.getIndexedVariableResolver(register).getValue());
+        }
+        if(_safeAccessor instanceof VariableAccessor) {
+            String name = _safeAccessor.nodeExpr();
+            return new SnapshotResolverFactory(name, -1, variableFactory.getVariableResolver(name).getValue());
+        }
+        return new SnapshotResolverFactory(null, -1, null);
+    }
+
+    /** 执行实际的优化过程,在后台编译线程中运行,生成成功之后替换掉反射访问器 */
+    private void optimize(Object ctx, Object elCtx, VariableResolverFactory snapshot) {
+        AccessorNode optimized;
+        try{
+            //过载保护，避免无限创建新类
+            if(DynamicOptimizer.isOverloaded()) {
+                DynamicOptimizer.enforceTenureLimit();
+            }
+
+            //这里采用asm优化器来进行优化,即直接执行相应的字节码
+            optimized = OptimizerFactory.getAccessorCompiler("ASM").optimizeAccessor(pCtx, expr, start, offset, ctx, elCtx, snapshot, null);
+        } catch(Throwable e) {
+            //优化失败时继续使用反射访问器
+            log.debug("后台优化失败,继续使用反射访问:{}", nodeExpr(), e);
+            stateUpdater.compareAndSet(this, STATE_QUEUED, STATE_FAILED);
+            return;
+        }
+
+        //在此期间如果已经被反优化,则放弃此次优化结果
+        if(stateUpdater.compareAndSet(this, STATE_QUEUED, STATE_OPTIMIZED) && accessorUpdater.compareAndSet(this, _safeAccessor, optimized)) {
+            DynamicOptimizer.optimized();
         }
     }
 
@@ -109,9 +189,10 @@ public class DynamicGetAccessor extends BaseAccessor implements DynamicAccessor
     public void deoptimize() {
         //重置为安全访问器,即反射访问的方式
         this._accessor = this._safeAccessor;
-        opt = false;
         runCount = 0;
-        stamp = currentTimeMillis();
+        if(state != STATE_FAILED) {
+            state = STATE_COLD;
+        }
     }
 
     /** 声明类型为安全访问顺的声明类型 */
@@ -128,4 +209,48 @@ public class DynamicGetAccessor extends BaseAccessor implements DynamicAccessor
     public Class<?> getLastCtxType() {
         return _accessor.getLastCtxType();
     }
+
+    /**
+     * 后台优化时使用的变量工厂,只包含在调用线程中读取的根变量值
+     * 根变量按下标访问时以相同的下标存储,以使生成的代码与反射访问器一样按下标读取变量
+     */
+    private static class SnapshotResolverFactory extends BaseVariableResolverFactory {
+        private final boolean indexed;
+
+        SnapshotResolverFactory(String name, int register, Object value) {
+            this.indexed = register >= 0;
+            if(indexed) {
+                indexedVariableNames = new String[register + 1];
+                indexedVariableResolvers = new VariableResolver[register + 1];
+                indexedVariableNames[register] = name;
+                indexedVariableResolvers[register] = new SimpleValueResolver(value);
+            } else if(name != null) {
+                variableResolvers.put(name, new SimpleValueResolver(value));
+            }
+        }
+
+        public VariableResolver createVariable(String name, Object value) {
+            throw new UnsupportedOperationException("snapshot factory is read-only: " + name);
+        }
+
+        public VariableResolver createVariable(String name, Object value, Class<?> type) {
+            throw new UnsupportedOperationException("snapshot factory is read-only: " + name);
+        }
+
+        public VariableResolver getIndexedVariableResolver(int index) {
+            return indexedVariableResolvers[index];
+        }
+
+        public boolean isTarget(String name) {
+            return variableResolvers.containsKey(name) || variableIndexOf(name) != -1;
+        }
+
+        public boolean isResolvable(String name) {
+            return isTarget(name);
+        }
+
+        public boolean isIndexedFactory() {
+            return indexed;
+        }
+    }
 }
@@ -9,6 +9,11 @@ import org.mvelx.optimizers.AccessorOptimizeType;
 import org.mvelx.optimizers.AccessorOptimizer;
 import org.mvelx.optimizers.impl.asm.AsmAccessorOptimizer;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -21,6 +26,7 @@ import static org.mvelx.optimizers.OptimizerFactory.getAccessorCompiler;
  * 用于描述一个可以动态切换访问方式的优化器
  * 其优化器通过创建出2个版本的访问器,并且在运行期间根据运行的效果进行相应的运行状态切换
  * 当前可用的优化器分别为反射调用和asm字节码执行,这里即是通过切换这2种来达到动态访问的目的
+ * 每个访问点先使用反射访问并进行调用计数,在调用次数达到阈值之后,由后台编译线程异步生成asm访问器,生成完毕之后再替换掉反射访问器
  */
 public class DynamicOptimizer extends AbstractOptimizer implements AccessorOptimizer {
     /** 用于支持第一步的优化访问，表示先使用此优化器进行访问,这里即通过反射的方式处理 */
@@ -28,10 +34,19 @@ public class DynamicOptimizer extends AbstractOptimizer implements AccessorOptim
 
     /** 当前所使用的优化器加载类 */
     private volatile static DynamicClassLoader classLoader;
-    /** 优化调用次数，表示某个调用在一定区间内调用了超过多少次 */
-    public static int tenuringThreshold = 50;
-    /** 优化的调用区间,即表示某个方法在某个频率内调用很频繁 */
-    public static long timeSpan = 100;
+    /** 优化调用次数，表示某个访问点调用超过多少次之后进行字节码优化,可通过系统属性mvelx.dynamic.threshold配置 */
+    private static volatile int tenuringThreshold = Integer.getInteger("mvelx.dynamic.threshold", 50);
+    /** 后台编译队列的最大长度,队列已满时优化请求将被丢弃,相应的访问点在重新计数之后再尝试 */
+    private static final int compileQueueSize = Integer.getInteger("mvelx.dynamic.queueSize", 256);
+    /** 后台编译线程,所有的asm访问器均在此单一线程中生成,以避免在调用线程中进行字节码生成 */
+    private static final ThreadPoolExecutor backgroundCompiler = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(compileQueueSize), r -> {
+        Thread thread = new Thread(r, "mvelx-dynamic-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** 总共在后台优化成功了多少个访问点 */
+    private static final AtomicLong totalOptimized = new AtomicLong();
     /**
      * 在当前执行器内最大的优化上限，表示某些方法不会作优化处理(在达到上限之后，再次处理将会通过某种手段将原来优化的方法重新还原,
      * 原因在于保证不会大量产生新类)
@@ -87,6 +102,16 @@ public class DynamicOptimizer extends AbstractOptimizer implements AccessorOptim
         }
     }
 
+    /** 将预先生成的反射访问器包装为动态访问器,执行次数达到阈值之后同样在后台优化为asm访问器 */
+    public static AccessorNode wrapAccessor(ParserContext pCtx, char[] property, int start, int offset, AccessorNode accessor) {
+        readLock.lock();
+        try{
+            return classLoader.registerDynamicAccessor(new DynamicGetAccessor(pCtx, property, start, offset, AccessorOptimizeType.ACCESS_REGULAR, null, accessor));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
     /** 进行动态的set方法调用 */
     public AccessorNode optimizeSetAccessor(ParserContext pCtx, char[] property, int start, int offset, Object ctx, Object thisRef,
                                             VariableResolverFactory factory, boolean rootThisRef, Object value, Class valueType) {
@@ -129,6 +154,39 @@ public class DynamicOptimizer extends AbstractOptimizer implements AccessorOptim
         }
     }
 
+    /** 获取访问点进行优化前需要达到的调用次数 */
+    public static int getTenuringThreshold() {
+        return tenuringThreshold;
+    }
+
+    /** 设置访问点进行优化前需要达到的调用次数,只影响还未提交优化的访问点 */
+    public static void setTenuringThreshold(int tenuringThreshold) {
+        if(tenuringThreshold < 1) {
+            throw new IllegalArgumentException("tenuringThreshold必须大于0:" + tenuringThreshold);
+        }
+        DynamicOptimizer.tenuringThreshold = tenuringThreshold;
+    }
+
+    /** 获取总共在后台优化成功的访问点数量 */
+    public static long getTotalOptimized() {
+        return totalOptimized.get();
+    }
+
+    /** 提交一个后台优化任务,如果编译队列已满则返回false */
+    static boolean submitBackgroundCompile(Runnable task) {
+        try{
+            backgroundCompiler.execute(task);
+            return true;
+        } catch(RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /** 记录一次成功的后台优化 */
+    static void optimized() {
+        totalOptimized.incrementAndGet();
+    }
+
     /** 当前优化器是否已经过载 */
     public static boolean isOverloaded() {
         return classLoader.isOverloaded();
@@ -46,10 +46,10 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
     private static final org.mvelx.asm.commons.Method METHOD_GET_KNOWN_EGRESS_TYPE = org.mvelx.asm.commons.Method.getMethod("Class getKnownEgressType()");
     private static final org.mvelx.asm.commons.Method METHOD_TO_STRING = org.mvelx.asm.commons.Method.getMethod("String toString()");
 
-    private static final int ACCESSOR_LOCAL_IDX_CTX = 1;
-    private static final int ACCESSOR_LOCAL_IDX_EL_CTX = 2;
-    private static final int ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY = 3;
-    private static final int ACCESSOR_LOCAL_IDX_SET_VALUE = 4;
+    private static final int ACCESSOR_ARG_IDX_CTX = 0;
+    private static final int ACCESSOR_ARG_IDX_EL_CTX = 1;
+    private static final int ACCESSOR_ARG_IDX_VARIABLE_FACTORY = 2;
+    private static final int ACCESSOR_ARG_IDX_SET_VALUE = 3;
 
     private static final AtomicLong CLASS_NAME_POSTFIX = new AtomicLong(System.currentTimeMillis());
 
@@ -208,7 +208,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         //无前半部分，则直接使用ctx对象
         else {
             debug("ALOAD 1");
-            mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+            mv.loadArg(ACCESSOR_ARG_IDX_CTX);
         }
 
         try{
@@ -243,7 +243,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                     generateLiteralOrExecuteStatement(keyEs, null, null);
                     //value
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                     //可能的值类型转换
                     if(value != null && returnType != value.getClass()) {
                         generateDataConversionCode(returnType);
@@ -258,7 +258,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                     //返回参数值 与 org.mvelx.optimizers.impl.refl.nodes.MapAccessor 相一致
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                 }
                 //list类调用
                 else if(ctx instanceof List) {
@@ -273,7 +273,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                     unwrapPrimitive(int.class);
                     //value
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                     //可能的值类型转换
                     if(value != null && !value.getClass().isAssignableFrom(returnType)) {
                         generateDataConversionCode(returnType);
@@ -285,7 +285,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                     //返回 set value
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                 }
                 //自定义属性类操作
                 else if(PropertyHandlerFactory.hasPropertyHandler(ctx.getClass())) {
@@ -309,7 +309,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                     //value
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                     //value类型转换
                     if(type.isPrimitive()) {
                         unwrapPrimitive(type);
@@ -324,7 +324,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                     //返回参数值
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                 } else {
                     throw new PropertyAccessException("cannot bind to collection property: " + new String(expr)
                             + ": not a recognized collection type: " + ctx.getClass(), expr, start, pCtx);
@@ -351,10 +351,10 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
             //触发全局set/get监听器
             if(GlobalListenerFactory.hasSetListeners()) {
                 //调用 GlobalListenerFactory void notifySetListeners(Object target, String name, VariableResolverFactory variableFactory, Object value)
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+                mv.loadArg(ACCESSOR_ARG_IDX_CTX);
                 mv.push(tk);
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
+                mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                 mv.invokeStatic(Type.getType(GlobalListenerFactory.class), org.mvelx.asm.commons.Method.getMethod("void notifySetListeners(Object, String, org.mvelx.integration.VariableResolverFactory, Object)"));
 
                 GlobalListenerFactory.notifySetListeners(ctx, tk, variableFactory, value);
@@ -390,7 +390,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                     //current.field = value
 
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
 
                     //以下逻辑实现
                     /*
@@ -413,7 +413,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                     mv.visitLabel(primitiveAndNotNullLabel);
 
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                     //解包
                     unwrapPrimitive(fld.getType());
 
@@ -427,7 +427,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                     fld.set(ctx, value);
                 } else {
                     debug("ALOAD 4");
-                    mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                    mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
 
                     //潜在的类型转换
                     if(value != null && !fld.getType().isAssignableFrom(value.getClass())) {
@@ -439,6 +439,9 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                         generateDataConversionCode(fld.getType());
                         //字段赋值
                         fld.set(ctx, DataConversion.convert(value, fld.getType()));
+                    } else {
+                        //字段赋值
+                        fld.set(ctx, value);
                     }
 
                     checkCast(fld.getType());
@@ -453,7 +456,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                 //返回参数值
                 debug("ALOAD 4");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
             }
             //方法
             else if(member != null) {
@@ -479,7 +482,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                  */
 
                 debug("ALOAD 4");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
 
                 Class methodParamType = method.getParameterTypes()[0];
 
@@ -517,7 +520,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                         mv.visitLabel(primitiveNotNullLabel);
                         //加载参数值，并解馋
                         debug("ALOAD 4");
-                        mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                        mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                         unwrapPrimitive(methodParamType);
                     } else {
                         checkCast(methodParamType);
@@ -534,7 +537,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                 //返回参数值
                 debug("ALOAD 4");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
             }
             //支持map的.式调用，如map.a=b，这种调用方式
             else if(ctx instanceof Map) {
@@ -548,7 +551,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                 mv.push(tk);
                 //value
                 debug("ALOAD 4");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
                 //op put(k,v)
                 debug("INVOKEINTERFACE java/util/Map.put");
                 mv.invokeInterface(Type.getType(Map.class), org.mvelx.asm.commons.Method.getMethod("Object put(Object,Object)"));
@@ -557,7 +560,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
 
                 //返回参数值
                 debug("ALOAD 4");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_SET_VALUE);
+                mv.loadArg(ACCESSOR_ARG_IDX_SET_VALUE);
 
                 //noinspection unchecked
                 ((Map) ctx).put(tk, value);
@@ -718,11 +721,16 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                         break;
                 }
 
+                //nullSafe访问时中间值为null，后续的调用无法得到相应的类型来生成指令，因此同样转由reflect处理
+                if(curr == null && cursor < end && isNullSafe()) {
+                    throw new OptimizationNotSupported();
+                }
+
                 //在第一次解析整个表达式时，asm优化是不支持 nullSafe的，因为这种情况下调用提前返回，会导致后续的调用并没有生成相应的指令
                 //这里的异常信息会返回给astNode，从而转由reflect来重新解析并处理
                 if(fields == -1) {
                     if(curr == null) {
-                        if(nullSafe) {
+                        if(isNullSafe()) {
                             throw new OptimizationNotSupported();
                         }
                         break;
@@ -734,7 +742,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                 first = false;
 
                 //这里当前对象并不为null，因此为支持nullSafe生成相应指令
-                if(nullSafe && cursor < end) {
+                if(isNullSafe() && cursor < end) {
                     debug("DUP");
                     mv.dup();
 
@@ -816,9 +824,9 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         //支持全局监听器
         if(member != null && GlobalListenerFactory.hasGetListeners()) {
             //GlobalListenerFactory.notifyGetListeners(Object target, String name, VariableResolverFactory variableFactory)
-            mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+            mv.loadArg(ACCESSOR_ARG_IDX_CTX);
             mv.push(member.getName());
-            mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
+            mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
 
             mv.invokeStatic(Type.getType(GlobalListenerFactory.class), org.mvelx.asm.commons.Method.getMethod("void notifyGetListeners(Object, String, org.mvelx.integration.VariableResolverFactory)"));
 
@@ -829,7 +837,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
             //支持首单词为this,即访问当前对象
             if("this".equals(property)) {
                 debug("ALOAD 2");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_EL_CTX);
+                mv.loadArg(ACCESSOR_ARG_IDX_EL_CTX);
                 return thisRef;
             }
             //如果变量解析器能够解析此变量，则使用变量解析器，变量解析器敢只有在first时才能解析，
@@ -860,7 +868,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
             //其它情况下，因为要访问此属性，先把当前对象加入栈中
             else {
                 debug("ALOAD 1");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+                mv.loadArg(ACCESSOR_ARG_IDX_CTX);
             }
         }
 
@@ -937,7 +945,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
             return o;
         }
         //map属性获取的方式(前提是有此key或者是允许null安全),即如果map没有此属性，也仍然不能访问此值
-        else if(ctx instanceof Map && (((Map) ctx).containsKey(property) || nullSafe)) {
+        else if(ctx instanceof Map && (((Map) ctx).containsKey(property) || isNullSafe())) {
             checkCast(Map.class);
 
             debug("LDC: \"" + property + "\"");
@@ -1135,7 +1143,6 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         mv.visitJumpInsn(IFEQ, falseLabel);
 
         //返回数据
-        mv.visitVarInsn(ALOAD, 4);
         mv.loadLocal(localIdxMethod);
         mv.returnValue();
 
@@ -1188,7 +1195,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         //如果是首解析，先加载当前对象至栈中，以便访问数据
         if(first) {
             debug("ALOAD 1");
-            mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+            mv.loadArg(ACCESSOR_ARG_IDX_CTX);
         }
 
         ExecutableStatement compiled = (ExecutableStatement) ParseTools.subCompileExpression(tk.toCharArray(), pCtx);
@@ -1372,7 +1379,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                     //执行N次 params[i] = es.getValue(ctx,factory)
                     for(int i = 0; i < subEss.length; i++) {
                         debug("ALOAD 4");
-                        mv.visitVarInsn(ALOAD, 4);
+                        mv.loadLocal(localIdxParams);
                         pushInt(i);
 
                         //es.getValue(ctx,factory), 其中es使用位置字段代替
@@ -1404,11 +1411,11 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                 //相应的functionInstance已经在栈中了,接下来准备相应的参数
 
                 debug("ALOAD 1");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+                mv.loadArg(ACCESSOR_ARG_IDX_CTX);
                 debug("ALOAD 2");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_EL_CTX);
+                mv.loadArg(ACCESSOR_ARG_IDX_EL_CTX);
                 debug("ALOAD 3");
-                mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
+                mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
                 debug("ALOAD 4");
                 mv.loadLocal(localIdxParams);
 
@@ -1517,7 +1524,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         //首次调用，调用方法需要 实例对象，因此加载 实例
         if(first) {
             debug("ALOAD 1 (D) ");
-            mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+            mv.loadArg(ACCESSOR_ARG_IDX_CTX);
         }
 
         if(m == null) {
@@ -1825,7 +1832,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
             debug("ALOAD 0");
             cv.loadThis();
             debug("ALOAD " + (i + 1));
-            cv.loadLocal(i + 1);
+            cv.loadArg(i);
             debug("PUTFIELD p" + i);
             cv.putField(Type.getType(className), "p" + i, Type.getType(ExecutableStatement.class));
         }
@@ -1889,8 +1896,6 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
                 _getAccessor(((Map) o).get(item), type);
                 //op put
                 debug("INVOKEINTERFACE java/util/Map.put");
-                mv.visitMethodInsn(INVOKEINTERFACE, "java/util/Map", "put",
-                        "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", true);
                 mv.invokeInterface(Type.getType(Map.class), org.mvelx.asm.commons.Method.getMethod("Object put(Object,Object)"));
 
                 //删除返回数据
@@ -2067,6 +2072,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         _initJit4GetValue();
 
         compiledInputs = new ArrayList<>();
+        this.expr = property;
         this.start = cursor = start;
         this.end = start + offset;
         this.length = this.end - this.start;
@@ -2507,7 +2513,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
     /** 从变量工厂中通过下标获取相应的值 */
     private void generateLoadVariableByIdx(int pos) {
         debug("ALOAD 3");
-        mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
+        mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
 
         debug("PUSH IDX VAL =" + pos);
         pushInt(pos);
@@ -2526,7 +2532,7 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
     /** 根据名字从变量工厂中获取相应的数据值 */
     private void generateLoadVariableByName(String name) {
         debug("ALOAD 3");
-        mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
+        mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
 
         debug("LDC \"" + name + "\"");
         mv.push(name);
@@ -2579,10 +2585,10 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         mv.push(member.getName());
 
         debug("ALOAD 1");
-        mv.loadLocal(ACCESSOR_LOCAL_IDX_CTX);
+        mv.loadArg(ACCESSOR_ARG_IDX_CTX);
 
         debug("ALOAD 3");
-        mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
+        mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
 
         debug("INVOKEINTERFACE PropertyHandler.getProperty");
         mv.invokeInterface(Type.getType(PropertyHandler.class), org.mvelx.asm.commons.Method.getMethod("Object getProperty(String, Object, org.mvelx.integration.VariableResolverFactory)"));
@@ -2605,9 +2611,9 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         generateGetEsField(esIdx);
         //获取相应的参数信息
         debug("ALOAD 2");
-        mv.loadLocal(ACCESSOR_LOCAL_IDX_EL_CTX);
+        mv.loadArg(ACCESSOR_ARG_IDX_EL_CTX);
         debug("ALOAD 3");
-        mv.loadLocal(ACCESSOR_LOCAL_IDX_VARIABLE_FACTORY);
+        mv.loadArg(ACCESSOR_ARG_IDX_VARIABLE_FACTORY);
         debug("INVOKEINTERFACE ExecutableStatement.getValue");
         mv.invokeInterface(Type.getType(ExecutableStatement.class), org.mvelx.asm.commons.Method.getMethod("Object getValue(Object, org.mvelx.integration.VariableResolverFactory)"));
     }
@@ -2623,6 +2629,11 @@ public class AsmAccessorOptimizer extends AbstractOptimizer implements AccessorO
         mv.invokeStatic(Type.getType(DataConversion.class), org.mvelx.asm.commons.Method.getMethod("Object convert(Object, Class)"));
     }
 
+    /** 当前是否为nullSafe访问,即通过?.声明或者在解析配置中统一开启 */
+    private boolean isNullSafe() {
+        return nullSafe || (pCtx != null && pCtx.getParserConfiguration().isNullSafe());
+    }
+
     /** 输出调试信息 */
     private void dumpAdvancedDebugging() {
         if(buildLog == null) {
@@ -0,0 +1,508 @@
+package org.mvelx.optimizers.impl.asm;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.mvelx.Operator;
+import org.mvelx.asm.ClassWriter;
+import org.mvelx.asm.Label;
+import org.mvelx.asm.Opcodes;
+import org.mvelx.asm.Type;
+import org.mvelx.asm.commons.GeneratorAdapter;
+import org.mvelx.asm.commons.Method;
+import org.mvelx.ast.*;
+import org.mvelx.compiler.*;
+import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.math.MathProcessor;
+import org.mvelx.optimizers.OptimizationNotSupported;
+import org.mvelx.util.JitClassLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mvelx.Operator.*;
+import static org.mvelx.asm.Opcodes.*;
+
+/**
+ * 将整个编译表达式的节点链编译为一个新类的编译器，新类继承于ByteCodeCompiledExpression
+ * 与AsmAccessorOptimizer只处理属性、方法等访问链不同，这里处理的是MVELRuntime中的整个执行过程，
+ * 即四则运算、&& ||、三元运算以及if/while/for代码块均直接生成为字节码，以便由jvm进行进一步的内联及优化
+ * 生成的执行过程与MVELRuntime的处理逻辑保持一致，不能直接生成的节点(如foreach或属性访问)则回调原节点进行处理
+ */
+@Slf4j
+public class AsmExpressionCompiler {
+    private static final int OPCODES_VERSION = Opcodes.V1_8;
+
+    private static final AtomicLong CLASS_NAME_POSTFIX = new AtomicLong(System.currentTimeMillis());
+
+    private static final Type TYPE_OBJECT = Type.getType(Object.class);
+    private static final Type TYPE_BOOLEAN = Type.getType(Boolean.class);
+    private static final Type TYPE_BASE = Type.getType(ByteCodeCompiledExpression.class);
+    private static final Type TYPE_COMPILED = Type.getType(CompiledExpression.class);
+    private static final Type TYPE_STATEMENT = Type.getType(ExecutableStatement.class);
+    private static final Type TYPE_NODE = Type.getType(ASTNode.class);
+    private static final Type TYPE_FACTORY = Type.getType(VariableResolverFactory.class);
+    private static final Type TYPE_MATH = Type.getType(MathProcessor.class);
+    private static final Type TYPE_BINARY_OPERATION = Type.getType(BinaryOperation.class);
+
+    private static final Method METHOD_CONSTRUCTOR = new Method("<init>", Type.VOID_TYPE, new Type[]{TYPE_COMPILED,
+            Type.getType(Object[].class), Type.getType(ASTNode[].class), Type.getType(ExecutableStatement[].class)});
+    private static final Method METHOD_EXECUTE = Method.getMethod("Object executeCompiled(Object, org.mvelx.integration.VariableResolverFactory)");
+    private static final Method METHOD_TILT_FLAG = Method.getMethod("boolean tiltFlag()");
+    private static final Method METHOD_SET_TILT_FLAG = Method.getMethod("void setTiltFlag(boolean)");
+    private static final Method METHOD_TO_BOOLEAN = Method.getMethod("boolean toBoolean(Object)");
+    private static final Method METHOD_OPERATE = Method.getMethod("Object operate(Object, int, Object)");
+    private static final Method METHOD_BLOCK_FACTORY = Method.getMethod("org.mvelx.integration.VariableResolverFactory blockFactory(org.mvelx.integration.VariableResolverFactory)");
+    private static final Method METHOD_EXECUTION_FACTORY = Method.getMethod("org.mvelx.integration.VariableResolverFactory executionFactory(org.mvelx.integration.VariableResolverFactory)");
+    private static final Method METHOD_DO_OPERATIONS = Method.getMethod("Object doOperations(int, Object, int, int, Object)");
+    private static final Method METHOD_INT_OPTIMIZED_OPERATION = Method.getMethod("Object doIntOptimizedOperation(Object, int, Object)");
+    private static final Method METHOD_REDUCED_VALUE = Method.getMethod("Object getReducedValueAccelerated(Object, Object, org.mvelx.integration.VariableResolverFactory)");
+    private static final Method METHOD_GET_VALUE = Method.getMethod("Object getValue(Object, Object, org.mvelx.integration.VariableResolverFactory)");
+    private static final Method METHOD_BOOLEAN_VALUE = Method.getMethod("boolean booleanValue()");
+
+    /** 生成代码中引用的常量 */
+    private final List<Object> literals = new ArrayList<>();
+    /** 生成代码中回调的原节点 */
+    private final List<ASTNode> nodes = new ArrayList<>();
+    /** 生成代码中引用的内部语句 */
+    private final List<ExecutableStatement> statements = new ArrayList<>();
+
+    private String className;
+    private Type classType;
+    private ClassWriter cw;
+    /** 已生成的代码块方法数 */
+    private int blockCount = 0;
+
+    private AsmExpressionCompiler() {
+    }
+
+    /**
+     * 将编译表达式整体编译为字节码类
+     * 如果在生成过程中出现不能处理的情况，则直接返回原来的编译表达式，即仍使用解释执行
+     */
+    public static CompiledExpression compile(CompiledExpression compiled) {
+        if(compiled == null || compiled instanceof ByteCodeCompiledExpression || compiled.isEmptyStatement()) {
+            return compiled;
+        }
+
+        try{
+            return new AsmExpressionCompiler()._compile(compiled);
+        } catch(OptimizationNotSupported e) {
+            log.debug("表达式不支持字节码编译,将使用解释执行:{}", e.getMessage());
+        } catch(Exception | LinkageError e) {
+            log.debug("表达式字节码编译失败,将使用解释执行:{}", e.getMessage(), e);
+        }
+
+        return compiled;
+    }
+
+    private CompiledExpression _compile(CompiledExpression compiled) throws Exception {
+        className = "AsmCompiledExpressionImpl_" + CLASS_NAME_POSTFIX.getAndIncrement();
+        classType = Type.getObjectType(className);
+
+        cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+        cw.visit(OPCODES_VERSION, ACC_PUBLIC + ACC_SUPER, className, null, TYPE_BASE.getInternalName(), null);
+
+        generateConstructor();
+
+        val mv = new GeneratorAdapter(ACC_PROTECTED, METHOD_EXECUTE,
+                cw.visitMethod(ACC_PROTECTED, METHOD_EXECUTE.getName(), METHOD_EXECUTE.getDescriptor(), null, null));
+        mv.visitCode();
+        int factory = mv.newLocal(TYPE_FACTORY);
+        mv.loadArg(1);
+        mv.storeLocal(factory);
+        emitChain(mv, compiled.getFirstNode(), factory);
+        mv.endMethod();
+
+        cw.visitEnd();
+
+        byte[] b = cw.toByteArray();
+        val classLoader = new JitClassLoader(ByteCodeCompiledExpression.class.getClassLoader());
+        Class<?> clazz = classLoader.defineClassX(className, b, 0, b.length);
+
+        return (CompiledExpression) clazz.getConstructor(CompiledExpression.class, Object[].class, ASTNode[].class, ExecutableStatement[].class)
+                .newInstance(compiled, literals.toArray(), nodes.toArray(new ASTNode[nodes.size()]),
+                        statements.toArray(new ExecutableStatement[statements.size()]));
+    }
+
+    /** 生成构造方法,直接调用父类构造方法 */
+    private void generateConstructor() {
+        val mv = new GeneratorAdapter(ACC_PUBLIC, METHOD_CONSTRUCTOR,
+                cw.visitMethod(ACC_PUBLIC, METHOD_CONSTRUCTOR.getName(), METHOD_CONSTRUCTOR.getDescriptor(), null, null));
+        mv.visitCode();
+        mv.loadThis();
+        mv.loadArgs();
+        mv.invokeConstructor(TYPE_BASE, METHOD_CONSTRUCTOR);
+        mv.returnValue();
+        mv.endMethod();
+    }
+
+    /**
+     * 生成整个节点链的执行代码，处理过程与MVELRuntime.execute相同
+     * 运行时执行栈中最多只有一个有效值，因此这里使用一个局部变量来代替，并在编译期通过hasValue记录其是否有值
+     */
+    private void emitChain(GeneratorAdapter mv, ASTNode first, int factory) {
+        List<ASTNode> chain = new ArrayList<>();
+        for(ASTNode tk = first; tk != null; tk = tk.nextASTNode) {
+            chain.add(tk);
+        }
+
+        int size = chain.size();
+        //三元运算的跳转点，下标为size时表示跳转到结尾
+        Label[] targets = new Label[size + 1];
+        int value = mv.newLocal(TYPE_OBJECT);
+        boolean hasValue = false;
+        boolean reachable = true;
+
+        for(int i = 0; i < size; i++) {
+            if(targets[i] != null) {
+                mv.mark(targets[i]);
+                reachable = true;
+                hasValue = false;
+            }
+            if(!reachable) {
+                continue;
+            }
+
+            ASTNode tk = chain.get(i);
+            if(tk.fields == -1) {
+                continue;
+            }
+
+            if(!hasValue) {
+                emitNode(mv, tk, factory);
+                mv.storeLocal(value);
+                hasValue = true;
+            }
+
+            //如果标识已结束了则直接返回数据信息
+            Label notTilt = mv.newLabel();
+            mv.loadLocal(factory);
+            mv.invokeInterface(TYPE_FACTORY, METHOD_TILT_FLAG);
+            mv.ifZCmp(GeneratorAdapter.EQ, notTilt);
+            mv.loadLocal(value);
+            mv.returnValue();
+            mv.mark(notTilt);
+
+            int operator = tk.getOperator();
+            switch(operator) {
+                case Operator.RETURN:
+                    mv.loadLocal(factory);
+                    mv.push(true);
+                    mv.invokeInterface(TYPE_FACTORY, METHOD_SET_TILT_FLAG);
+                    mv.loadLocal(value);
+                    mv.returnValue();
+                    reachable = false;
+                    continue;
+
+                case NOOP:
+                    continue;
+
+                //条件为false时，直接跳转到第一个 : 之后的节点
+                case TERNARY: {
+                    int j = i;
+                    //noinspection StatementWithEmptyBody
+                    while(j + 1 < size && !chain.get(++j).isOperator(TERNARY_ELSE)) ;
+                    if(targets[j + 1] == null) {
+                        targets[j + 1] = mv.newLabel();
+                    }
+                    mv.loadLocal(value);
+                    mv.invokeStatic(TYPE_BASE, METHOD_TO_BOOLEAN);
+                    mv.ifZCmp(GeneratorAdapter.EQ, targets[j + 1]);
+                    hasValue = false;
+                    continue;
+                }
+
+                case TERNARY_ELSE:
+                    mv.loadLocal(value);
+                    mv.returnValue();
+                    reachable = false;
+                    continue;
+
+                case END_OF_STMT:
+                    if(i + 1 < size) {
+                        hasValue = false;
+                    }
+                    continue;
+            }
+
+            if(i + 1 == size) {
+                throw new OptimizationNotSupported("incomplete statement: " + tk.getName());
+            }
+
+            //使用操作符处理当前值和下一个节点的值，下一个节点即不再需要重新计算
+            mv.loadLocal(value);
+            mv.push(operator);
+            emitNode(mv, chain.get(i + 1), factory);
+            mv.invokeStatic(TYPE_BASE, METHOD_OPERATE);
+            mv.storeLocal(value);
+        }
+
+        if(targets[size] != null) {
+            mv.mark(targets[size]);
+            reachable = true;
+            hasValue = false;
+        }
+
+        if(reachable) {
+            if(hasValue) {
+                mv.loadLocal(value);
+            } else {
+                mv.visitInsn(ACONST_NULL);
+            }
+            mv.returnValue();
+        }
+    }
+
+    /** 生成计算单个节点值的代码，执行之后栈上即为节点的值 */
+    private void emitNode(GeneratorAdapter mv, ASTNode node, int factory) {
+        Class<?> type = node.getClass();
+
+        if(type == LiteralNode.class || (type == ASTNode.class && node.isLiteral())) {
+            emitLiteral(mv, node.getLiteralValue());
+        } else if(type == IntAdd.class) {
+            emitIntOperation(mv, (BinaryOperation) node, factory);
+        } else if(type == IntSub.class) {
+            emitIntOperation(mv, (BinaryOperation) node, factory);
+        } else if(type == IntMult.class) {
+            emitIntOperation(mv, (BinaryOperation) node, factory);
+        } else if(type == IntDiv.class) {
+            emitIntOperation(mv, (BinaryOperation) node, factory);
+        } else if(type == BinaryOperation.class) {
+            val operation = (BinaryOperation) node;
+            mv.push(operation.getLeftType());
+            emitNode(mv, operation.getLeft(), factory);
+            mv.push(operation.getOperation());
+            mv.push(operation.getRightType());
+            emitNode(mv, operation.getRight(), factory);
+            mv.invokeStatic(TYPE_MATH, METHOD_DO_OPERATIONS);
+        } else if(type == And.class || type == Or.class) {
+            emitBooleanOperation(mv, (BooleanNode) node, type == And.class, factory);
+        } else if(type == Negation.class) {
+            Label isTrue = mv.newLabel();
+            Label end = mv.newLabel();
+            emitStatement(mv, ((Negation) node).getStatement(), factory);
+            emitUnboxBoolean(mv);
+            mv.ifZCmp(GeneratorAdapter.NE, isTrue);
+            emitLiteral(mv, Boolean.TRUE);
+            mv.goTo(end);
+            mv.mark(isTrue);
+            emitLiteral(mv, Boolean.FALSE);
+            mv.mark(end);
+        } else if(type == Substatement.class && ((Substatement) node).getStatement() != null) {
+            emitStatement(mv, ((Substatement) node).getStatement(), factory);
+        } else if(type == IfNode.class) {
+            emitIf(mv, (IfNode) node, factory);
+        } else if(type == WhileNode.class && ((WhileNode) node).getInvariantScope() == null) {
+            emitWhile(mv, (WhileNode) node, factory);
+        } else if(type == ForNode.class && ((ForNode) node).getInvariantScope() == null) {
+            emitFor(mv, (ForNode) node, factory);
+        } else {
+            //其它节点，如属性访问,foreach以及有循环不变量的循环等，直接回调节点本身
+            int idx = nodes.size();
+            nodes.add(node);
+            mv.loadThis();
+            mv.getField(classType, "nodes", Type.getType(ASTNode[].class));
+            mv.push(idx);
+            mv.arrayLoad(TYPE_NODE);
+            mv.loadArg(0);
+            mv.loadArg(0);
+            mv.loadLocal(factory);
+            mv.invokeVirtual(TYPE_NODE, METHOD_REDUCED_VALUE);
+        }
+    }
+
+    /** 生成执行语句的代码,对于内部的编译表达式，生成为单独的方法，以支持内部的return处理 */
+    private void emitStatement(GeneratorAdapter mv, ExecutableStatement stmt, int factory) {
+        if(stmt == null) {
+            throw new OptimizationNotSupported("empty statement");
+        }
+
+        Class<?> type = stmt.getClass();
+        if(type == CompiledExpression.class) {
+            String name = generateBlock((CompiledExpression) stmt);
+            mv.loadThis();
+            mv.loadArg(0);
+            mv.loadLocal(factory);
+            mv.visitMethodInsn(INVOKESPECIAL, className, name, METHOD_EXECUTE.getDescriptor(), false);
+        } else if(type == ExecutableLiteral.class) {
+            emitLiteral(mv, ((ExecutableLiteral) stmt).getLiteral());
+        } else if(type == ExecutableAccessor.class) {
+            emitNode(mv, ((ExecutableAccessor) stmt).getNode(), factory);
+        } else {
+            int idx = statements.size();
+            statements.add(stmt);
+            mv.loadThis();
+            mv.getField(classType, "statements", Type.getType(ExecutableStatement[].class));
+            mv.push(idx);
+            mv.arrayLoad(TYPE_STATEMENT);
+            mv.loadArg(0);
+            mv.loadArg(0);
+            mv.loadLocal(factory);
+            mv.invokeInterface(TYPE_STATEMENT, METHOD_GET_VALUE);
+        }
+    }
+
+    /**
+     * 将内部的编译表达式生成为一个单独的私有方法
+     * 与CompiledExpression.getDirectValue相同，执行前先根据该表达式创建出执行用的变量工厂
+     */
+    private String generateBlock(CompiledExpression compiled) {
+        int idx = statements.size();
+        statements.add(compiled);
+
+        String name = "block$" + blockCount++;
+        val mv = new GeneratorAdapter(ACC_PRIVATE, new Method(name, METHOD_EXECUTE.getDescriptor()),
+                cw.visitMethod(ACC_PRIVATE, name, METHOD_EXECUTE.getDescriptor(), null, null));
+        mv.visitCode();
+        int factory = mv.newLocal(TYPE_FACTORY);
+        mv.loadThis();
+        mv.getField(classType, "statements", Type.getType(ExecutableStatement[].class));
+        mv.push(idx);
+        mv.arrayLoad(TYPE_STATEMENT);
+        mv.checkCast(TYPE_COMPILED);
+        mv.loadArg(1);
+        mv.invokeVirtual(TYPE_COMPILED, METHOD_EXECUTION_FACTORY);
+        mv.storeLocal(factory);
+        emitChain(mv, compiled.getFirstNode(), factory);
+        mv.endMethod();
+
+        return name;
+    }
+
+    /** 生成常量值,boolean和字符串直接生成，其它常量则引用literals数组 */
+    private void emitLiteral(GeneratorAdapter mv, Object value) {
+        if(value == null) {
+            mv.visitInsn(ACONST_NULL);
+        } else if(value instanceof Boolean) {
+            mv.getStatic(TYPE_BOOLEAN, (Boolean) value ? "TRUE" : "FALSE", TYPE_BOOLEAN);
+        } else if(value instanceof String) {
+            mv.push((String) value);
+        } else {
+            int idx = literals.size();
+            literals.add(value);
+            mv.loadThis();
+            mv.getField(classType, "literals", Type.getType(Object[].class));
+            mv.push(idx);
+            mv.arrayLoad(TYPE_OBJECT);
+        }
+    }
+
+    /** 生成整数运算,与IntAdd等节点相同,即调用BinaryOperation.doIntOptimizedOperation,两边均为int时以int计算,溢出时提升结果 */
+    private void emitIntOperation(GeneratorAdapter mv, BinaryOperation node, int factory) {
+        emitNode(mv, node.getLeft(), factory);
+        mv.push(node.getOperation());
+        emitNode(mv, node.getRight(), factory);
+        mv.invokeStatic(TYPE_BINARY_OPERATION, METHOD_INT_OPTIMIZED_OPERATION);
+    }
+
+    /** 生成 && 以及 || 的短路运算 */
+    private void emitBooleanOperation(GeneratorAdapter mv, BooleanNode node, boolean and, int factory) {
+        Label shortCut = mv.newLabel();
+        Label end = mv.newLabel();
+        int mode = and ? GeneratorAdapter.EQ : GeneratorAdapter.NE;
+
+        emitNode(mv, node.getLeft(), factory);
+        emitUnboxBoolean(mv);
+        mv.ifZCmp(mode, shortCut);
+        emitNode(mv, node.getRight(), factory);
+        emitUnboxBoolean(mv);
+        mv.ifZCmp(mode, shortCut);
+        emitLiteral(mv, and);
+        mv.goTo(end);
+        mv.mark(shortCut);
+        emitLiteral(mv, !and);
+        mv.mark(end);
+    }
+
+    /** 生成if elseif else的处理,每个分支根据idxAlloc决定是否使用新的作用域 */
+    private void emitIf(GeneratorAdapter mv, IfNode node, int factory) {
+        Label elseLabel = mv.newLabel();
+        Label end = mv.newLabel();
+
+        emitStatement(mv, node.getCondition(), factory);
+        emitUnboxBoolean(mv);
+        mv.ifZCmp(GeneratorAdapter.EQ, elseLabel);
+        emitStatement(mv, node.getNestedStatement(), branchFactory(mv, node.isIdxAlloc(), factory));
+        mv.goTo(end);
+
+        mv.mark(elseLabel);
+        if(node.getElseIf() != null) {
+            emitNode(mv, node.getElseIf(), branchFactory(mv, node.isIdxAlloc(), factory));
+        } else if(node.getElseBlock() != null) {
+            emitStatement(mv, node.getElseBlock(), branchFactory(mv, node.isIdxAlloc(), factory));
+        } else {
+            mv.visitInsn(ACONST_NULL);
+        }
+        mv.mark(end);
+    }
+
+    /** 生成while循环，条件使用当前作用域，执行块使用新的作用域，结果为null */
+    private void emitWhile(GeneratorAdapter mv, WhileNode node, int factory) {
+        int blockFactory = branchFactory(mv, false, factory);
+        Label end = mv.newLabel();
+
+        Label loop = mv.mark();
+        emitStatement(mv, node.getCondition(), factory);
+        emitUnboxBoolean(mv);
+        mv.ifZCmp(GeneratorAdapter.EQ, end);
+        emitStatement(mv, node.getCompiledBlock(), blockFactory);
+        mv.pop();
+        mv.goTo(loop);
+
+        mv.mark(end);
+        mv.visitInsn(ACONST_NULL);
+    }
+
+    /** 生成for循环，执行块中有return时提前返回执行块的值 */
+    private void emitFor(GeneratorAdapter mv, ForNode node, int factory) {
+        int ctxFactory = branchFactory(mv, node.isIndexAlloc(), factory);
+        int value = mv.newLocal(TYPE_OBJECT);
+        Label end = mv.newLabel();
+        Label done = mv.newLabel();
+        Label next = mv.newLabel();
+
+        emitStatement(mv, node.getInitializer(), ctxFactory);
+        mv.pop();
+
+        Label loop = mv.mark();
+        emitStatement(mv, node.getCondition(), ctxFactory);
+        emitUnboxBoolean(mv);
+        mv.ifZCmp(GeneratorAdapter.EQ, end);
+        emitStatement(mv, node.getCompiledBlock(), ctxFactory);
+        mv.storeLocal(value);
+        mv.loadLocal(ctxFactory);
+        mv.invokeInterface(TYPE_FACTORY, METHOD_TILT_FLAG);
+        mv.ifZCmp(GeneratorAdapter.EQ, next);
+        mv.loadLocal(value);
+        mv.goTo(done);
+
+        mv.mark(next);
+        emitStatement(mv, node.getAfter(), ctxFactory);
+        mv.pop();
+        mv.goTo(loop);
+
+        mv.mark(end);
+        mv.visitInsn(ACONST_NULL);
+        mv.mark(done);
+    }
+
+    /** 返回代码块使用的变量工厂，不能复用当前作用域时，即创建新的作用域 */
+    private int branchFactory(GeneratorAdapter mv, boolean reuse, int factory) {
+        if(reuse) {
+            return factory;
+        }
+
+        int local = mv.newLocal(TYPE_FACTORY);
+        mv.loadLocal(factory);
+        mv.invokeStatic(TYPE_BASE, METHOD_BLOCK_FACTORY);
+        mv.storeLocal(local);
+        return local;
+    }
+
+    /** 将栈上的值转换为boolean，与(Boolean)强转后的拆箱处理相同 */
+    private void emitUnboxBoolean(GeneratorAdapter mv) {
+        mv.checkCast(TYPE_BOOLEAN);
+        mv.invokeVirtual(TYPE_BOOLEAN, METHOD_BOOLEAN_VALUE);
+    }
+}
@@ -1,5 +1,6 @@
 package org.mvelx.optimizers.impl.refl;
 
+import com.google.common.collect.ImmutableSet;
 import org.mvelx.*;
 import org.mvelx.ast.Function;
 import org.mvelx.ast.FunctionInstance;
@@ -8,8 +9,10 @@ import org.mvelx.compiler.*;
 import org.mvelx.integration.PropertyHandler;
 import org.mvelx.integration.VariableResolver;
 import org.mvelx.integration.VariableResolverFactory;
+import org.mvelx.integration.impl.ClassImportResolverFactory;
 import org.mvelx.optimizers.AbstractOptimizer;
 import org.mvelx.optimizers.AccessorOptimizer;
+import org.mvelx.optimizers.OptimizationNotSupported;
 import org.mvelx.optimizers.impl.refl.collection.ArrayCreator;
 import org.mvelx.optimizers.impl.refl.collection.ExprValueAccessor;
 import org.mvelx.optimizers.impl.refl.collection.ListCreator;
@@ -20,6 +23,7 @@ import org.mvelx.util.*;
 import java.lang.reflect.*;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static java.lang.Integer.parseInt;
 import static java.lang.Thread.currentThread;
@@ -70,6 +74,14 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
     /** 当前处理对象的返回类型 */
     private Class returnType;
 
+    /** 当前是否正在进行编译期常量折叠,此时只允许访问静态常量以及无副作用方法 */
+    private boolean constantFolding;
+
+    /** 常量折叠时,结果可以认为是常量的访问节点,其中变量访问只会访问到引用工厂中的类引用或静态引用 */
+    private static final Set<Class<?>> foldableNodes = ImmutableSet.of(
+            VariableAccessor.class, StaticReferenceAccessor.class, StaticVarAccessor.class, GetterAccessor.class, MethodAccessor.class
+    );
+
     public ReflectiveAccessorOptimizer() {
     }
 
@@ -109,6 +121,44 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
         return compileGetChain();
     }
 
+    /**
+     * 在编译期计算指定的常量表达式,表达式中只能访问静态常量字段以及已注册的无副作用方法,方法参数也必须为常量
+     * 如果表达式中有其它的访问,则在实际调用之前即抛出OptimizationNotSupported,表示此表达式不能进行折叠
+     */
+    public Object optimizeConstant(ParserContext pCtx, char[] property, int start, int offset) {
+        //变量工厂中只有当前配置中的引用,即只能访问到类引用以及静态引用,而不能访问到实际的变量
+        ParserConfiguration pCfg = pCtx.getParserConfiguration();
+        VariableResolverFactory importFactory = pCfg.getImports() != null ? new ClassImportResolverFactory(pCfg, null, true) : null;
+
+        constantFolding = true;
+        try{
+            for(AccessorNode node = optimizeAccessor(pCtx, property, start, offset, null, null, importFactory, null); node != null; node = node.getNextNode()) {
+                if(!foldableNodes.contains(node.getClass())) {
+                    throw new OptimizationNotSupported("not a constant expression: " + new String(property, start, offset));
+                }
+            }
+            return val;
+        } finally {
+            constantFolding = false;
+        }
+    }
+
+    /** 常量折叠时,检查相应的成员是否可以在编译期访问,即已注册的无副作用方法或者是静态常量字段 */
+    private void checkFoldable(Member member) {
+        if(!constantFolding) return;
+
+        boolean foldable;
+        if(member instanceof Method) {
+            foldable = pCtx.getParserConfiguration().isPureMethod((Method) member);
+        } else {
+            foldable = member instanceof Field && (member.getModifiers() & (Modifier.STATIC | Modifier.FINAL)) == (Modifier.STATIC | Modifier.FINAL);
+        }
+
+        if(!foldable) {
+            throw new OptimizationNotSupported("not a constant expression: " + new String(expr, start, length));
+        }
+    }
+
     /** 进行相应的设置值访问器创建 */
     @SuppressWarnings("unchecked")
     public AccessorNode optimizeSetAccessor(ParserContext pCtx, char[] property, int start, int offset, Object ctx,
@@ -325,6 +375,8 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
             throw e;
         } catch(NullPointerException e) {
             throw new PropertyAccessException("null pointer: " + new String(expr, start, length), this.expr, this.st, e, pCtx);
+        } catch(OptimizationNotSupported e) {
+            throw e;
         } catch(Exception e) {
             e.printStackTrace();
             throw new CompileException(e.getMessage(), this.expr, st, e);
@@ -400,6 +452,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
 
         //如果有属性解析器，则交由属性处理器来处理
         if(hasPropertyHandler(cls)) {
+            checkFoldable(null);
             PropertyHandlerAccessor acc = new PropertyHandlerAccessor(property, cls, getPropertyHandler(cls), pCtx);
             addAccessorNode(acc, cls);
             return acc.getValue(ctx, thisRef, variableFactory);
@@ -418,6 +471,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
 
         //处理getter方法
         if(member instanceof Method) {
+            checkFoldable(member);
             try{
                 //正常情况下，采用无参方法调用处理
                 o = ctx != null ? ((Method) member).invoke(ctx, EMPTYARG) : null;
@@ -463,6 +517,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
         //剩下的成员肯定字段，因此有字段方式
         else if(member != null) {
             Field f = (Field) member;
+            checkFoldable(f);
 
             //静态成员
             if((f.getModifiers() & Modifier.STATIC) != 0) {
@@ -518,6 +573,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
                 }
                 //直接访问类的字段
                 else if(tryStaticMethodRef instanceof Field) {
+                    checkFoldable((Field) tryStaticMethodRef);
                     addAccessorNode(new StaticVarAccessor((Field) tryStaticMethodRef, property, pCtx), null);
                     return ((Field) tryStaticMethodRef).get(null);
                 }
@@ -576,6 +632,9 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
      * @throws Exception -
      */
     private Object getCollectionProperty(Object ctx, String prop) throws Exception {
+        //集合下标表达式需要在访问时执行,因此不能进行常量折叠
+        checkFoldable(null);
+
         //集合前的属性信息，如 a.bc[2]，先拿到a.bc信息
         if(prop.length() > 0) {
             ctx = getBeanProperty(ctx, prop);
@@ -722,8 +781,12 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
             //每个参数段分别编译并执行
             for(int i = 0; i < subtokens.size(); i++) {
                 try{
-                    args[i] = (es[i] = (ExecutableStatement) subCompileExpression(subtokens.get(i), pCtx))
-                            .getValue(this.thisRef, thisRef, variableFactory);
+                    es[i] = (ExecutableStatement) subCompileExpression(subtokens.get(i), pCtx);
+                    //常量折叠时参数也必须为常量,以避免在编译期执行参数中的其它调用
+                    if(constantFolding && !(es[i] instanceof ExecutableLiteral)) {
+                        checkFoldable(null);
+                    }
+                    args[i] = es[i].getValue(this.thisRef, thisRef, variableFactory);
                 } catch(CompileException e) {
                     throw ErrorUtil.rewriteIfNeeded(e, this.expr, this.start);
                 }
@@ -890,6 +953,7 @@ public class ReflectiveAccessorOptimizer extends AbstractOptimizer implements Ac
         }
 
         //获取方法并进行调用
+        checkFoldable(m);
         Method method = getWidenedTarget(cls, m);
         Object o = ctx != null ? method.invoke(ctx, normalizeArgsForVarArgs(parameterTypes, args, m.isVarArgs())) : null;
 
@@ -33,6 +33,11 @@ public class IndexedVariableAccessor extends BaseAccessor {
         this.register = register;
     }
 
+    /** 变量在变量工厂中的下标 */
+    public int getRegister() {
+        return register;
+    }
+
     public Object getValue(Object ctx, Object elCtx, VariableResolverFactory vrf) {
         //因为数据存储在相应的解析器上下文中,因此直接以下标的方式获取到解析器,再获取相应的值
         val value = vrf.getIndexedVariableResolver(register).getValue();
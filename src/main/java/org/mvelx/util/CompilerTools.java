@@ -1,15 +1,36 @@
 package org.mvelx.util;
 
+import com.google.common.collect.ImmutableSet;
 import org.mvelx.CompileException;
 import org.mvelx.Operator;
 import org.mvelx.ParserContext;
 import org.mvelx.ast.*;
 import org.mvelx.compiler.*;
+import org.mvelx.integration.PropertyHandlerFactory;
 import org.mvelx.integration.VariableResolverFactory;
 import org.mvelx.integration.impl.ClassImportResolverFactory;
+import org.mvelx.optimizers.OptimizerFactory;
+import org.mvelx.optimizers.dynamic.DynamicOptimizer;
+import org.mvelx.optimizers.impl.refl.ReflectiveAccessorOptimizer;
+import org.mvelx.optimizers.impl.refl.nodes.FieldAccessor;
+import org.mvelx.optimizers.impl.refl.nodes.GetterAccessor;
+import org.mvelx.optimizers.impl.refl.nodes.IndexedVariableAccessor;
+import org.mvelx.optimizers.impl.refl.nodes.VariableAccessor;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.mvelx.Operator.PTABLE;
 import static org.mvelx.util.ASTBinaryTree.buildTree;
@@ -18,6 +39,12 @@ import static org.mvelx.util.ParseTools.boxPrimitive;
 
 /** 各种编译工具，对节点链和各种操作符进行优化处理工作 */
 public class CompilerTools {
+    /** 不可变的常量值类型,只有这些类型的值才能在编译期折叠为常量节点,避免在多次执行之间共享可变对象 */
+    private static final Set<Class<?>> constantValueTypes = ImmutableSet.of(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigDecimal.class, BigInteger.class
+    );
+
     /**
      * 进行节点优化,包括运算节点转换，常量节点优化替换等
      * Finalize the payload, by reducing any stack-based-operations to dedicated nodes where possible.
@@ -212,6 +239,19 @@ public class CompilerTools {
             }
         }
 
+        //编译期常量折叠,将只访问常量以及无副作用方法的节点直接计算为常量节点,不再在每次执行时重复计算
+        if(pCtx.getParserConfiguration().isConstantFolding()) {
+            (astLinkedList = optimizedAst).reset();
+            optimizedAst = new ASTLinkedList();
+
+            while(astLinkedList.hasMoreNodes()) {
+                optimizedAst.addTokenNode(foldConstant(astLinkedList.nextNode(), pCtx));
+            }
+
+            //常量条件的分支裁剪,需要在常量折叠之后处理,以使用折叠之后的条件
+            optimizedAst = eliminateDeadBranches(optimizedAst);
+        }
+
         //开始优化 boolean 操作
         if(secondPassOptimization) {
       /*
@@ -275,6 +315,768 @@ public class CompilerTools {
         return optimizedAst;
     }
 
+    /**
+     * 公共子表达式消除,将节点链中重复出现的无副作用属性访问以及无副作用静态方法调用替换为共享值节点
+     * 只有当整个节点链都没有副作用时才进行处理,以保证多次访问之间相应的值不会被修改
+     * 共享值在第一次使用时才计算,因此不会改变短路运算的语义
+     */
+    public static ASTLinkedList eliminateCommonSubexpressions(ASTLinkedList astLinkedList, SharedValueScope scope, ParserContext pCtx) {
+        Map<String, Integer> counts = new HashMap<>();
+
+        astLinkedList.reset();
+        while(astLinkedList.hasMoreNodes()) {
+            if(!collectSharedAccess(astLinkedList.nextNode(), counts, pCtx)) {
+                astLinkedList.reset();
+                return astLinkedList;
+            }
+        }
+
+        //为出现多次的访问分配共享下标,所有出现的位置均使用第1次出现的节点来计算
+        Map<String, SharedValueNode> sharedNodes = new HashMap<>();
+        astLinkedList.reset();
+        ASTLinkedList optimizedAst = new ASTLinkedList();
+        while(astLinkedList.hasMoreNodes()) {
+            optimizedAst.addTokenNode(shareAccess(astLinkedList.nextNode(), counts, sharedNodes, scope, pCtx));
+        }
+
+        return optimizedAst;
+    }
+
+    /** 统计节点中各个属性访问出现的次数,如果节点可能有副作用,则返回false */
+    private static boolean collectSharedAccess(ASTNode tk, Map<String, Integer> counts, ParserContext pCtx) {
+        if(tk.getFields() == -1 || tk.isLiteral() || tk instanceof OperatorNode || tk instanceof EndOfStatement || tk instanceof SharedValueNode) {
+            return true;
+        }
+
+        if(tk instanceof BinaryOperation || tk instanceof And || tk instanceof Or) {
+            BooleanNode bool = (BooleanNode) tk;
+            return collectSharedAccess(bool.getLeft(), counts, pCtx) && collectSharedAccess(bool.getRight(), counts, pCtx);
+        }
+
+        //括号以及取反中的语句单独编译,这里只判断其是否有副作用,没有副作用的括号语句整体作为可共享的访问
+        if(tk instanceof Substatement) {
+            ExecutableStatement stmt = ((Substatement) tk).getStatement();
+            if(!isSideEffectFree(stmt, pCtx)) {
+                return false;
+            }
+            if(!(stmt instanceof ExecutableLiteral)) {
+                counts.merge(sharedKey(tk), 1, Integer::sum);
+            }
+            return true;
+        }
+        if(tk instanceof Negation) {
+            return isSideEffectFree(((Negation) tk).getStatement(), pCtx);
+        }
+
+        if(tk.getClass() != ASTNode.class || !tk.isIdentifier() || (tk.getFields() & ASTNode.ASSIGN) != 0
+                || !isSideEffectFreeAccess(tk.getName(), pCtx)) {
+            return false;
+        }
+
+        //只有深度访问才需要共享,单个变量的读取本身已足够快
+        String name = tk.getName();
+        if(name.indexOf('.') != -1 || name.indexOf('[') != -1) {
+            counts.merge(name, 1, Integer::sum);
+        }
+        return true;
+    }
+
+    /** 判断一个执行单元是否没有副作用 */
+    private static boolean isSideEffectFree(ExecutableStatement stmt, ParserContext pCtx) {
+        if(stmt instanceof ExecutableLiteral) {
+            return true;
+        }
+        if(stmt instanceof ExecutableAccessor) {
+            return collectSharedAccess(((ExecutableAccessor) stmt).getNode(), new HashMap<>(), pCtx);
+        }
+        if(stmt instanceof CompiledExpression) {
+            for(ASTNode tk = ((CompiledExpression) stmt).getFirstNode(); tk != null; tk = tk.nextASTNode) {
+                if(!collectSharedAccess(tk, new HashMap<>(), pCtx)) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 判断属性访问是否没有副作用,属性访问认为均是读取操作
+     * 方法调用则只支持 类.方法(参数) 的静态调用,并且要求相应的方法均为注册的无副作用方法,参数中不能再有方法调用
+     */
+    public static boolean isSideEffectFreeAccess(String name, ParserContext pCtx) {
+        int paren = name.indexOf('(');
+        if(paren == -1) {
+            return true;
+        }
+
+        int dot = name.indexOf('.');
+        if(dot == -1 || dot > paren || name.indexOf('(', paren + 1) != -1 || name.charAt(name.length() - 1) != ')') {
+            return false;
+        }
+
+        String root = name.substring(0, dot).trim();
+        Class<?> cls = pCtx.hasVarOrInput(root) ? null : pCtx.getParserConfiguration().getImport(root);
+        if(cls == null) {
+            return false;
+        }
+
+        String methodName = name.substring(dot + 1, paren).trim();
+        boolean found = false;
+        for(Method method : cls.getMethods()) {
+            if(method.getName().equals(methodName)) {
+                if(!pCtx.getParserConfiguration().isPureMethod(method)) return false;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /** 将重复出现的属性访问替换为共享值节点 */
+    private static ASTNode shareAccess(ASTNode tk, Map<String, Integer> counts, Map<String, SharedValueNode> sharedNodes,
+                                       SharedValueScope scope, ParserContext pCtx) {
+        if(tk instanceof BinaryOperation || tk instanceof And || tk instanceof Or) {
+            BooleanNode bool = (BooleanNode) tk;
+            bool.setLeft(shareAccess(bool.getLeft(), counts, sharedNodes, scope, pCtx));
+            bool.setRight(shareAccess(bool.getRight(), counts, sharedNodes, scope, pCtx));
+            return tk;
+        }
+
+        if((tk.getClass() != ASTNode.class && !(tk instanceof Substatement)) || counts.getOrDefault(sharedKey(tk), 0) < 2) {
+            return tk;
+        }
+
+        SharedValueNode shared = sharedNodes.get(sharedKey(tk));
+        if(shared == null) {
+            shared = new SharedValueNode(scope, scope.allocate(), tk, pCtx);
+            sharedNodes.put(sharedKey(tk), shared);
+            return shared;
+        }
+
+        //在节点链中每个节点的后续节点均不相同,因此每个位置都使用单独的节点
+        return new SharedValueNode(scope, shared.getSlot(), shared.getNode(), pCtx);
+    }
+
+    /** 可共享访问的标识,括号语句使用带括号的原始语句,以区别于同名的属性访问 */
+    private static String sharedKey(ASTNode tk) {
+        return tk instanceof Substatement ? "(" + tk.getName().trim() + ")" : tk.getName();
+    }
+
+    /**
+     * 统计节点链中可共享访问出现的次数并合并到counts中,用于在多个编译表达式之间进行公共子表达式消除
+     * 节点链中有可能产生副作用的节点时不进行统计,并返回false
+     */
+    public static boolean countSharedAccess(ASTNode firstNode, Map<String, Integer> counts, ParserContext pCtx) {
+        Map<String, Integer> nodeCounts = new HashMap<>();
+        for(ASTNode tk = firstNode; tk != null; tk = tk.nextASTNode) {
+            if(!collectSharedAccess(tk, nodeCounts, pCtx)) return false;
+        }
+
+        nodeCounts.forEach((name, count) -> counts.merge(name, count, Integer::sum));
+        return true;
+    }
+
+    /**
+     * 将节点链中出现多次的访问替换为共享值节点,并返回新的第1个节点
+     * sharedNodes以及scope可以在多个节点链之间共用,以使多个编译表达式在同一个共享存储中执行时,相同的访问只计算一次
+     */
+    public static ASTNode shareCommonAccess(ASTNode firstNode, Map<String, Integer> counts, Map<String, SharedValueNode> sharedNodes,
+                                            SharedValueScope scope, ParserContext pCtx) {
+        ASTLinkedList optimizedAst = new ASTLinkedList();
+        for(ASTNode tk = firstNode, next; tk != null; tk = next) {
+            next = tk.nextASTNode;
+            optimizedAst.addTokenNode(shareAccess(tk, counts, sharedNodes, scope, pCtx));
+        }
+        return optimizedAst.firstNode();
+    }
+
+    /** 函数体中允许出现的关键字,其它关键字(如语句,投影以及isdef等)均不进行内联 */
+    private static final Set<String> inlineKeywords = ImmutableSet.of("and", "or", "instanceof", "is", "contains", "convertable_to");
+
+    /**
+     * 对脚本函数的调用进行内联,调用处直接替换为代入参数之后的函数体
+     * 只处理全局声明,函数体为单个表达式并且小于内联上限的函数,函数名不能在源码中被重新赋值或者重复声明,
+     * 参数只能是常量或者变量名,并且作为变量名的参数在函数体中必须一定会被计算,以保证变量不存在时与调用一样报错
+     */
+    public static ASTLinkedList inlineFunctions(ASTLinkedList astLinkedList, ParserContext pCtx) {
+        ASTLinkedList optimizedAst = new ASTLinkedList();
+
+        astLinkedList.reset();
+        while(astLinkedList.hasMoreNodes()) {
+            ASTNode tk = inlineCall(astLinkedList.nextNode(), pCtx);
+            //代入常量参数之后的函数体可能已成为常量,再对整个运算进行一次折叠
+            if(pCtx.getParserConfiguration().isConstantFolding()) {
+                tk = foldConstant(tk, pCtx);
+            }
+            optimizedAst.addTokenNode(tk);
+        }
+
+        return optimizedAst;
+    }
+
+    /** 对单个节点进行内联,不是可内联的函数调用时返回原节点 */
+    private static ASTNode inlineCall(ASTNode tk, ParserContext pCtx) {
+        if(tk instanceof BinaryOperation || tk instanceof And || tk instanceof Or) {
+            BooleanNode bool = (BooleanNode) tk;
+            bool.setLeft(inlineCall(bool.getLeft(), pCtx));
+            bool.setRight(inlineCall(bool.getRight(), pCtx));
+            return tk;
+        }
+
+        if(tk.getClass() != ASTNode.class || !tk.isIdentifier() || (tk.getFields() & ASTNode.ASSIGN) != 0) {
+            return tk;
+        }
+
+        //只处理 函数名(参数) 的形式,调用之后还有其它访问的不处理
+        String name = tk.getName();
+        int paren = name.indexOf('(');
+        if(paren <= 0 || name.charAt(name.length() - 1) != ')') {
+            return tk;
+        }
+        Function function = pCtx.getFunction(name.substring(0, paren).trim());
+        char[] call = name.toCharArray();
+        if(function == null || ParseTools.balancedCapture(call, paren, '(') != call.length - 1 || isRebound(function)) {
+            return tk;
+        }
+
+        List<char[]> args = ParseTools.parseParameterList(call, paren + 1, call.length - paren - 2);
+        String inlined = inlineSource(function, args, pCtx);
+        if(inlined == null) {
+            return tk;
+        }
+
+        char[] source = inlined.toCharArray();
+        Substatement substatement = new Substatement(source, 0, source.length, ASTNode.COMPILE_IMMEDIATE, pCtx);
+        if(substatement.getStatement() instanceof ExecutableLiteral) {
+            return new LiteralNode(((ExecutableLiteral) substatement.getStatement()).getLiteral(), pCtx);
+        }
+        return substatement;
+    }
+
+    /** 生成代入参数之后的函数体源码,不能内联时返回null */
+    private static String inlineSource(Function function, List<char[]> args, ParserContext pCtx) {
+        String body = function.getBody().trim();
+        while(body.endsWith(";")) {
+            body = body.substring(0, body.length() - 1).trim();
+        }
+
+        int parmNum = function.getParameterCount();
+        if(!function.isSingleton() || body.isEmpty() || body.length() > pCtx.getParserConfiguration().getFunctionInlineThreshold()
+                || args.size() != parmNum || function.getParameters().length < parmNum) {
+            return null;
+        }
+        for(char[] arg : args) {
+            if(!isInlineArgument(new String(arg).trim())) return null;
+        }
+
+        boolean[] referenced = new boolean[parmNum];
+        String inlined = scanInlineSource(body, Arrays.asList(function.getParameters()).subList(0, parmNum), args, referenced, pCtx);
+        if(inlined == null) {
+            return null;
+        }
+
+        //以变量名作为参数时,内联之后只有在函数体中被计算时才会访问此变量,因此要求参数被引用并且函数体中没有条件计算
+        boolean conditional = hasConditionalEvaluation(body);
+        for(int i = 0; i < parmNum; i++) {
+            if(isVariableArgument(new String(args.get(i)).trim()) && (conditional || !referenced[i])) return null;
+        }
+        return inlined;
+    }
+
+    /** 调用参数是否可以代入函数体,只允许常量(数字,字符串以及true,null等)或者变量名 */
+    private static boolean isInlineArgument(String arg) {
+        if(arg.isEmpty()) {
+            return false;
+        }
+        char c = arg.charAt(0);
+        if(Character.isJavaIdentifierStart(c)) {
+            for(int i = 1; i < arg.length(); i++) {
+                if(!Character.isJavaIdentifierPart(arg.charAt(i))) return false;
+            }
+            return !AbstractParser.OPERATORS.containsKey(arg);
+        }
+        if(c == '\'' || c == '"') {
+            return ParseTools.captureStringLiteral(c, arg.toCharArray(), 0, arg.length()) == arg.length() - 1;
+        }
+
+        //数字,包括负数以及1e5,10L等形式
+        int i = c == '-' ? 1 : 0;
+        if(i >= arg.length() || !Character.isDigit(arg.charAt(i))) {
+            return false;
+        }
+        for(; i < arg.length(); i++) {
+            if(!Character.isJavaIdentifierPart(arg.charAt(i)) && arg.charAt(i) != '.') return false;
+        }
+        return true;
+    }
+
+    /** 调用参数是否为变量名,即不是常量的标识符 */
+    private static boolean isVariableArgument(String arg) {
+        return Character.isJavaIdentifierStart(arg.charAt(0)) && !AbstractParser.LITERALS.containsKey(arg);
+    }
+
+    /** 函数体中是否存在条件计算(三元运算,空安全访问以及短路运算),即其中的部分表达式可能不会被计算 */
+    private static boolean hasConditionalEvaluation(String body) {
+        char[] chars = body.toCharArray();
+        for(int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if(c == '\'' || c == '"') {
+                i = ParseTools.captureStringLiteral(c, chars, i, chars.length);
+            } else if(c == '?' || ((c == '&' || c == '|') && i + 1 < chars.length && chars[i + 1] == c)) {
+                return true;
+            } else if(Character.isJavaIdentifierStart(c)) {
+                int end = i;
+                while(end < chars.length && Character.isJavaIdentifierPart(chars[end])) end++;
+                String word = body.substring(i, end);
+                if(word.equals("and") || word.equals("or")) return true;
+                i = end - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 函数名在源码中是否还有其它用途,如重新赋值,声明为变量或参数,或者重复声明,此时编译期不能确定调用的是哪个函数
+     * 除属性名之外,函数名在源码中只能以 函数名( 的形式出现,并且只声明一次
+     */
+    private static boolean isRebound(Function function) {
+        char[] chars = function.getExpr();
+        String name = function.getName();
+        int declared = 0;
+        for(int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            if(c == '\'' || c == '"') {
+                i = ParseTools.captureStringLiteral(c, chars, i, chars.length);
+                continue;
+            }
+            if(!Character.isJavaIdentifierStart(c)) {
+                continue;
+            }
+
+            int end = i;
+            while(end < chars.length && Character.isJavaIdentifierPart(chars[end])) end++;
+            if(end - i == name.length() && name.equals(new String(chars, i, end - i)) && !isPropertyName(chars, i)) {
+                int next = end;
+                while(next < chars.length && ParseTools.isWhitespace(chars[next])) next++;
+                if(next == chars.length || chars[next] != '(') return true;
+                if(isFunctionDeclaration(chars, i) && ++declared > 1) return true;
+            }
+            i = end - 1;
+        }
+        return false;
+    }
+
+    /** 判断指定位置的标识符是否为函数声明的函数名,即前面为def或者function */
+    private static boolean isFunctionDeclaration(char[] chars, int pos) {
+        int end = pos - 1;
+        while(end >= 0 && ParseTools.isWhitespace(chars[end])) end--;
+        int start = end;
+        while(start >= 0 && Character.isJavaIdentifierPart(chars[start])) start--;
+        String word = new String(chars, start + 1, end - start);
+        return word.equals("def") || word.equals("function");
+    }
+
+    /**
+     * 检查函数体是否为可内联的简单表达式,同时将其中的参数引用替换为相应的参数表达式
+     * 出现语句,赋值,自增减,注释或者对其它脚本函数的调用时返回null
+     *
+     * @param referenced 记录各个参数是否在函数体中被引用
+     */
+    private static String scanInlineSource(String source, List<String> params, List<char[]> args, boolean[] referenced, ParserContext pCtx) {
+        char[] chars = source.toCharArray();
+        StringBuilder sb = new StringBuilder(source.length() + 16).append('(');
+
+        for(int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            char next = i + 1 < chars.length ? chars[i + 1] : 0;
+            switch(c) {
+                case '\'':
+                case '"':
+                    int end = ParseTools.captureStringLiteral(c, chars, i, chars.length);
+                    sb.append(chars, i, end - i + 1);
+                    i = end;
+                    continue;
+                case ';':
+                case '{':
+                case '}':
+                case '@':
+                    return null;
+                case '=':
+                    //只允许比较运算,不允许赋值
+                    if(next != '=' && (i == 0 || "=!<>".indexOf(chars[i - 1]) == -1)) return null;
+                    break;
+                case '+':
+                case '-':
+                    if(next == c) return null;
+                    break;
+                case '/':
+                    if(next == '/' || next == '*') return null;
+                    break;
+            }
+
+            if(Character.isJavaIdentifierStart(c)) {
+                int end = i;
+                while(end < chars.length && Character.isJavaIdentifierPart(chars[end])) end++;
+                String word = source.substring(i, end);
+
+                if((AbstractParser.OPERATORS.containsKey(word) && !inlineKeywords.contains(word)) || pCtx.getFunction(word) != null) {
+                    return null;
+                }
+
+                int idx = isPropertyName(chars, i) ? -1 : params.indexOf(word);
+                //参数作为函数被调用时不进行内联
+                if(idx != -1 && source.substring(end).trim().startsWith("(")) {
+                    return null;
+                }
+                if(idx != -1) {
+                    referenced[idx] = true;
+                    sb.append('(').append(args.get(idx)).append(')');
+                } else {
+                    sb.append(word);
+                }
+                i = end - 1;
+            } else if(Character.isDigit(c)) {
+                //数字(包括1e5,10L等形式)整体处理,避免后缀被当作变量名
+                int end = i;
+                while(end < chars.length && (Character.isJavaIdentifierPart(chars[end]) || chars[end] == '.')) end++;
+                sb.append(chars, i, end - i);
+                i = end - 1;
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.append(')').toString();
+    }
+
+    /** 判断指定位置的标识符是否为属性名,即前面为.或者.? */
+    private static boolean isPropertyName(char[] chars, int pos) {
+        int i = pos - 1;
+        while(i >= 0 && ParseTools.isWhitespace(chars[i])) i--;
+        if(i >= 0 && chars[i] == '?') i--;
+        return i >= 0 && chars[i] == '.';
+    }
+
+    /**
+     * 将循环中可能不变的访问替换为属于循环不变量范围的共享值节点
+     * 只处理属性访问链以及由属性访问和常量组成的运算,内部语句在各自编译时已单独处理
+     * 最终是否共享由循环编译完毕之后根据循环中被赋值的变量确定
+     */
+    public static ASTLinkedList hoistLoopInvariants(ASTLinkedList astLinkedList, LoopInvariantScope scope, ParserContext pCtx) {
+        ASTLinkedList optimizedAst = new ASTLinkedList();
+
+        astLinkedList.reset();
+        while(astLinkedList.hasMoreNodes()) {
+            ASTNode tk = astLinkedList.nextNode();
+            tk.nextASTNode = null;
+            optimizedAst.addTokenNode(hoistInvariant(tk, scope, pCtx));
+        }
+
+        return optimizedAst;
+    }
+
+    /**
+     * 对单个节点进行外提处理,先处理运算节点的左右两边,整个节点也可以外提时再使用共享值节点替换
+     * 这样在整个运算因依赖被赋值的变量而不能共享时,其中的部分仍然可以共享
+     */
+    private static ASTNode hoistInvariant(ASTNode tk, LoopInvariantScope scope, ParserContext pCtx) {
+        if(tk instanceof BinaryOperation || tk instanceof And || tk instanceof Or) {
+            BooleanNode bool = (BooleanNode) tk;
+            bool.setLeft(hoistInvariant(bool.getLeft(), scope, pCtx));
+            bool.setRight(hoistInvariant(bool.getRight(), scope, pCtx));
+        }
+
+        Set<String> roots = new HashSet<>();
+        if(collectInvariantRoots(tk, roots) && (tk instanceof BinaryOperation || isDeepAccess(tk))) {
+            SharedValueNode shared = new SharedValueNode(scope, scope.allocate(), tk, pCtx);
+            scope.addCandidate(shared, roots);
+            return shared;
+        }
+        return tk;
+    }
+
+    /** 判断节点是否只由常量以及变量属性读取组成,同时收集所依赖的根变量 */
+    private static boolean collectInvariantRoots(ASTNode tk, Set<String> roots) {
+        if(tk instanceof SharedValueNode) {
+            return collectInvariantRoots(((SharedValueNode) tk).getNode(), roots);
+        }
+        if(tk instanceof BinaryOperation) {
+            BinaryOperation bo = (BinaryOperation) tk;
+            return collectInvariantRoots(bo.getLeft(), roots) && collectInvariantRoots(bo.getRight(), roots);
+        }
+
+        if(tk.getClass() == LiteralNode.class || (tk.getClass() == ASTNode.class && tk.isLiteral())) {
+            return true;
+        }
+
+        //下标以及方法调用中可能引用其它变量,不进行处理
+        if(tk.getClass() != ASTNode.class || !tk.isIdentifier() || (tk.getFields() & ASTNode.ASSIGN) != 0) {
+            return false;
+        }
+        String name = tk.getName();
+        if(name.indexOf('(') != -1 || name.indexOf('[') != -1) {
+            return false;
+        }
+
+        roots.add(rootVariable(name));
+        //属性读取可能因通过其它变量的属性写入而改变
+        if(name.indexOf('.') != -1) {
+            roots.add(LoopInvariantScope.ANY_PROPERTY);
+        }
+        return true;
+    }
+
+    /** 是否是深度属性访问,单个变量的读取本身已足够快,不需要外提 */
+    private static boolean isDeepAccess(ASTNode tk) {
+        return tk.getClass() == ASTNode.class && !tk.isLiteral() && tk.getName().indexOf('.') != -1;
+    }
+
+    /** 返回属性访问表达式中的根变量名,即第1个.[(之前的部分 */
+    public static String rootVariable(String name) {
+        for(int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if(c == '.' || c == '[' || c == '(') {
+                return name.substring(0, i).trim();
+            }
+        }
+        return name.trim();
+    }
+
+    /**
+     * 按声明的入参类型绑定属性访问,在编译期即为属性访问链生成相应的变量/getter/字段访问器,执行时不再需要第一次执行时的优化
+     * 只处理根为声明了类型的入参或者上下文对象(即this入参)的属性访问链,其中不能有方法调用,下标以及空安全访问,
+     * 相应的类型均需要为可直接访问的公共类型,不满足时该节点仍在执行时进行优化
+     * 只处理最外层的节点链以及括号中的语句,投影等会改变上下文对象的语句不进行处理
+     */
+    public static void bindSchema(CompiledExpression compiled, ParserContext pCtx) {
+        for(ASTNode tk = compiled.getFirstNode(); tk != null; tk = tk.nextASTNode) {
+            bindSchema(tk, compiled.getSlotNames(), pCtx);
+        }
+    }
+
+    /** 对单个节点进行绑定,运算节点则分别处理左右两边 */
+    private static void bindSchema(ASTNode tk, String[] slotNames, ParserContext pCtx) {
+        if(tk instanceof BooleanNode) {
+            BooleanNode bool = (BooleanNode) tk;
+            bindSchema(bool.getLeft(), slotNames, pCtx);
+            bindSchema(bool.getRight(), slotNames, pCtx);
+            return;
+        }
+        if(tk instanceof SharedValueNode) {
+            bindSchema(((SharedValueNode) tk).getNode(), slotNames, pCtx);
+            return;
+        }
+        if(tk instanceof Substatement || tk instanceof Negation) {
+            ExecutableStatement stmt = tk instanceof Substatement ? ((Substatement) tk).getStatement() : ((Negation) tk).getStatement();
+            if(stmt instanceof ExecutableAccessor) {
+                bindSchema(((ExecutableAccessor) stmt).getNode(), slotNames, pCtx);
+            } else if(stmt instanceof CompiledExpression) {
+                for(ASTNode node = ((CompiledExpression) stmt).getFirstNode(); node != null; node = node.nextASTNode) {
+                    bindSchema(node, slotNames, pCtx);
+                }
+            }
+            return;
+        }
+
+        if(tk.getClass() != ASTNode.class || !tk.isIdentifier() || tk.isLiteral() || (tk.getFields() & ASTNode.ASSIGN) != 0 || tk.getAccessor() != null) {
+            return;
+        }
+
+        String[] properties = tk.getName().split("\\.", -1);
+        Class<?>[] type = new Class<?>[1];
+        AccessorNode accessor = schemaAccessor(properties, slotNames, type, pCtx);
+        if(accessor != null) {
+            //默认使用动态优化时,同样在执行次数达到阈值之后优化为asm访问器
+            if(OptimizerFactory.getDefaultAccessorCompiler() instanceof DynamicOptimizer) {
+                char[] name = tk.getNameAsArray();
+                accessor = DynamicOptimizer.wrapAccessor(pCtx, name, 0, name.length, accessor);
+            }
+            tk.setAccessor(accessor);
+            if(tk.getEgressType() == null || tk.getEgressType() == Object.class) {
+                tk.setEgressType(type[0]);
+            }
+        }
+    }
+
+    /** 根据声明的类型创建属性访问链的访问器,不能确定时返回null.type[0]中返回最终的属性类型 */
+    private static AccessorNode schemaAccessor(String[] properties, String[] slotNames, Class<?>[] type, ParserContext pCtx) {
+        for(int i = 0; i < properties.length; i++) {
+            properties[i] = properties[i].trim();
+            if(properties[i].isEmpty() || ParseTools.isNotValidNameorLabel(properties[i]) || ParseTools.isReservedWord(properties[i])) {
+                return null;
+            }
+        }
+
+        String root = properties[0];
+        Map<String, Class> inputs = pCtx.getInputs();
+        Class<?> rootType = inputs != null ? inputs.get(root) : null;
+        if("this".equals(root) || (pCtx.getVariables() != null && pCtx.getVariables().containsKey(root))) {
+            return null;
+        }
+
+        AccessorNode first = null;
+        AccessorNode last = null;
+        Class<?> currentType;
+        int i = 0;
+        //未声明类型的变量在编译时会作为Object类型的入参,此时如果上下文类型中有相应的属性,则认为是上下文对象的属性
+        Class<?> ctxType = inputs != null ? inputs.get("this") : null;
+        if(rootType != null && rootType != Object.class) {
+            int idx = slotNames != null ? Arrays.asList(slotNames).indexOf(root) : -1;
+            first = last = idx != -1 ? new IndexedVariableAccessor(idx, root, pCtx) : new VariableAccessor(root, pCtx);
+            currentType = rootType;
+            i = 1;
+        } else if(ctxType != null && PropertyTools.getFieldOrAccessor(ctxType, root) != null) {
+            currentType = ctxType;
+        } else {
+            return null;
+        }
+
+        for(; i < properties.length; i++) {
+            if(currentType.isPrimitive() || Map.class.isAssignableFrom(currentType)
+                    || PropertyHandlerFactory.hasPropertyHandler(currentType) || PropertyHandlerFactory.hasNullPropertyHandler()) {
+                return null;
+            }
+
+            Member member = PropertyTools.getFieldOrAccessor(currentType, properties[i]);
+            if(member == null || Modifier.isStatic(member.getModifiers()) || !Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+                return null;
+            }
+
+            AccessorNode node;
+            Class<?> memberType;
+            if(member instanceof Method) {
+                node = new GetterAccessor((Method) member, properties[i], pCtx);
+                memberType = ((Method) member).getReturnType();
+            } else {
+                node = new FieldAccessor((Field) member, pCtx);
+                memberType = ((Field) member).getType();
+            }
+
+            if(last == null) {
+                first = node;
+            } else {
+                last.setNextNode(node, currentType);
+            }
+            last = node;
+            currentType = memberType;
+        }
+
+        type[0] = currentType;
+        return first;
+    }
+
+    /**
+     * 裁剪条件为常量的分支,if语句只保留实际会执行的代码块,条件为常量的三元运算则直接替换为相应分支的节点
+     * 三元运算只处理条件为单独常量节点,并且在?和:之间没有嵌套三元运算的情况,以保证与执行期的跳转逻辑一致
+     */
+    private static ASTLinkedList eliminateDeadBranches(ASTLinkedList astLinkedList) {
+        List<ASTNode> nodes = new ArrayList<>();
+        boolean pruned = false;
+
+        astLinkedList.reset();
+        while(astLinkedList.hasMoreNodes()) {
+            ASTNode tk = astLinkedList.nextNode();
+            if(tk instanceof IfNode) {
+                ASTNode live = ((IfNode) tk).pruneDeadBranches();
+                pruned |= live != tk;
+                tk = live;
+            }
+            nodes.add(tk);
+        }
+
+        for(int i = 1; i < nodes.size(); i++) {
+            if(!nodes.get(i).isOperator(Operator.TERNARY)) continue;
+
+            //条件需要为语句开始处的单个boolean常量
+            ASTNode cond = nodes.get(i - 1);
+            if(!cond.isLiteral() || !(cond.getLiteralValue() instanceof Boolean)
+                    || (i > 1 && !nodes.get(i - 2).isOperator(Operator.END_OF_STMT))) continue;
+
+            int elseIndex = -1;
+            for(int j = i + 1; j < nodes.size(); j++) {
+                if(nodes.get(j).isOperator(Operator.TERNARY)) break;
+                if(nodes.get(j).isOperator(Operator.TERNARY_ELSE)) {
+                    elseIndex = j;
+                    break;
+                }
+            }
+            if(elseIndex == -1) continue;
+
+            //条件为true时执行到:即返回,因此后面的节点均不再需要;为false时则从:之后继续执行
+            List<ASTNode> live = new ArrayList<>(nodes.subList(0, i - 1));
+            if((Boolean) cond.getLiteralValue()) {
+                live.addAll(nodes.subList(i + 1, elseIndex));
+            } else {
+                live.addAll(nodes.subList(elseIndex + 1, nodes.size()));
+            }
+            nodes = live;
+            pruned = true;
+            i = Math.max(0, i - 2);
+        }
+
+        if(!pruned) {
+            astLinkedList.reset();
+            return astLinkedList;
+        }
+
+        ASTLinkedList optimizedAst = new ASTLinkedList();
+        for(ASTNode tk : nodes) {
+            tk.nextASTNode = null;
+            optimizedAst.addTokenNode(tk);
+        }
+        return optimizedAst;
+    }
+
+    /**
+     * 对节点进行常量折叠,不能折叠时返回原节点
+     * 运算节点在左右两边都为常量时直接计算出结果,属性节点则只在引用静态常量以及已注册的无副作用方法时进行计算
+     */
+    private static ASTNode foldConstant(ASTNode tk, ParserContext pCtx) {
+        if(tk instanceof BinaryOperation) {
+            BinaryOperation bo = (BinaryOperation) tk;
+            bo.setLeft(foldConstant(bo.getLeft(), pCtx));
+            bo.setRight(foldConstant(bo.getRight(), pCtx));
+
+            if(!isConstantNode(bo.getLeft()) || !isConstantNode(bo.getRight())) return tk;
+
+            try{
+                Object value = bo.getReducedValueAccelerated(null, null, null);
+                return isConstantValue(value) ? new LiteralNode(value, pCtx) : tk;
+            } catch(RuntimeException e) {
+                //编译期计算失败,如除0,则保留至运行期再处理
+                return tk;
+            }
+        }
+
+        if(tk.getClass() != ASTNode.class || !tk.isIdentifier() || (tk.getFields() & (ASTNode.ASSIGN | ASTNode.LITERAL)) != 0) {
+            return tk;
+        }
+
+        //只处理以类引用或静态引用开头的属性,变量开头的属性需要在运行期才能确定
+        String name = tk.getName();
+        int rootEnd = 0;
+        while(rootEnd < name.length() && Character.isJavaIdentifierPart(name.charAt(rootEnd))) rootEnd++;
+        String root = name.substring(0, rootEnd);
+        if(root.isEmpty() || pCtx.hasVarOrInput(root) || !pCtx.hasImport(root)) {
+            return tk;
+        }
+
+        try{
+            Object value = new ReflectiveAccessorOptimizer().optimizeConstant(pCtx, tk.getExpr(), tk.getStart(), tk.getOffset());
+            return isConstantValue(value) ? new LiteralNode(value, pCtx) : tk;
+        } catch(RuntimeException e) {
+            return tk;
+        }
+    }
+
+    /** 判断节点是否为值不可变的常量节点 */
+    private static boolean isConstantNode(ASTNode tk) {
+        return tk.isLiteral() && isConstantValue(tk.getLiteralValue());
+    }
+
+    /** 判断值是否为不可变的常量值 */
+    private static boolean isConstantValue(Object value) {
+        return value != null && (constantValueTypes.contains(value.getClass()) || value instanceof Enum);
+    }
+
     /** 整数计算优化 */
     private static BinaryOperation boOptimize(int op, ASTNode tk, ASTNode tk2, ParserContext pCtx) {
         if(tk.getEgressType() == Integer.class && tk2.getEgressType() == Integer.class) {
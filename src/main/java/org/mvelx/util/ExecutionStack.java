@@ -2,49 +2,85 @@ package org.mvelx.util;
 
 import org.mvelx.ScriptRuntimeException;
 
+import java.util.Arrays;
+
 import static java.lang.String.valueOf;
 import static org.mvelx.math.MathProcessor.doOperations;
 
 /**
  * 维护了一个栈式的计算结构，即通过数据入栈，操作数入栈，然后再通过op进行操作处理以模拟一个栈式的计算过程
  * 在处理过程中，通过size来维护相应的栈内数据，并且可以判定相应的栈是否已处理完毕
- * 操作数的栈的引用没有通过通常的java stack来表示，而是通过在入栈时使用element来进行引用，
- * 即下一个要入栈的元素将引用之前在栈内的数据，这样在整个计算栈中，只需要维护最上层的引用即可
+ * 栈内数据通过可增长的数组来存放，入栈和出栈时均不再创建新的节点对象，栈顶即为数组中的最后一个有效元素
  * 如 a + b，在栈内即表现为a b +，这种后缀表达式结构，然后再通过最上层的操作符来进行op操作，
  * 得到的结果c再重新入栈
+ * 除数据栈外，还单独维护了一个int类型的操作符栈，运行期通过pushOperation和reduce进行处理，以避免操作符的装箱
+ * 编译期的处理仍将操作符和操作数混合放在数据栈中，以支持相应的xswap等换位操作
  * 方法命名上 peek->获取 pop->弹出 push->入栈  swap交换  带数字的为操作多个节点
  */
 public class ExecutionStack {
-    /** 当前最新值 */
-    private StackElement element;
+    /** 初始栈容量，一般的表达式在运行期最多只会有3个节点 */
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /** 复用栈的最大嵌套深度，超过此深度的栈在使用之后直接丢弃，避免深度递归之后线程内一直持有大量的栈 */
+    private static final int MAX_POOLED_DEPTH = 32;
+
+    /** 每个线程复用的运行栈，按嵌套深度存放 */
+    private static final ThreadLocal<StackPool> threadPool = ThreadLocal.withInitial(StackPool::new);
+
+    /** 数据栈，栈顶为 elements[size - 1] */
+    private Object[] elements = new Object[DEFAULT_CAPACITY];
     /** 栈中操作数长度 */
     private int size = 0;
 
+    /** 操作符栈，仅在运行期使用 */
+    private int[] operators = new int[DEFAULT_CAPACITY];
+    /** 操作符栈中操作符长度 */
+    private int operatorSize = 0;
+
+    /** 获取当前栈的复用池，释放之后为null */
+    private StackPool pool;
+
+    /**
+     * 获取当前线程可复用的执行栈
+     * 因为执行过程中可能嵌套执行其它表达式(如子表达式，函数调用等)，因此按照当前的嵌套深度直接获取相应的栈
+     * 获取之后需要在finally中通过release进行释放
+     */
+    public static ExecutionStack acquire() {
+        return threadPool.get().push();
+    }
+
+    /** 释放通过acquire获取的栈，同时清除栈内数据，避免引用泄露 */
+    public void release() {
+        clear();
+        if(pool != null) {
+            pool.pop(this);
+        }
+    }
+
     /** 当前栈是否是空的，即没有操作数也没有操作符 */
     public boolean isEmpty() {
         return size == 0;
     }
 
+    /** 保证数据栈可以再容纳指定数量的节点 */
+    private void ensureCapacity(int count) {
+        if(size + count > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(elements.length << 1, size + count));
+        }
+    }
+
     /** 将值追加到栈中的栈底,即所有节点的末尾位置 */
     public void add(Object o) {
+        ensureCapacity(1);
+        System.arraycopy(elements, 0, elements, 1, size);
+        elements[0] = o;
         size++;
-        StackElement el = element;
-        if(el != null) {
-            while(el.next != null) {
-                el = el.next;
-            }
-            el.next = new StackElement(null, o);
-        } else {
-            element = new StackElement(null, o);
-        }
     }
 
     /** 入栈1个对象 */
     public void push(Object o) {
-        size++;
-        element = new StackElement(element, o);
-        assert size == deepCount();
-
+        ensureCapacity(1);
+        elements[size++] = o;
     }
 
     /**
@@ -53,60 +89,93 @@ public class ExecutionStack {
      * 在使用辅助栈时，第二个对象反而为操作数，这是因为将其copy至主栈时，仍保持原有顺序，在后续再采用xswap进行运算
      */
     public void push(Object obj1, Object obj2) {
-        size += 2;
-        element = new StackElement(new StackElement(element, obj1), obj2);
-        assert size == deepCount();
-
+        ensureCapacity(2);
+        elements[size++] = obj1;
+        elements[size++] = obj2;
     }
 
     /** 入栈3个对象, 其中第3个对象为操作数,即插入的数据为 a b + */
     public void push(Object obj1, Object obj2, Object obj3) {
-        size += 3;
-        element = new StackElement(new StackElement(new StackElement(element, obj1), obj2), obj3);
-        assert size == deepCount();
+        ensureCapacity(3);
+        elements[size++] = obj1;
+        elements[size++] = obj2;
+        elements[size++] = obj3;
+    }
+
+    /**
+     * 入栈1个操作数以及相应的操作符，操作数进入数据栈，操作符进入操作符栈
+     * 后续通过reduce使用此操作符对最近的2个操作数进行处理
+     */
+    public void pushOperation(Object operand, int operator) {
+        ensureCapacity(1);
+        elements[size++] = operand;
+        if(operatorSize == operators.length) {
+            operators = Arrays.copyOf(operators, operators.length << 1);
+        }
+        operators[operatorSize++] = operator;
+    }
 
+    /** 操作符栈中是否还有待处理的操作符 */
+    public boolean hasOperator() {
+        return operatorSize != 0;
+    }
+
+    /** 获取操作符栈最上面的操作符 */
+    public int peekOperator() {
+        return operators[operatorSize - 1];
+    }
+
+    /** 弹出操作符栈最上面的操作符 */
+    public int popOperator() {
+        return operators[--operatorSize];
+    }
+
+    /** 使用操作符栈上最上面的操作符对最近的2个操作数进行处理，处理的结果重新入栈 */
+    public void reduce() {
+        int operator = operators[--operatorSize];
+        Object right = elements[--size];
+        elements[size] = null;
+        elements[size - 1] = doOperations(elements[size - 1], operator, right);
     }
 
     /** 获取第1个节点值 */
     public Object peek() {
         if(size == 0) return null;
-        else return element.value;
+        else return elements[size - 1];
     }
 
     /** 重新将相应的值复制一份并入栈 */
     public void dup() {
+        ensureCapacity(1);
+        elements[size] = elements[size - 1];
         size++;
-        element = new StackElement(element, element.value);
-        assert size == deepCount();
-
     }
 
     /** 获取当前第1个节点值,并期望为boolean属性 */
     public Boolean peekBoolean() {
         if(size == 0) return null;
-        if(element.value instanceof Boolean) return (Boolean) element.value;
-        throw new ScriptRuntimeException("expected Boolean; but found: " + (element.value == null ? "null" : element.value.getClass().getName()));
+        Object value = elements[size - 1];
+        if(value instanceof Boolean) return (Boolean) value;
+        throw new ScriptRuntimeException("expected Boolean; but found: " + (value == null ? "null" : value.getClass().getName()));
     }
 
     /** 从第2个执行栈出栈2个节点,然后加到当前栈中,并且采用更换顺序的方式处理 */
     public void copy2(ExecutionStack es) {
-        element = new StackElement(new StackElement(element, es.element.value), es.element.next.value);
-        es.element = es.element.next.next;
-        size += 2;
-        es.size -= 2;
+        Object first = es.pop();
+        Object second = es.pop();
+        push(first, second);
     }
 
     /** 从第2个执行栈中将2个节点copy到当前栈中,处理值保证原有的顺序,即第1个节点仍然在当前栈顶中 */
     public void copyx2(ExecutionStack es) {
-        element = new StackElement(new StackElement(element, es.element.next.value), es.element.value);
-        es.element = es.element.next.next;
-        size += 2;
-        es.size -= 2;
+        Object first = es.pop();
+        Object second = es.pop();
+        push(second, first);
     }
 
     /** 获取第2个节点的值 */
     public Object peek2() {
-        return element.next.value;
+        return elements[size - 2];
     }
 
     /** 弹出当前操作数 */
@@ -114,28 +183,19 @@ public class ExecutionStack {
         if(size == 0) {
             return null;
         }
-        try{
-            size--;
-            return element.value;
-        } finally {
-            element = element.next;
-            assert size == deepCount();
-        }
+        Object value = elements[--size];
+        elements[size] = null;
+        return value;
     }
 
     /** 弹出当前操作数，并期望是一个boolean值 */
     public Boolean popBoolean() {
-        if(size-- == 0) {
+        if(size == 0) {
             return null;
         }
-        try{
-            if(element.value instanceof Boolean) return (Boolean) element.value;
-            throw new ScriptRuntimeException("expected Boolean; but found: " + (element.value == null ? "null" : element.value.getClass().getName()));
-        } finally {
-            element = element.next;
-            assert size == deepCount();
-
-        }
+        Object value = pop();
+        if(value instanceof Boolean) return (Boolean) value;
+        throw new ScriptRuntimeException("expected Boolean; but found: " + (value == null ? "null" : value.getClass().getName()));
     }
 
     /**
@@ -144,13 +204,10 @@ public class ExecutionStack {
      * 先由peek2获取第2个节点值,再由当前方法 获取第1个节点值,因此进行处理之后,这2个节点都不再使用,因此这里即直接丢弃掉
      */
     public Object pop2() {
-        try{
-            size -= 2;
-            return element.value;
-        } finally {
-            element = element.next.next;
-            assert size == deepCount();
-        }
+        Object value = elements[size - 1];
+        elements[--size] = null;
+        elements[--size] = null;
+        return value;
     }
 
     /**
@@ -159,8 +216,7 @@ public class ExecutionStack {
      */
     public void discard() {
         if(size != 0) {
-            size--;
-            element = element.next;
+            elements[--size] = null;
         }
     }
 
@@ -174,9 +230,11 @@ public class ExecutionStack {
         return size > 1;
     }
 
+    /** 清除数据栈以及操作符栈 */
     public void clear() {
+        Arrays.fill(elements, 0, size, null);
         size = 0;
-        element = null;
+        operatorSize = 0;
     }
 
     /**
@@ -190,16 +248,18 @@ public class ExecutionStack {
      * 后注：之所以这样处理的原因在于这些数据都是通过辅助栈按照中缀的方式放到在主栈的，因此这里直接按中缀计算处理
      */
     public void xswap_op() {
-        element = new StackElement(element.next.next.next, doOperations(element.next.next.value, (Integer) element.next.value, element.value));
-        size -= 2;
-        assert size == deepCount();
+        Object result = doOperations(elements[size - 3], (Integer) elements[size - 2], elements[size - 1]);
+        elements[--size] = null;
+        elements[--size] = null;
+        elements[size - 1] = result;
     }
 
     /** 使用栈上的操作符对最近的2个操作数进行处理，处理的结果重新入栈,最上面的为操作符 */
     public void op() {
-        element = new StackElement(element.next.next.next, doOperations(element.next.next.value, (Integer) element.value, element.next.value));
-        size -= 2;
-        assert size == deepCount();
+        Object result = doOperations(elements[size - 3], (Integer) elements[size - 1], elements[size - 2]);
+        elements[--size] = null;
+        elements[--size] = null;
+        elements[size - 1] = result;
     }
 
     /**
@@ -208,60 +268,68 @@ public class ExecutionStack {
      * 之前栈中为 a b +,但+被pop掉,因此进行的处理即为使用之前pop的+来进行处理
      */
     public void op(int operator) {
-        element = new StackElement(element.next.next, doOperations(element.next.value, operator, element.value));
-        size--;
-        assert size == deepCount();
+        Object result = doOperations(elements[size - 2], operator, elements[size - 1]);
+        elements[--size] = null;
+        elements[size - 1] = result;
     }
 
     /** 交换栈中的最上面2个节点,并处理相应的关系,即交换第1个和第2个 */
     public void xswap() {
-        StackElement e = element.next;
-        StackElement relink = e.next;
-        e.next = element;
-        (element = e).next.next = relink;
+        Object top = elements[size - 1];
+        elements[size - 1] = elements[size - 2];
+        elements[size - 2] = top;
     }
 
     /** 交换栈中第1个节点和第3个节点 */
     public void xswap2() {
-        StackElement node2 = element.next;
-        StackElement node3 = node2.next;
-
-        (node2.next = element).next = node3.next;
-        element = node3;
-        element.next = node2;
-    }
-
-    /** 计算出当前栈中还有多少节点 */
-    public int deepCount() {
-        int count = 0;
-
-        if(element == null) {
-            return 0;
-        } else {
-            count++;
-        }
-
-        StackElement element = this.element;
-        while((element = element.next) != null) {
-            count++;
-        }
-        return count;
+        Object top = elements[size - 1];
+        elements[size - 1] = elements[size - 3];
+        elements[size - 3] = top;
     }
 
     public String toString() {
-        StackElement el = element;
-
-        if(element == null) return "<EMPTY>";
+        if(size == 0) return "<EMPTY>";
 
         StringBuilder appender = new StringBuilder().append("[");
-        do{
-            appender.append(valueOf(el.value));
-            if(el.next != null) appender.append(", ");
+        for(int i = size - 1; i >= 0; i--) {
+            appender.append(valueOf(elements[i]));
+            if(i != 0) appender.append(", ");
         }
-        while((el = el.next) != null);
 
         appender.append("]");
 
         return appender.toString();
     }
+
+    /** 线程内按嵌套深度复用的栈，获取和释放均只处理栈顶，不需要查找未使用的栈 */
+    private static class StackPool {
+        private ExecutionStack[] stacks = new ExecutionStack[8];
+        /** 当前使用中的深度 */
+        private int depth;
+
+        ExecutionStack push() {
+            ExecutionStack stk;
+            if(depth >= MAX_POOLED_DEPTH) {
+                stk = new ExecutionStack();
+            } else {
+                if(depth == stacks.length) {
+                    stacks = Arrays.copyOf(stacks, depth << 1);
+                }
+                stk = stacks[depth];
+                if(stk == null) {
+                    stk = stacks[depth] = new ExecutionStack();
+                }
+            }
+
+            stk.pool = this;
+            depth++;
+            return stk;
+        }
+
+        void pop(ExecutionStack stk) {
+            //清除引用，避免重复释放时深度计算错误
+            stk.pool = null;
+            depth--;
+        }
+    }
 }
@@ -990,6 +990,7 @@ public class ParseTools {
         else return __resolveType(o.getClass());
     }
 
+    /** 内置的类型与内部类型编码的对应关系,只用于初始化类型编码缓存 */
     private static final Map<Class, Integer> typeCodes = new HashMap<>(30, 0.5f);
 
     static {
@@ -1018,17 +1019,27 @@ public class ParseTools {
         typeCodes.put(BlankLiteral.class, DataTypes.EMPTY);
     }
 
+    /**
+     * 每个类对应的内部类型编码缓存,包括用户自定义的类型(如集合类型)
+     * 使用ClassValue直接关联在类上,在首次计算之后,后续的获取不再需要hash查找以及isAssignableFrom判断
+     */
+    private static final ClassValue<Integer> typeCodeCache = new ClassValue<Integer>() {
+        @Override
+        protected Integer computeValue(Class<?> cls) {
+            Integer code = typeCodes.get(cls);
+            if(code != null) {
+                return code;
+            }
+            return Collection.class.isAssignableFrom(cls) ? DataTypes.COLLECTION : DataTypes.OBJECT;
+        }
+    };
+
     /** 获取相应的内部类型信息,以进行类型处理 */
     public static int __resolveType(Class cls) {
-        Integer code = typeCodes.get(cls);
-        if(code == null) {
-            if(cls != null && Collection.class.isAssignableFrom(cls)) {
-                return DataTypes.COLLECTION;
-            } else {
-                return DataTypes.OBJECT;
-            }
+        if(cls == null) {
+            return DataTypes.OBJECT;
         }
-        return code;
+        return typeCodeCache.get(cls);
     }
 
     public static boolean isNumericallyCoercible(Class target, Class parm) {
@@ -1913,8 +1924,9 @@ public class ParseTools {
     private static Serializable _optimizeTree(final CompiledExpression compiled) {
     /*
      * If there is only one token, and it's an identifier, we can optimize this as an accessor expression.
+     * 存在公共子表达式时需要通过编译表达式来准备共享存储,因此不能直接使用节点
      */
-        if(compiled.isSingleNode()) {
+        if(compiled.isSingleNode() && compiled.getSharedValueScope() == null) {
             ASTNode tk = compiled.getFirstNode();
 
             if(tk.isLiteral()) {
@@ -0,0 +1,30 @@
+package org.mvelx.util;
+
+import org.mvelx.ScriptRuntimeException;
+
+/** 将执行结果转换为原始类型的工具类,用于以boolean,long,double的方式获取执行结果 */
+public class PrimitiveTools {
+    /** 将结果转换为boolean,结果必须为Boolean类型 */
+    public static boolean toBoolean(Object value) {
+        if(value instanceof Boolean) return (Boolean) value;
+        throw new ScriptRuntimeException("expected Boolean; but found: " + typeName(value));
+    }
+
+    /** 将结果转换为long,结果必须为数字或字符 */
+    public static long toLong(Object value) {
+        if(value instanceof Number) return ((Number) value).longValue();
+        if(value instanceof Character) return (Character) value;
+        throw new ScriptRuntimeException("expected Number; but found: " + typeName(value));
+    }
+
+    /** 将结果转换为double,结果必须为数字或字符 */
+    public static double toDouble(Object value) {
+        if(value instanceof Number) return ((Number) value).doubleValue();
+        if(value instanceof Character) return (Character) value;
+        throw new ScriptRuntimeException("expected Number; but found: " + typeName(value));
+    }
+
+    private static String typeName(Object value) {
+        return value == null ? "null" : value.getClass().getName();
+    }
+}
@@ -4,6 +4,7 @@ import org.mvelx.MVEL;
 import org.mvelx.ParserContext;
 import org.mvelx.compiler.CompiledExpression;
 import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.compiler.PreparedExpression;
 import org.mvelx.core.assign_test.Base;
 import org.mvelx.core.assign_test.Foo;
 import org.mvelx.core.assign_test.MockClass;
@@ -62,6 +63,61 @@ public class AssignTest {
         assertEquals(((Foo) map.get("foo")).getBar().getAge(), 21);
     }
 
+    /** 测试直接使用map执行时,变量工厂在多次执行之间复用,每次执行的读写均作用于当次传入的map */
+    @Test
+    public void testMapBinding() {
+        CompiledExpression ce = new ExpressionCompiler("int t = a + 1; b = t * 2; b", new ParserContext()).compile();
+        for(int i = 0; i < 3; i++) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("a", i);
+            assertEquals(executeExpression(ce, map), (i + 1) * 2);
+            assertEquals(map.get("b"), (i + 1) * 2);
+            assertEquals(map.get("t"), i + 1);
+        }
+
+        //变量不存在于当次的map中时不能解析
+        Map<String, Object> map = new HashMap<>();
+        map.put("x", 1);
+        assertEquals(executeExpression(compileExpression("isdef a"), map), false);
+
+        //执行过程中嵌套执行
+        Map<String, Object> inner = new HashMap<>();
+        inner.put("a", 10);
+        map.put("ce", ce);
+        map.put("inner", inner);
+        assertEquals(executeExpression(compileExpression("x + org.mvelx.core.AssignTest.executeNested(ce, inner)"), map), 23);
+        assertEquals(map.get("x"), 1);
+    }
+
+    /** 在表达式执行过程中使用map执行另一个表达式 */
+    public static Object executeNested(Object compiled, Map<String, Object> vars) {
+        return executeExpression(compiled, vars);
+    }
+
+    /** 测试按位置传参的预编译表达式,参数按声明的类型转换,并且不影响多次执行 */
+    @Test
+    public void testPreparedExpression() {
+        PreparedExpression prepared = MVEL.prepare("int s = 0; for (i = 0; i < n; i++) { s += base + i }; s + suffix",
+                new String[]{"n", "base", "suffix"}, new Class[]{int.class, Integer.class, String.class});
+        assertEquals(prepared.getValue(new Object[]{3, 10, "x"}), "33x");
+        assertEquals(prepared.getValue(new Object[]{"2", 1, 5}), "35");
+
+        //参数在表达式中被重新赋值
+        prepared = MVEL.prepare("a = a * 2; a + b", new String[]{"a", "b"});
+        assertEquals(prepared.getValue(new Object[]{2, 1}), 5);
+        assertEquals(prepared.getValue(new Object[]{3, 1}), 7);
+
+        //使用上下文对象
+        assertEquals(MVEL.prepare("length() + n", new String[]{"n"}).getValue("abc", new Object[]{1}), 4);
+
+        //共用的外部变量工厂不会保留上一次执行的return状态
+        prepared = MVEL.prepare("for (i = 0; i < n; i++) { if (i == 2) { return -1; } }; n", new String[]{"n"});
+        for(int i = 0; i < 3; i++) {
+            assertEquals(prepared.getValue(new Object[]{5}), -1);
+            assertEquals(prepared.getValue(new Object[]{1}), 1);
+        }
+    }
+
     /** 对常量对象进行赋值处理,并进行复杂调用处理 */
     @Test
     public void testAssignLiteralComplex() {
@@ -0,0 +1,93 @@
+package org.mvelx.core;
+
+import com.google.common.collect.Maps;
+import org.mvelx.ParserContext;
+import org.mvelx.compiler.ByteCodeCompiledExpression;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+/**
+ * 测试整体编译为字节码的表达式，执行结果应与解释执行相同
+ *
+ * @author flym
+ */
+public class ByteCodeCompileTest {
+
+    /** 分别使用解释执行和字节码执行，并比较两者的结果 */
+    private static Object compare(String expr, Map<String, Object> vars) {
+        ParserContext parserContext = new ParserContext();
+        parserContext.getParserConfiguration().setByteCodeCompile(true);
+        CompiledExpression compiled = new ExpressionCompiler(expr, parserContext).compile();
+        Assert.assertTrue(compiled instanceof ByteCodeCompiledExpression, expr);
+
+        CompiledExpression interpreted = new ExpressionCompiler(expr, new ParserContext()).compile();
+        Object expected = interpreted.getValue(null, new MapVariableResolverFactory(Maps.newHashMap(vars)));
+
+        //执行两次，以保证第2次执行时结果仍然相同
+        for(int i = 0; i < 2; i++) {
+            Object value = compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap(vars)));
+            Assert.assertEquals(value, expected, expr);
+        }
+
+        return expected;
+    }
+
+    private static Object compare(String expr) {
+        return compare(expr, Maps.newHashMap());
+    }
+
+    /** 测试四则运算以及逻辑运算 */
+    @Test
+    public void testOperation() {
+        Map<String, Object> vars = Maps.newHashMap();
+        vars.put("a", 10);
+        vars.put("b", 3);
+        vars.put("c", null);
+
+        Assert.assertEquals(compare("a + b * 2 - 1", vars), 15);
+        Assert.assertEquals(compare("(a - b) * (a + b) % 7", vars), 0);
+        Assert.assertEquals(compare("a / b > 3 && b < 5", vars), true);
+        Assert.assertEquals(compare("a < 5 || b == 3", vars), true);
+        Assert.assertEquals(compare("!(a > b)", vars), false);
+        Assert.assertEquals(compare("int x = 7; int y = 5; x * y + x / y"), 36);
+        Assert.assertEquals(compare("'a' + a + b", vars), "a103");
+        Assert.assertEquals(compare("c or b", vars), 3);
+    }
+
+    /** 测试声明为int的变量溢出时,字节码执行与解释执行一样提升为long */
+    @Test
+    public void testIntOverflow() {
+        Assert.assertEquals(compare("int x = 2147483647; int y = 1; x + y"), 2147483648L);
+        Assert.assertEquals(compare("int x = 2147483647; int y = 1; x + y > 0"), true);
+        Assert.assertEquals(compare("int x = -2147483648; int y = 1; x - y"), -2147483649L);
+        Assert.assertEquals(compare("int x = 2147483647; int y = 10; x * y / y"), 2147483647L);
+    }
+
+    /** 测试三元运算 */
+    @Test
+    public void testTernary() {
+        Map<String, Object> vars = Maps.newHashMap();
+        vars.put("a", 10);
+
+        Assert.assertEquals(compare("a > 5 ? 'big' : 'small'", vars), "big");
+        Assert.assertEquals(compare("a < 5 ? 'big' : 'small'", vars), "small");
+        Assert.assertEquals(compare("x = a > 5 ? a * 2 : a; x + 1", vars), 21);
+    }
+
+    /** 测试if while for 以及return处理 */
+    @Test
+    public void testBlock() {
+        Assert.assertEquals(compare("if (5 > 4) { return 10; } else { return 5; }"), 10);
+        Assert.assertEquals(compare("if (false) { return false; } else if(100 < 50) { return false; } else if (10 > 5) return true;"), true);
+        Assert.assertEquals(compare("String str = ''; for(i=0;i<6;i++) { str += i }; str"), "012345");
+        Assert.assertEquals(compare("int j = 0; for (i = 0; i < 100; i++) { if (i == 10) { return j; } j += 2; }; j"), 20);
+        Assert.assertEquals(compare("i = 0; while (i < 10) { i++ }; i"), 10);
+        Assert.assertEquals(compare("sum = 0; foreach (x : [1, 2, 3]) { sum += x }; sum"), 6);
+        Assert.assertEquals(compare("def f(x) { x * 2 + 1 }; f(3) + f(4) * 2"), 25);
+    }
+}
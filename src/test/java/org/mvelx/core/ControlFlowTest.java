@@ -1,10 +1,28 @@
 package org.mvelx.core;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.mvelx.ParserContext;
+import org.mvelx.ast.ASTNode;
+import org.mvelx.ast.IfNode;
+import org.mvelx.ast.LiteralNode;
+import org.mvelx.ast.ScopedBlockNode;
+import org.mvelx.ast.Substatement;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.core.property_test.Counting;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import static org.mvelx.core.util.MvelUtils.test;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 
 public class ControlFlowTest {
@@ -34,6 +52,127 @@ public class ControlFlowTest {
         assertEquals("foo", test("if (false) 'bar'; else 'foo';"));
     }
 
+    /** 测试条件为常量的分支在编译期被裁剪 */
+    @Test
+    public void testDeadBranchElimination() {
+        assertEquals(1, test("true ? 1 : 2"));
+        assertEquals(2, test("false ? 1 : 2"));
+        assertEquals(5, test("x = 1; false ? 1 : true ? 5 : 6"));
+        assertEquals(2, test("if (false) {1} else if (true) {2} else {3}"));
+        assertEquals(4, test("y = 0; if (Integer.MAX_VALUE > 0) {y = 4}; y"));
+        assertEquals(null, test("if (false) {1}"));
+
+        //裁剪之后不再保留if以及三元运算节点
+        CompiledExpression compiled = new ExpressionCompiler("if (false) {1} else if (true) {2} else {3}", new ParserContext()).compile();
+        assertTrue(compiled.getFirstNode() instanceof ScopedBlockNode);
+        compiled = new ExpressionCompiler("false ? 1 : 2", new ParserContext()).compile();
+        assertTrue(compiled.getFirstNode() instanceof LiteralNode);
+
+        //非常量条件保留判断,后续的常量分支被裁剪
+        compiled = new ExpressionCompiler("if (a > 0) {1} else if (false) {2} else if (true) {3} else {4}", new ParserContext()).compile();
+        assertTrue(compiled.getFirstNode() instanceof IfNode);
+        assertEquals(1, test("a = 1; if (a > 0) {1} else if (false) {2} else if (true) {3} else {4}"));
+        assertEquals(3, test("a = 0; if (a > 0) {1} else if (false) {2} else if (true) {3} else {4}"));
+    }
+
+    /** 测试循环中不变量只计算一次,依赖循环中赋值变量的访问则每次计算 */
+    @Test
+    public void testLoopInvariantHoisting() {
+        String forExpr = "sum = 0; for (i = 0; i < 10; i++) { sum += c.child.value * 2 }; sum";
+        assertEquals(evalCounting(forExpr, 60, false), 10);
+        assertEquals(evalCounting(forExpr, 60, true), 1);
+
+        String foreachExpr = "sum = 0; foreach (x : [1, 2, 3]) { sum += x * c.child.value }; sum";
+        assertEquals(evalCounting(foreachExpr, 18, false), 3);
+        assertEquals(evalCounting(foreachExpr, 18, true), 1);
+
+        //while的条件同样在循环中
+        String whileExpr = "i = 0; while (i < c.child.value) { i++ }; i";
+        assertEquals(evalCounting(whileExpr, 3, false), 4);
+        assertEquals(evalCounting(whileExpr, 3, true), 1);
+
+        //根变量在循环中被赋值,或者有方法调用时,均不能外提
+        assertEquals(evalCounting("sum = 0; for (i = 0; i < 5; i++) { sum += c.child.value; c = c.child }; sum", 15, true), 10);
+        assertEquals(evalCounting("sum = 0; for (i = 0; i < 5; i++) { c.toString(); sum += c.child.value }; sum", 15, true), 5);
+
+        //投影中的访问针对集合中的每个元素,不能外提
+        ParserContext parserContext = new ParserContext();
+        parserContext.setLoopInvariantHoisting(true);
+        CompiledExpression compiled = new ExpressionCompiler("items = [['child':['value':1]], ['child':['value':2]]]; "
+                + "r = null; for (i = 0; i < 1; i++) { r = (child.value in items) }; r", parserContext).compile();
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap())), Arrays.asList(1, 2));
+
+        //通过别名写入属性时,其它变量的属性访问同样不能外提
+        parserContext = new ParserContext();
+        parserContext.setLoopInvariantHoisting(true);
+        compiled = new ExpressionCompiler("m = ['x':1]; n = m; s = 0; for (i = 0; i < 3; i++) { s = s + m.x * 1; n.x = n.x + 1 }; s", parserContext).compile();
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap())), 6);
+        parserContext = new ParserContext();
+        parserContext.setLoopInvariantHoisting(true);
+        compiled = new ExpressionCompiler("m = ['x':1]; n = m; s = 0; for (i = 0; i < 3; i++) { s = s + m.x * 1; n['x'] = n.x + 1 }; s", parserContext).compile();
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap())), 6);
+    }
+
+    /** 执行表达式并返回属性读取次数 */
+    private static int evalCounting(String expr, Object expected, boolean hoisting) {
+        ParserContext parserContext = new ParserContext();
+        parserContext.setLoopInvariantHoisting(hoisting);
+        CompiledExpression compiled = new ExpressionCompiler(expr, parserContext).compile();
+
+        Counting counting = new Counting();
+        Map<String, Object> vars = Maps.newHashMap();
+        vars.put("c", counting);
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), expected);
+        return counting.getCount();
+    }
+
+    /** 测试小函数在调用处内联,内联之后的结果应与函数调用相同 */
+    @Test
+    public void testFunctionInline() {
+        assertEquals(25, test("def f(x) { x * 2 + 1 }; f(3) + f(4) * 2"));
+        assertEquals(7, test("def g(a, b) { a > b ? a : b }; x = 3; g(x, 7)"));
+        assertEquals("x:ab2", test("def h(s) { 'x:' + s + s.length() }; h('ab')"));
+        //递归以及有赋值的函数不内联
+        assertEquals(120, test("def r(n) { n <= 1 ? 1 : n * r(n - 1) }; r(5)"));
+        assertEquals(2, test("def k(x) { y = x; y }; k(2)"));
+        //函数名被重新赋值时,调用的是赋值之后的函数
+        assertEquals(20, test("def f(a) { a + 1 }; f = def (a) { a * 10 }; f(2)"));
+        //变量名参数在函数体中没有被计算时不内联,变量不存在时与调用一样报错
+        Throwable error = null;
+        try{
+            test("def u(a) { 1 }; u(undefinedVar)");
+        } catch(RuntimeException e) {
+            error = e;
+        }
+        assertTrue(error != null);
+        assertEquals(1, test("def u(a) { 1 }; u(2)"));
+
+        CompiledExpression compiled = new ExpressionCompiler("def f(x) { x * 2 + 1 }; z = 3; f(z)", new ParserContext()).compile();
+        ASTNode last = compiled.getFirstNode();
+        while(last.nextASTNode != null) last = last.nextASTNode;
+        assertTrue(last instanceof Substatement);
+
+        ParserContext parserContext = new ParserContext();
+        parserContext.getParserConfiguration().setFunctionInlineThreshold(0);
+        compiled = new ExpressionCompiler("def f(x) { x * 2 + 1 }; z = 3; f(z)", parserContext).compile();
+        last = compiled.getFirstNode();
+        while(last.nextASTNode != null) last = last.nextASTNode;
+        assertTrue(last.getClass() == ASTNode.class);
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap())), 7);
+    }
+
+    /** 测试尾部位置的自身调用,递归深度不受调用栈限制 */
+    @Test
+    public void testTailCall() {
+        assertEquals(50005000L, test("def sum(n, acc) { n == 0 ? acc : sum(n - 1, acc + n) }; sum(10000L, 0L)"));
+        assertEquals(50005000L, test("def s(n, acc) { if (n == 0) { return acc; } return s(n - 1, acc + n); }; s(10000L, 0L)"));
+        assertEquals(50005000L, test("def s(n, acc) { if (n == 0) { acc } else { long m = n - 1; s(m, acc + n) } }; s(10000L, 0L)"));
+        assertEquals(0, test("def g(n) { n == 0 ? 0 : g(n - 1); }; g(100000)"));
+        //非尾部位置的递归仍为正常调用
+        assertEquals(3628800, test("def f(n) { n <= 1 ? 1 : n * f(n - 1) }; f(10)"));
+        assertEquals(8, test("def fib(n) { n < 2 ? n : fib(n - 1) + fib(n - 2) }; fib(6)"));
+    }
+
     /** 对for循环进行测试 */
     @Test
     public void testFor() {
@@ -49,6 +188,78 @@ public class ControlFlowTest {
         assertEquals(10000, test("x = 0; for (; x < 10000; x++) {};x"));
     }
 
+    /** 对foreach在不同集合类型下的迭代进行测试,同一表达式依次使用不同类型的值 */
+    @Test
+    public void testForEach() {
+        CompiledExpression compiled = new ExpressionCompiler("s = ''; foreach (x : c) { s += x }; s", new ParserContext()).compile();
+        Object[] values = {Lists.newArrayList(1, 2, 3), Lists.newLinkedList(Lists.newArrayList(1, 2, 3)), new Object[]{1, 2, 3},
+                new int[]{1, 2, 3}, new long[]{1, 2, 3}, new double[]{1, 2}, new short[]{1, 2, 3}, "123", 3, Lists.newArrayList(1, 2, 3)};
+        String[] expected = {"123", "123", "123", "123", "123", "1.02.0", "123", "123", "123", "123"};
+        for(int i = 0; i < values.length; i++) {
+            Map<String, Object> vars = Maps.newHashMap();
+            vars.put("c", values[i]);
+            assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), expected[i]);
+        }
+
+        //提前返回
+        assertEquals(test("foreach (x : 'abc') { if (x == 'b') { return x; } }"), 'b');
+
+        //循环体中向列表添加元素时与迭代器一样快速失败
+        Map<String, Object> vars = Maps.newHashMap();
+        vars.put("c", Lists.newArrayList(1, 2, 3));
+        Throwable error = null;
+        try{
+            new ExpressionCompiler("foreach (x : c) { c.add(x) }", new ParserContext()).compile().getValue(null, new MapVariableResolverFactory(vars));
+        } catch(RuntimeException e) {
+            error = e;
+        }
+        while(error != null && !(error instanceof ConcurrentModificationException)) error = error.getCause();
+        assertTrue(error instanceof ConcurrentModificationException);
+        assertEquals(((List) vars.get("c")).size(), 4);
+
+        //CopyOnWriteArrayList仍按迭代器遍历快照,循环体中添加元素不影响当前循环
+        vars.put("c", new CopyOnWriteArrayList<>(Arrays.asList(1, 2, 3)));
+        assertEquals(new ExpressionCompiler("total = 0; foreach (x : c) { total += x; c.add(10) }; total", new ParserContext()).compile()
+                .getValue(null, new MapVariableResolverFactory(vars)), 6);
+        assertEquals(((List) vars.get("c")).size(), 6);
+    }
+
+    /** 测试代码块作用域帧复用时,块内变量不会泄露到块外或者后续的代码块中 */
+    @Test
+    public void testBlockScope() {
+        assertEquals(5, test("a = 0; if (a == 0) { b = 5; a = b }; a"));
+        assertEquals(false, test("c = 1; if (c == 1) { q = 3 }; if (c == 1) { isdef q }"));
+        assertEquals(17, test("s = 0; for (i = 0; i < 3; i++) { foreach (j : 3) { t = i * j; if (t > 1) { s += t } } }; s"));
+        assertEquals(4, test("foreach (i : 3) { foreach (j : 3) { if (i * j == 4) { return i + j } } }; -1"));
+        //循环中块内变量在每次循环中保持
+        assertEquals(33, test("i = 0; s = 0; while (i < 3) { w = i == 0 ? 10 : w + 1; s += w; i++ }; s"));
+    }
+
+    /** 测试脚本变量按下标解析,结果与按变量名解析相同 */
+    @Test
+    public void testSlotResolution() {
+        ParserContext parserContext = new ParserContext();
+        parserContext.setSlotResolution(true);
+        CompiledExpression compiled = new ExpressionCompiler("s = 0; i = 0; while (i < n) { t = i * 2; s += t; i++ }; " +
+                "for (j = 0; j < 3; j++) { s = s + j }; int k = '5'; total = s + k; total", parserContext).compile();
+        assertTrue(compiled.getSlotNames().length > 0);
+
+        for(int i = 0; i < 2; i++) {
+            Map<String, Object> vars = Maps.newHashMap();
+            vars.put("n", 10);
+            vars.put("total", 0);
+            assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), 98);
+            //外部已有的变量由外部处理,新建的变量只在执行帧中
+            assertEquals(vars.get("total"), 98);
+            assertEquals(vars.size(), 2);
+        }
+
+        parserContext = new ParserContext();
+        parserContext.setSlotResolution(true);
+        compiled = new ExpressionCompiler("def f(x) { x + 1 }; a = 1; foreach (x : 3) { a = f(a) * x }; a", parserContext).compile();
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap())), 21);
+    }
+
     /** 对while进行测试 */
     @Test
     public void testWhile() {
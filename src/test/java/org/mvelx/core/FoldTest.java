@@ -0,0 +1,97 @@
+package org.mvelx.core;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.mvelx.MVEL;
+import org.mvelx.ParserContext;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.core.property_test.Counting;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mvelx.core.util.MvelUtils.test;
+import static org.testng.Assert.assertEquals;
+
+/**
+ * 测试fold投影,即 (x in list if cond) 语法
+ *
+ * @author flym
+ */
+public class FoldTest {
+
+    /** 测试普通的投影以及带条件的投影 */
+    @Test
+    public void testProjection() {
+        assertEquals(test("($ * 2 in [1, 2, 3])"), Lists.newArrayList(2, 4, 6));
+        assertEquals(test("($ * 2 in [1, 2, 3, 4] if $ > 1)"), Lists.newArrayList(4, 6, 8));
+        assertEquals(test("(toUpperCase() in ['a', 'b'])"), Lists.newArrayList("A", "B"));
+    }
+
+    /** 测试大集合的并行投影,结果与顺序执行相同并且保持原顺序 */
+    @Test
+    public void testParallelProjection() {
+        List<Integer> source = IntStream.range(0, 20000).boxed().collect(Collectors.toList());
+        List<Integer> expected = source.stream().filter(t -> t % 3 != 0).map(t -> t * 2).collect(Collectors.toList());
+
+        ParserContext parserContext = new ParserContext();
+        parserContext.getParserConfiguration().setParallelFoldThreshold(1000);
+        CompiledExpression compiled = new ExpressionCompiler("($ * 2 in list if $ % 3 != 0)", parserContext).compile();
+
+        for(int i = 0; i < 2; i++) {
+            Map<String, Object> vars = Maps.newHashMap();
+            vars.put("list", source);
+            assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), expected);
+        }
+
+        //投影中读取外部变量时,各线程通过同一个锁访问调用方的变量工厂,变量工厂中延迟的缓存不会被并发写入
+        compiled = new ExpressionCompiler("($ * a + b - c in list if $ % d != 0)", parserContext).compile();
+        expected = source.stream().filter(t -> t % 3 != 0).map(t -> t * 2 + 5 - 5).collect(Collectors.toList());
+        for(int i = 0; i < 20; i++) {
+            Map<String, Object> vars = Maps.newHashMap();
+            vars.put("list", source);
+            vars.put("a", 2);
+            vars.put("b", 5);
+            vars.put("c", 5);
+            vars.put("d", 3);
+            assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), expected);
+            assertEquals(MVEL.executeExpression(compiled, vars), expected);
+        }
+
+        //小于下限的集合仍顺序执行
+        compiled = new ExpressionCompiler("($ * 2 in list if $ % 3 != 0)", parserContext).compile();
+        Map<String, Object> vars = Maps.newHashMap();
+        vars.put("list", source.subList(0, 10));
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), Lists.newArrayList(2, 4, 8, 10, 14, 16));
+    }
+
+    /** 测试延迟投影,只在遍历时才进行投影,找到结果之后即停止 */
+    @Test
+    public void testLazyProjection() {
+        ParserContext parserContext = new ParserContext();
+        parserContext.getParserConfiguration().setLazyFold(true);
+
+        List<Counting> source = Lists.newArrayList(new Counting(), new Counting(), new Counting());
+        Map<String, Object> vars = Maps.newHashMap();
+        vars.put("list", source);
+
+        //没有条件时获取大小不需要投影
+        assertEquals(new ExpressionCompiler("(child in list).size()", parserContext).compile().getValue(null, new MapVariableResolverFactory(vars)), 3);
+        assertEquals(source.stream().mapToInt(Counting::getCount).sum(), 0);
+
+        //contains在找到之后即停止
+        assertEquals(new ExpressionCompiler("(child.value in list) contains 3", parserContext).compile().getValue(null, new MapVariableResolverFactory(vars)), true);
+        assertEquals(source.get(0).getCount(), 1);
+        assertEquals(source.get(1).getCount(), 0);
+
+        //嵌套投影以及遍历
+        Object value = new ExpressionCompiler("s = 0; foreach (x : ($ + 1 in ($ * 2 in [1, 2, 3]) if $ > 3)) { s += x }; s", parserContext).compile()
+                .getValue(null, new MapVariableResolverFactory(Maps.newHashMap()));
+        assertEquals(value, 12);
+    }
+}
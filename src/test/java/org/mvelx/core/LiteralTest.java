@@ -1,8 +1,17 @@
 /* Created by flym at 12/2/16 */
 package org.mvelx.core;
 
+import com.google.common.collect.Maps;
+import org.mvelx.ParserContext;
+import org.mvelx.ast.LiteralNode;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.mvelx.core.util.MvelUtils.test;
 import static org.testng.Assert.assertEquals;
 
@@ -47,4 +56,49 @@ public class LiteralTest {
     public void testNumberReduc() {
         assertEquals(1000, test("10 * 100"));
     }
+
+    /** 测试编译期的常量折叠,常量以及无副作用方法的调用均应该被计算为常量节点 */
+    @Test
+    public void testConstantFolding() {
+        ParserContext parserContext = new ParserContext();
+        parserContext.addImport("TimeUnit", TimeUnit.class);
+
+        assertFolded("Math.max(10, 20)", parserContext, 20);
+        assertFolded("Math.abs(Math.min(-3, 2)) * 2", parserContext, 6);
+        assertFolded("'prefix' + '-' + 'suffix'", parserContext, "prefix-suffix");
+        assertFolded("Integer.MAX_VALUE + 'x'", parserContext, Integer.MAX_VALUE + "x");
+        assertFolded("TimeUnit.MINUTES.toMillis(5)", parserContext, 300000L);
+    }
+
+    /** 测试没有注册为无副作用的方法不会进行常量折叠,注册之后才会在编译期执行 */
+    @Test
+    public void testPureMethodRegistry() {
+        ParserContext parserContext = new ParserContext();
+        parserContext.addImport("LiteralTest", LiteralTest.class);
+
+        String expr = "LiteralTest.next(1) + 1";
+        CompiledExpression compiled = new ExpressionCompiler(expr, parserContext).compile();
+        assertEquals(compiled.getFirstNode() instanceof LiteralNode, false);
+        int count = counter.get();
+        compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap()));
+        assertEquals(counter.get(), count + 1);
+
+        parserContext.getParserConfiguration().addPureMethods(LiteralTest.class, "next");
+        assertFolded(expr, parserContext, 2);
+    }
+
+    /** 编译指定表达式,要求编译结果为常量节点,并且执行结果与期望值相同 */
+    private static void assertFolded(String expr, ParserContext parserContext, Object expected) {
+        CompiledExpression compiled = new ExpressionCompiler(expr, parserContext).compile();
+        assertEquals(compiled.getFirstNode() instanceof LiteralNode, true, expr);
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(Maps.newHashMap())), expected, expr);
+    }
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    /** 用于测试的有副作用的方法 */
+    public static int next(int value) {
+        counter.incrementAndGet();
+        return value;
+    }
 }
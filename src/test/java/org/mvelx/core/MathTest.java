@@ -2,10 +2,25 @@
 package org.mvelx.core;
 
 import com.google.common.collect.Maps;
+import org.mvelx.DataTypes;
 import org.mvelx.MVEL;
+import org.mvelx.ParserContext;
+import org.mvelx.compiler.PreparedExpression;
+import org.mvelx.compiler.ColumnarExpression;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.core.math_test.Amount;
+import org.mvelx.core.math_test.Items;
+import org.mvelx.core.property_test.Base;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.mvelx.util.ParseTools;
 import org.testng.annotations.Test;
 
 import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -205,5 +220,290 @@ public class MathTest {
         assertEquals(val, test("int val = -5; val >>>= 2; val"));
     }
 
+    /** 测试嵌套执行以及执行出错之后，复用的执行栈仍能正常工作 */
+    @Test
+    public void testNestedExecution() {
+        Map<String, Integer> map = _createFiveMap();
+
+        //子表达式中嵌套其它表达式执行
+        assertEquals((double) (5 + 1) * 2 + (5 * (5 - 1)) / 2, test("(five + 1) * 2 + (five * (five - 1)) / 2", map));
+        assertEquals(true, test("def f(x) { x * 2 + 1 }; f(3) + f(4) * 2 == 25"));
+        //超过复用深度的递归执行
+        assertEquals(100, test("def depth(n) { n == 0 ? 0 : 1 + depth(n - 1) }; depth(100)"));
+        assertEquals(5 * 3 - 1, test("five * 3 - 1", map));
+
+        //执行出错之后,栈中不能有残留数据
+        try{
+            test("five + 'abc' * 3", map);
+        } catch(Exception ignore) {
+        }
+        assertEquals(5 * 3 - 1, test("five * 3 - 1", map));
+    }
+
+    /** 同一个表达式在运行期操作数类型发生变化时,特化的运算应能退化为通用运算,并保证结果正确 */
+    @Test
+    public void testSpecializedOperation() {
+        Map<String, Object> map = Maps.newHashMap();
+
+        map.put("a", 7);
+        map.put("b", 2);
+        assertEquals(test("a + b", map), 9);
+        assertEquals(test("a / b", map), 3.5);
+        assertEquals(test("a < b", map), false);
+        assertEquals(test("a + b", map), 9);
+
+        //类型守卫失败,退化为通用运算
+        map.put("a", 7L);
+        map.put("b", 2);
+        assertEquals(test("a + b", map), 9L);
+        assertEquals(test("a < b", map), false);
+
+        map.put("a", 7L);
+        map.put("b", 2L);
+        assertEquals(test("a + b", map), 9L);
+
+        //特化为long之后再切换为double
+        assertEquals(test("a - b", map), 5L);
+        map.put("a", 1.5d);
+        map.put("b", 2d);
+        assertEquals(test("a - b", map), -0.5d);
+
+        //字符串拼接与比较
+        map.put("a", "x");
+        map.put("b", "y");
+        assertEquals(test("a + b", map), "xy");
+        assertEquals(test("a < b", map), true);
+        assertEquals(test("a == b", map), false);
+        map.put("b", "x");
+        assertEquals(test("a == b", map), true);
+        map.put("b", 1);
+        assertEquals(test("a == b", map), false);
+    }
+
+    /** 以原始类型方式取值,结果应与getValue一致,并且在类型变化时仍能正确处理 */
+    @Test
+    public void testPrimitiveEval() {
+        CompiledExpression predicate = new ExpressionCompiler("price * qty > limit && qty != 0", new ParserContext()).compile();
+        CompiledExpression arithmetic = new ExpressionCompiler("price * qty + qty / 2", new ParserContext()).compile();
+
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("price", 20);
+        map.put("qty", 3);
+        map.put("limit", 50);
+        //执行两次,第2次时使用特化后的原始类型运算
+        for(int i = 0; i < 2; i++) {
+            assertEquals(predicate.evalBoolean(null, new MapVariableResolverFactory(map)), true);
+            assertEquals(arithmetic.evalDouble(null, new MapVariableResolverFactory(map)), 61.5);
+            assertEquals(arithmetic.evalLong(null, new MapVariableResolverFactory(map)), 61L);
+        }
+
+        //int溢出时与装箱运算的结果保持一致
+        map.put("price", Integer.MAX_VALUE);
+        assertEquals(arithmetic.evalDouble(null, new MapVariableResolverFactory(map)),
+                ((Number) arithmetic.getValue(null, new MapVariableResolverFactory(map))).doubleValue());
+
+        //类型变化时退化为通用运算
+        map.put("price", 2.5d);
+        map.put("limit", 8L);
+        assertEquals(predicate.evalBoolean(null, new MapVariableResolverFactory(map)), false);
+        assertEquals(arithmetic.evalDouble(null, new MapVariableResolverFactory(map)), 9.0);
+
+        map.put("price", 20L);
+        map.put("qty", 3L);
+        assertEquals(predicate.evalBoolean(null, new MapVariableResolverFactory(map)), true);
+        assertEquals(arithmetic.evalLong(null, new MapVariableResolverFactory(map)), 61L);
+    }
+
+    /** 不同整数类型之间的运算使用long精确计算,溢出时提升为更宽的类型 */
+    @Test
+    public void testMixedIntegralOperation() {
+        Map<String, Object> map = Maps.newHashMap();
+
+        //大数值的long运算不再损失精度
+        map.put("a", Long.MAX_VALUE - 10);
+        map.put("b", 5);
+        assertEquals(test("a + b", map), Long.MAX_VALUE - 5);
+        assertEquals(test("a - b", map), Long.MAX_VALUE - 15);
+        assertEquals(test("a > b", map), true);
+
+        //超出long的范围时提升为BigInteger
+        map.put("a", Long.MAX_VALUE);
+        assertEquals(test("a * b", map), BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(5)));
+
+        //整数除法以及取模与之前的处理相同
+        map.put("a", 7L);
+        map.put("b", 2);
+        assertEquals(test("a / b", map), 3L);
+        assertEquals(test("a % b", map), 1L);
+
+        //short与int运算,超出int时提升为long
+        map.put("a", (short) 3);
+        map.put("b", Integer.MAX_VALUE);
+        assertEquals(test("a + b", map), Integer.MAX_VALUE + 3L);
+        map.put("b", 4);
+        assertEquals(test("a * b", map), 12);
+
+        //同类型的int以及long运算与不同类型之间的运算一致,溢出时提升为更宽的类型
+        map.put("a", Integer.MAX_VALUE);
+        map.put("b", 1);
+        assertEquals(test("a + b", map), Integer.MAX_VALUE + 1L);
+        map.put("a", Long.MAX_VALUE);
+        map.put("b", 1L);
+        assertEquals(test("a + b", map), BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE));
+        map.put("a", Long.MIN_VALUE);
+        map.put("b", 1);
+        assertEquals(test("a - b", map), BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE));
+
+        //多次执行之后按int,long特化计算,溢出时的结果与通用运算相同
+        Serializable compiled = MVEL.compileExpression("(a * b) + c");
+        for(int i = 0; i < 3; i++) {
+            Map<String, Object> vars = new HashMap<>();
+            vars.put("a", Integer.MAX_VALUE);
+            vars.put("b", 2);
+            vars.put("c", i);
+            assertEquals(MVEL.executeExpression(compiled, vars), Integer.MAX_VALUE * 2L + i);
+        }
+        compiled = MVEL.compileExpression("(a + b) * c");
+        for(int i = 0; i < 3; i++) {
+            Map<String, Object> vars = new HashMap<>();
+            vars.put("a", Long.MAX_VALUE);
+            vars.put("b", (long) i);
+            vars.put("c", 1L);
+            Object expected = i == 0 ? (Object) Long.MAX_VALUE : BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.valueOf(i));
+            assertEquals(MVEL.executeExpression(compiled, vars), expected);
+        }
+
+        //与double混合运算仍使用double
+        map.put("a", 1.5d);
+        map.put("b", 2);
+        assertEquals(test("a + b", map), 3.5d);
+    }
 
+    /** 测试声明为Integer的输入在整数优化节点中溢出,结果与未声明类型时的通用运算一致 */
+    @Test
+    public void testIntOptimizedOverflow() {
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("x", Integer.MAX_VALUE);
+        vars.put("y", 1);
+        vars.put("z", 10);
+
+        for(String expr : new String[]{"x + y", "x * z", "(x + y) / z", "(x * z) / z", "x + y > 0", "(x - y) / y", "-x - y - y"}) {
+            ParserContext parserContext = new ParserContext();
+            parserContext.addInput("x", Integer.class);
+            parserContext.addInput("y", Integer.class);
+            parserContext.addInput("z", Integer.class);
+            CompiledExpression typed = new ExpressionCompiler(expr, parserContext).compile();
+            Object expected = MVEL.executeExpression(MVEL.compileExpression(expr), new HashMap<>(vars));
+
+            //执行多次,以保证特化之后的结果仍然相同
+            for(int i = 0; i < 3; i++) {
+                assertEquals(MVEL.executeExpression(typed, new HashMap<>(vars)), expected, expr);
+            }
+        }
+        assertEquals(MVEL.executeExpression(MVEL.compileExpression("x + y"), new HashMap<>(vars)), Integer.MAX_VALUE + 1L);
+
+        PreparedExpression prepared = MVEL.prepare("(a * b) / b", new String[]{"a", "b"}, new Class[]{Integer.class, Integer.class});
+        Map<String, Object> params = new HashMap<>();
+        params.put("a", Integer.MAX_VALUE);
+        params.put("b", 10);
+        assertEquals(prepared.getValue(null, new Object[]{Integer.MAX_VALUE, 10}), MVEL.executeExpression(MVEL.compileExpression("(a * b) / b"), params));
+    }
+
+    /** 测试按列计算,结果与逐行计算一致 */
+    @Test
+    public void testColumnar() {
+        int rows = 130;
+        double[] a = new double[rows];
+        long[] b = new long[rows];
+        int[] c = new int[rows];
+        for(int i = 0; i < rows; i++) {
+            a[i] = i * 0.5d;
+            b[i] = i % 7;
+            c[i] = i;
+        }
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("a", a);
+        columns.put("b", b);
+        columns.put("c", c);
+        columns.put("threshold", 10);
+
+        Serializable compiled = MVEL.compileExpression("(a * b) - c > threshold && !(c % 3 == 0)");
+        ColumnarExpression columnar = MVEL.compileColumnar("(a * b) - c > threshold && !(c % 3 == 0)");
+        long[] bitmap = columnar.select(columns);
+        assertEquals(bitmap.length, 3);
+        for(int i = 0; i < rows; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("a", a[i]);
+            row.put("b", b[i]);
+            row.put("c", c[i]);
+            row.put("threshold", 10);
+            assertEquals((bitmap[i >>> 6] & (1L << i)) != 0, MVEL.executeExpression(compiled, row), "row " + i);
+        }
+
+        //数字结果按提升后的类型返回
+        long[] sum = (long[]) MVEL.compileColumnar("b * 2 + c").evaluate(columns);
+        assertEquals(sum[10], 10 % 7 * 2 + 10L);
+        double[] quotient = (double[]) MVEL.compileColumnar("c / 4").evaluate(columns);
+        assertEquals(quotient[10], 2.5d);
+    }
+
+    /** 测试按列计算溢出时,结果与逐行计算一致 */
+    @Test
+    public void testColumnarOverflow() {
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("a", new int[]{Integer.MAX_VALUE, 1, Integer.MIN_VALUE});
+        columns.put("b", new int[]{1, 2, -1});
+        columns.put("c", new long[]{Long.MAX_VALUE, 3L, 1L});
+
+        //int溢出时整列提升为long,long溢出时逐行计算
+        for(String expr : new String[]{"a + b", "a - b", "a * b", "c + b", "c * 2", "a + b > 0", "c + 1 > 0"}) {
+            Serializable compiled = MVEL.compileExpression(expr);
+            ColumnarExpression columnar = MVEL.compileColumnar(expr);
+            Object values = columnar.evaluate(columns);
+            long[] bitmap = expr.contains(">") ? columnar.select(columns) : null;
+            for(int i = 0; i < 3; i++) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("a", ((int[]) columns.get("a"))[i]);
+                row.put("b", ((int[]) columns.get("b"))[i]);
+                row.put("c", ((long[]) columns.get("c"))[i]);
+                Object expected = MVEL.executeExpression(compiled, row);
+
+                Object value = Array.get(values, i);
+                if(expected instanceof Integer || expected instanceof Long) {
+                    assertEquals(((Number) value).longValue(), ((Number) expected).longValue(), expr + " row " + i);
+                } else {
+                    assertEquals(value, expected, expr + " row " + i);
+                }
+                if(bitmap != null) {
+                    assertEquals((bitmap[i >>> 6] & (1L << i)) != 0, expected, expr + " row " + i);
+                }
+            }
+        }
+        assertEquals(((long[]) MVEL.compileColumnar("a + b").evaluate(columns))[0], Integer.MAX_VALUE + 1L);
+        assertEquals(((Object[]) MVEL.compileColumnar("c + b").evaluate(columns))[0], BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE));
+    }
+
+    /** 类型编码按类缓存之后,内置类型,用户类型以及子类的编码与运算结果均保持不变 */
+    @Test
+    public void testResolveType() {
+        assertEquals(ParseTools.__resolveType(null), DataTypes.OBJECT);
+        assertEquals(ParseTools.__resolveType(int.class), DataTypes.INTEGER);
+        assertEquals(ParseTools.__resolveType(Long.class), DataTypes.W_LONG);
+        assertEquals(ParseTools.__resolveType(BigInteger.class), DataTypes.BIG_INTEGER);
+
+        //用户类型以及集合的子类,多次获取结果相同
+        for(int i = 0; i < 2; i++) {
+            assertEquals(ParseTools.__resolveType(Base.class), DataTypes.OBJECT);
+            assertEquals(ParseTools.__resolveType(ArrayList.class), DataTypes.COLLECTION);
+            assertEquals(ParseTools.__resolveType(Items.class), DataTypes.COLLECTION);
+            //内置数字类型只按类本身匹配,子类与其它用户类型相同
+            assertEquals(ParseTools.__resolveType(Amount.class), DataTypes.OBJECT);
+        }
+
+        //集合子类之间的运算仍按集合处理
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("a", new Items(1, 2));
+        map.put("b", new Items(3));
+        assertEquals(test("a + b", map), Arrays.asList(1, 2, 3));
+    }
 }
@@ -1,12 +1,27 @@
 /* Created by flym at 12/2/16 */
 package org.mvelx.core;
 
+import org.mvelx.MVEL;
+import org.mvelx.ParserContext;
+import org.mvelx.ScriptRuntimeException;
+import org.mvelx.compiler.CompiledExpression;
+import org.mvelx.compiler.ExpressionCompiler;
+import org.mvelx.compiler.RuleSet;
 import org.mvelx.core.property_test.Base;
+import org.mvelx.core.property_test.Counting;
 import org.mvelx.core.property_test.Sub;
+import org.mvelx.integration.impl.MapVariableResolverFactory;
+import org.mvelx.optimizers.dynamic.DynamicOptimizer;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.mvelx.core.util.MvelUtils.test;
@@ -55,4 +70,235 @@ public class PropertyTest {
     public void testUnInstance() {
         assertEquals(0, test("sarahl", createCtx()));
     }
-}
\ No newline at end of file
+
+    /** 多次访问之后在后台优化为asm访问器,优化前后结果应相同 */
+    @Test
+    public void testDynamicOptimize() throws Exception {
+        int threshold = DynamicOptimizer.getTenuringThreshold();
+        DynamicOptimizer.setTenuringThreshold(5);
+        try{
+            long optimized = DynamicOptimizer.getTotalOptimized();
+            CompiledExpression compiled = new ExpressionCompiler("foo.bar.name", new ParserContext()).compile();
+
+            //后台优化为异步处理,因此持续执行直到优化完成
+            long deadline = System.currentTimeMillis() + 5000;
+            while(DynamicOptimizer.getTotalOptimized() == optimized && System.currentTimeMillis() < deadline) {
+                assertEquals(compiled.getValue(createCtx(), new MapVariableResolverFactory(new HashMap<>())), "dog");
+                Thread.sleep(1);
+            }
+            Assert.assertTrue(DynamicOptimizer.getTotalOptimized() > optimized);
+
+            for(int i = 0; i < 10; i++) {
+                assertEquals(compiled.getValue(createCtx(), new MapVariableResolverFactory(new HashMap<>())), "dog");
+            }
+
+            //以变量开头的访问链,执行结束之后相应的变量工厂即被释放复用,后台优化不能依赖于调用时的变量工厂
+            optimized = DynamicOptimizer.getTotalOptimized();
+            compiled = new ExpressionCompiler("base.foo.bar.name + '!'", new ParserContext()).compile();
+            deadline = System.currentTimeMillis() + 5000;
+            while(DynamicOptimizer.getTotalOptimized() == optimized && System.currentTimeMillis() < deadline) {
+                Map<String, Object> vars = new HashMap<>();
+                vars.put("base", createCtx());
+                assertEquals(MVEL.executeExpression(compiled, vars), "dog!");
+                Thread.sleep(1);
+            }
+            Assert.assertTrue(DynamicOptimizer.getTotalOptimized() > optimized);
+        } finally {
+            DynamicOptimizer.setTenuringThreshold(threshold);
+        }
+    }
+
+    /** 开启公共子表达式消除之后,重复的属性访问在一次执行中只计算一次,并且结果与不开启时相同 */
+    @Test
+    public void testCommonSubexpressionElimination() {
+        String expr = "c.child.value == 3 && c.child.value > 1 ? c.child.value * 2 : 0";
+        assertEquals(evalCounting(expr, false), 3);
+        assertEquals(evalCounting(expr, true), 1);
+    }
+
+    /** 按声明的类型绑定属性访问,访问器在编译期即已生成,执行结果与未绑定时相同 */
+    @Test
+    public void testSchemaBinding() {
+        Map<String, Class> inputs = new HashMap<>();
+        inputs.put("c", Counting.class);
+
+        ParserContext parserContext = new ParserContext();
+        parserContext.addInput("this", Base.class);
+        parserContext.addInputs(inputs);
+        parserContext.setSchemaBinding(true);
+        CompiledExpression compiled = new ExpressionCompiler("c.child.value", parserContext).compile();
+        Assert.assertNotNull(compiled.getFirstNode().getAccessor());
+        assertEquals(compiled.getFirstNode().getEgressType(), int.class);
+
+        Serializable bound = MVEL.compileSchemaBound("foo.bar.name + (c.child.value * 2) + DATA + (c.child.value > 1 && fun == false)", Base.class, inputs);
+        for(int i = 0; i < 3; i++) {
+            Map<String, Object> vars = new HashMap<>();
+            vars.put("c", new Counting());
+            assertEquals(MVEL.executeExpression(bound, createCtx(), vars), "dog6cattrue");
+        }
+
+        //按下标解析变量时同样可以绑定
+        parserContext = new ParserContext();
+        parserContext.addInputs(inputs);
+        parserContext.setSlotResolution(true);
+        parserContext.setSchemaBinding(true);
+        compiled = new ExpressionCompiler("s = 0; s = s + c.child.value; s * c.value", parserContext).compile();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("c", new Counting());
+        assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), 9);
+    }
+
+    /** 批量执行时每个上下文对象的结果与单独执行相同,执行帧以及共享值在每次执行前重置 */
+    @Test
+    public void testBatchEvaluation() {
+        List<Base> contexts = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            Base base = new Base();
+            base.foo.bar.name = i % 2 == 0 ? "x" : "y" + i;
+            contexts.add(base);
+        }
+
+        ParserContext parserContext = new ParserContext();
+        parserContext.setCommonSubexpressionElimination(true);
+        CompiledExpression shared = new ExpressionCompiler("foo.bar.name == 'x' ? foo.bar.name + '!' : foo.bar.name", parserContext).compile();
+        Object[] results = new Object[contexts.size()];
+        MVEL.evaluateBatch(shared, contexts, null, results);
+        assertEquals(results, new Object[]{"x!", "y1", "x!", "y3"});
+
+        //提前返回以及执行帧中的变量不影响后续的执行
+        parserContext = new ParserContext();
+        parserContext.setSlotResolution(true);
+        CompiledExpression slot = new ExpressionCompiler("if (foo.bar.name == 'x') { return 0 }; n = isdef n ? n + 1 : 1; n", parserContext).compile();
+        MVEL.evaluateBatch(slot, contexts, new MapVariableResolverFactory(new HashMap<>()), results);
+        assertEquals(results, new Object[]{0, 1, 0, 1});
+
+        List<Base> matched = MVEL.filter(MVEL.compileExpression("foo.bar.name != 'x'"), contexts, null);
+        assertEquals(matched, Arrays.asList(contexts.get(1), contexts.get(3)));
+    }
+
+    /** 批量执行的结果与逐个单独执行的结果一致,包括执行后仍被引用的执行帧以及非CompiledExpression的编译结果 */
+    @Test
+    public void testBatchEvaluationMatchesSingle() {
+        List<Base> contexts = new ArrayList<>();
+        for(int i = 0; i < 5; i++) {
+            Base base = new Base();
+            base.foo.bar.name = "n" + i;
+            contexts.add(base);
+        }
+
+        ParserContext lazyContext = new ParserContext();
+        lazyContext.getParserConfiguration().setLazyFold(true);
+        lazyContext.setSlotResolution(true);
+        ParserContext slotContext = new ParserContext();
+        slotContext.setSlotResolution(true);
+        Serializable[] compiledList = {
+                MVEL.compileExpression("foo.bar.name"),
+                MVEL.compileExpression("x = foo.bar.name + '!'; x + x"),
+                new ExpressionCompiler("s = ''; for (i = 0; i < 3; i++) { s += foo.bar.name }; s", slotContext).compile(),
+                //延迟投影的视图在执行之后仍引用执行帧中的变量,执行帧不能在之后的执行中复用
+                new ExpressionCompiler("n = foo.bar.name; ($ + n in ['a', 'b'])", lazyContext).compile()
+        };
+        for(Serializable compiled : compiledList) {
+            Object[] results = new Object[contexts.size()];
+            MVEL.evaluateBatch(compiled, contexts, new MapVariableResolverFactory(new HashMap<>()), results);
+            for(int i = 0; i < contexts.size(); i++) {
+                Object expected = MVEL.executeExpression(compiled, contexts.get(i), new HashMap<>());
+                assertEquals(results[i] instanceof Collection ? new ArrayList<>((Collection) results[i]) : results[i],
+                        expected instanceof Collection ? new ArrayList<>((Collection) expected) : expected);
+            }
+        }
+
+        //结果数组不足时报错,未执行任何上下文
+        for(Serializable compiled : compiledList) {
+            Object[] results = new Object[1];
+            try{
+                MVEL.evaluateBatch(compiled, contexts, null, results);
+                Assert.fail();
+            } catch(IllegalArgumentException ignore) {
+            }
+            assertEquals(results[0], null);
+        }
+
+        //不同的编译形式过滤结果相同,结果不是boolean时同样报错
+        String expr = "foo.bar.name == 'n1' || foo.bar.name == 'n3'";
+        List<Base> expected = Arrays.asList(contexts.get(1), contexts.get(3));
+        assertEquals(MVEL.filter(MVEL.compileExpression(expr), contexts, null), expected);
+        assertEquals(MVEL.filter(new ExpressionCompiler(expr, new ParserContext()).compile(), contexts, null), expected);
+        for(Serializable compiled : new Serializable[]{MVEL.compileExpression("foo.bar.name"),
+                new ExpressionCompiler("foo.bar.name", new ParserContext()).compile()}) {
+            try{
+                MVEL.filter(compiled, contexts, null);
+                Assert.fail();
+            } catch(ScriptRuntimeException ignore) {
+            }
+        }
+    }
+
+    /** 测试规则集,各规则之间相同的属性访问以及括号语句在一次执行中只计算一次 */
+    @Test
+    public void testRuleSet() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("r1", "c.child.value == 3");
+        rules.put("r2", "c.child.value > 5 || (c.child.value * 2) == 6");
+        rules.put("r3", "(c.child.value * 2) > 10");
+        rules.put("r4", "c.child.value == 3");
+        RuleSet ruleSet = MVEL.compileRuleSet(rules);
+        assertEquals(ruleSet.getSharedSize(), 2);
+
+        for(int i = 0; i < 2; i++) {
+            Counting counting = new Counting();
+            Map<String, Object> vars = new HashMap<>();
+            vars.put("c", counting);
+            assertEquals(ruleSet.evaluate(null, new MapVariableResolverFactory(vars)), Arrays.asList("r1", "r2", "r4"));
+            //括号语句单独编译,其内部的访问与外部的访问各计算一次,单独执行每个规则时需要5次
+            assertEquals(counting.getCount(), 2);
+        }
+    }
+
+    /** 测试规则集的谓词索引,只有索引条件可能成立的规则才进行计算,结果与逐个执行规则一致 */
+    @Test
+    public void testRuleSetIndex() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("order", "type == 'ORDER' && region == 'EU' && amount > 1000");
+        rules.put("refund", "type == 'REFUND' && c.child.value == 3");
+        rules.put("small", "amount <= 10 || region == 'US'");
+        rules.put("medium", "100 < amount && amount < 500");
+        rules.put("exact", "amount == 1000 && type != 'REFUND'");
+        RuleSet ruleSet = MVEL.compileRuleSet(rules);
+
+        Object[][] facts = {{"ORDER", "EU", 2000}, {"ORDER", "EU", 1000L}, {"REFUND", "US", 5.5d}, {"ORDER", "CN", 300}, {"REFUND", "EU", 1000d}};
+        for(Object[] fact : facts) {
+            Counting counting = new Counting();
+            Map<String, Object> vars = new HashMap<>();
+            vars.put("type", fact[0]);
+            vars.put("region", fact[1]);
+            vars.put("amount", fact[2]);
+            vars.put("c", counting);
+
+            List<String> matched = ruleSet.evaluate(null, new MapVariableResolverFactory(vars));
+            //不是退款时退款规则被索引排除,其中的属性不会被读取
+            assertEquals(counting.getCount(), "REFUND".equals(fact[0]) ? 1 : 0);
+
+            List<String> expected = new ArrayList<>();
+            for(Map.Entry<String, String> rule : rules.entrySet()) {
+                if((Boolean) MVEL.executeExpression(MVEL.compileExpression(rule.getValue()), new HashMap<>(vars))) expected.add(rule.getKey());
+            }
+            assertEquals(matched, expected);
+        }
+    }
+
+    /** 执行表达式并返回属性读取次数 */
+    private int evalCounting(String expr, boolean cse) {
+        ParserContext parserContext = new ParserContext();
+        parserContext.setCommonSubexpressionElimination(cse);
+        CompiledExpression compiled = new ExpressionCompiler(expr, parserContext).compile();
+
+        Counting counting = new Counting();
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("c", counting);
+        for(int i = 0; i < 2; i++) {
+            assertEquals(compiled.getValue(null, new MapVariableResolverFactory(vars)), 6);
+        }
+        return counting.getCount() / 2;
+    }
+}
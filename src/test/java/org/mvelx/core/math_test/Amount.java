@@ -0,0 +1,10 @@
+package org.mvelx.core.math_test;
+
+import java.math.BigInteger;
+
+/** 用户定义的数字子类 */
+public class Amount extends BigInteger {
+    public Amount(String value) {
+        super(value);
+    }
+}
@@ -0,0 +1,11 @@
+package org.mvelx.core.math_test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** 用户定义的集合子类 */
+public class Items extends ArrayList<Object> {
+    public Items(Object... values) {
+        super(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,20 @@
+package org.mvelx.core.property_test;
+
+/** 记录属性读取次数的对象 */
+public class Counting {
+    private int count;
+    private int value = 3;
+
+    public Counting getChild() {
+        count++;
+        return this;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}